@@ -0,0 +1,12 @@
+-- Garantiza a nivel de base de datos la regla "un solo ticket abierto por placa".
+-- El ingreso (IngresoDAO) usa este índice como destino de ON CONFLICT, de modo que
+-- dos carriles registrando la misma placa al mismo tiempo no pueden crear dos tickets.
+--
+-- Antes de aplicarlo verificar que no existan duplicados:
+--   SELECT placa, COUNT(*) FROM tickets
+--   WHERE fecha_salida IS NULL AND activo = true
+--   GROUP BY placa HAVING COUNT(*) > 1;
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_tickets_placa_abierto
+    ON tickets (placa)
+    WHERE fecha_salida IS NULL AND activo = true;
@@ -0,0 +1,16 @@
+-- Secuencia para la asignación de folios (TKT000001, TKT000002, ...).
+-- Cada instancia de la aplicación reserva bloques de INCREMENT BY números con un solo
+-- nextval() y los reparte en memoria (FolioAllocator), por lo que varios equipos que
+-- comparten la base de datos nunca reciben el mismo folio.
+-- El tamaño del bloque (50) está fijo en la aplicación (FolioDAO.TAMANO_BLOQUE) y debe
+-- coincidir con INCREMENT BY: no cambiarlo con ALTER SEQUENCE sin cambiar también el código
+-- y detener antes todas las instancias. Con un incremento menor los bloques se solaparían
+-- (FolioDAO lo rechaza); con uno mayor solo quedan huecos.
+
+CREATE SEQUENCE IF NOT EXISTS tickets_folio_seq INCREMENT BY 50 MINVALUE 1;
+
+-- Continuar después del último folio existente
+SELECT setval('tickets_folio_seq',
+              COALESCE((SELECT MAX(CAST(SUBSTRING(numero_folio FROM 4) AS INTEGER))
+                        FROM tickets WHERE numero_folio LIKE 'TKT%'), 0) + 1,
+              false);
@@ -0,0 +1,15 @@
+-- Notifica a las aplicaciones de escritorio cuando la aplicación administrativa (C#)
+-- modifica las tarifas, para que TarifaCache recargue la tarifa activa sin consultar
+-- la base de datos en cada salida.
+
+CREATE OR REPLACE FUNCTION notificar_cambio_tarifa() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('tarifas_cambio', COALESCE(NEW.id, OLD.id)::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_tarifas_cambio ON tarifas;
+CREATE TRIGGER trg_tarifas_cambio
+    AFTER INSERT OR UPDATE OR DELETE ON tarifas
+    FOR EACH ROW EXECUTE FUNCTION notificar_cambio_tarifa();
@@ -0,0 +1,19 @@
+-- Notifica los cambios de mensualidades (payload = placa) para que MensualidadCache
+-- actualice solo la placa afectada. Si un UPDATE cambia la placa se notifican ambas.
+
+CREATE OR REPLACE FUNCTION notificar_cambio_mensualidad() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM pg_notify('mensualidades_cambio', OLD.placa);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') AND (TG_OP = 'INSERT' OR NEW.placa IS DISTINCT FROM OLD.placa) THEN
+        PERFORM pg_notify('mensualidades_cambio', NEW.placa);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_mensualidades_cambio ON mensualidades;
+CREATE TRIGGER trg_mensualidades_cambio
+    AFTER INSERT OR UPDATE OR DELETE ON mensualidades
+    FOR EACH ROW EXECUTE FUNCTION notificar_cambio_mensualidad();
@@ -0,0 +1,23 @@
+-- Franjas horarias de una tarifa (nocturna, fin de semana). Fuera de cualquier franja se
+-- cobran los valores base de la tarifa. Si hora_fin <= hora_inicio la franja cruza la
+-- medianoche (p. ej. 22:00 - 06:00).
+
+CREATE TABLE IF NOT EXISTS tarifa_franjas (
+    id             SERIAL PRIMARY KEY,
+    tarifa_id      INTEGER NOT NULL REFERENCES tarifas(id) ON DELETE CASCADE,
+    tipo_dia       VARCHAR(20) NOT NULL DEFAULT 'Todos'
+                   CHECK (tipo_dia IN ('Todos', 'Semana', 'FinDeSemana')),
+    hora_inicio    TIME NOT NULL,
+    hora_fin       TIME NOT NULL,
+    valor_hora     NUMERIC(10, 2) NOT NULL CHECK (valor_hora >= 0),
+    valor_fraccion NUMERIC(10, 2) NOT NULL CHECK (valor_fraccion >= 0),
+    activa         BOOLEAN NOT NULL DEFAULT true
+);
+
+CREATE INDEX IF NOT EXISTS ix_tarifa_franjas_tarifa ON tarifa_franjas (tarifa_id) WHERE activa = true;
+
+-- Un cambio en las franjas equivale a un cambio de tarifa: TarifaCache recarga ambas
+DROP TRIGGER IF EXISTS trg_tarifa_franjas_cambio ON tarifa_franjas;
+CREATE TRIGGER trg_tarifa_franjas_cambio
+    AFTER INSERT OR UPDATE OR DELETE ON tarifa_franjas
+    FOR EACH ROW EXECUTE FUNCTION notificar_cambio_tarifa();
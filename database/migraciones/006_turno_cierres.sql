@@ -0,0 +1,27 @@
+-- Cierre de turno. Los totales se acumulan en memoria mientras el operador trabaja
+-- (services.CierreTurno) y se guardan al cerrar: el resumen en turnos y el desglose por
+-- método de pago en turno_totales, sin recorrer pagos ni tickets.
+
+CREATE TABLE IF NOT EXISTS turnos (
+    id              SERIAL PRIMARY KEY,
+    operador_id     INTEGER NOT NULL REFERENCES operadores(id),
+    fecha_apertura  TIMESTAMP NOT NULL,
+    fecha_cierre    TIMESTAMP,
+    total_ingresos  INTEGER NOT NULL DEFAULT 0,
+    total_cobros    NUMERIC(12, 2) NOT NULL DEFAULT 0,
+    activo          BOOLEAN NOT NULL DEFAULT true,
+    observaciones   TEXT
+);
+
+CREATE INDEX IF NOT EXISTS ix_turnos_abierto_operador ON turnos (operador_id) WHERE fecha_cierre IS NULL;
+
+CREATE TABLE IF NOT EXISTS turno_totales (
+    turno_id     INTEGER NOT NULL REFERENCES turnos(id) ON DELETE CASCADE,
+    metodo_pago  VARCHAR(20) NOT NULL,
+    cantidad     INTEGER NOT NULL DEFAULT 0,
+    total        NUMERIC(12, 2) NOT NULL DEFAULT 0,
+    PRIMARY KEY (turno_id, metodo_pago)
+);
+
+-- Solo para completar un turno que empezó antes de reiniciar la aplicación
+CREATE INDEX IF NOT EXISTS ix_pagos_operador_fecha ON pagos (operador_id, fecha_pago);
@@ -0,0 +1,13 @@
+-- Claves de idempotencia de las operaciones de portería (services.Idempotencia).
+-- La interfaz genera una clave por operación y la repite en los reintentos; la clave
+-- primaria impide que un reintento (o una segunda instancia) vuelva a cobrar. El resultado
+-- queda NULL mientras la operación está en curso.
+
+CREATE TABLE IF NOT EXISTS operaciones_idempotentes (
+    clave          VARCHAR(64) PRIMARY KEY,
+    operacion      VARCHAR(20) NOT NULL,
+    resultado      TEXT,
+    fecha_creacion TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS ix_operaciones_idempotentes_fecha ON operaciones_idempotentes (fecha_creacion);
@@ -0,0 +1,119 @@
+package benchmark;
+
+import models.Tarifa;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.CalculadoraTarifa;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cobro de una salida: CalculadoraTarifa (centavos en long) contra el cálculo anterior en
+ * BigDecimal que hacía registrarSalida con los getters de Tarifa.
+ *
+ * Las estadías son de menos de un día, donde las dos versiones aplican las mismas reglas
+ * (el tope por día de 24 h llegó después); al preparar se verifica que den el mismo monto.
+ * {@code calculadora} es el camino de la salida (centavos a BigDecimal para el pago);
+ * {@code calculadoraCentavos} es el recálculo masivo, sin crear objetos.
+ *
+ * <pre>
+ * mvn -Pjmh package
+ * java -cp target/ParkCrud-1.0-SNAPSHOT-jar-with-dependencies.jar org.openjdk.jmh.Main CalculadoraTarifaBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CalculadoraTarifaBenchmark {
+
+    // Potencia de dos: el índice avanza con una máscara
+    private static final int ESTADIAS = 1 << 12;
+
+    private Tarifa tarifa;
+    private CalculadoraTarifa calculadora;
+    private long[] estadias;
+    private int siguiente;
+
+    @Setup
+    public void preparar() {
+        tarifa = new Tarifa();
+        tarifa.setTiempoGraciaMinutos(30);
+        tarifa.setValorBaseHora(new BigDecimal("3000.00"));
+        tarifa.setValorFraccion(new BigDecimal("1500.00"));
+        tarifa.setTopeDiario(new BigDecimal("25000.00"));
+        calculadora = CalculadoraTarifa.desde(tarifa);
+
+        // Mitad en el tiempo de gracia o cerca, mitad hasta casi un día
+        SplittableRandom azar = new SplittableRandom(42);
+        estadias = new long[ESTADIAS];
+        for (int i = 0; i < ESTADIAS; i++) {
+            estadias[i] = azar.nextBoolean() ? azar.nextInt(120) : azar.nextInt(1439);
+        }
+
+        for (long minutos : estadias) {
+            BigDecimal anterior = cobroAnterior(tarifa, minutos);
+            BigDecimal actual = CalculadoraTarifa.aBigDecimal(calculadora.calcularCentavos(minutos));
+            if (anterior.compareTo(actual) != 0) {
+                throw new IllegalStateException("Cobro distinto para " + minutos + " min: " + anterior + " / " + actual);
+            }
+        }
+    }
+
+    private long estadia() {
+        siguiente = (siguiente + 1) & (ESTADIAS - 1);
+        return estadias[siguiente];
+    }
+
+    @Benchmark
+    public BigDecimal anterior() {
+        return cobroAnterior(tarifa, estadia());
+    }
+
+    @Benchmark
+    public BigDecimal calculadora() {
+        return CalculadoraTarifa.aBigDecimal(calculadora.calcularCentavos(estadia()));
+    }
+
+    @Benchmark
+    public long calculadoraCentavos() {
+        return calculadora.calcularCentavos(estadia());
+    }
+
+    /**
+     * Cálculo de registrarSalida antes de CalculadoraTarifa (sin el log del monto).
+     */
+    private static BigDecimal cobroAnterior(Tarifa tarifa, long minutosEstadia) {
+        int tiempoGracia = tarifa.getTiempoGraciaMinutos();
+        BigDecimal monto = BigDecimal.ZERO;
+
+        if (minutosEstadia > tiempoGracia) {
+            long minutosCobrables = minutosEstadia - tiempoGracia;
+            long horasCompletas = minutosCobrables / 60;
+            long minutosRestantes = minutosCobrables % 60;
+
+            if (horasCompletas > 0) {
+                monto = tarifa.getValorBaseHora().multiply(BigDecimal.valueOf(horasCompletas));
+            }
+            if (minutosRestantes > 0) {
+                monto = monto.add(tarifa.getValorFraccion());
+            }
+            if (tarifa.getTopeDiario() != null && monto.compareTo(tarifa.getTopeDiario()) > 0) {
+                monto = tarifa.getTopeDiario();
+            }
+        }
+        return monto;
+    }
+}
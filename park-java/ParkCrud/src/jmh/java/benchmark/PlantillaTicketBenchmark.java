@@ -0,0 +1,149 @@
+package benchmark;
+
+import models.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.PlantillaTicket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticket de ingreso: PlantillaTicket contra el armado anterior de TicketPrinterService
+ * (String.format por línea, ByteArrayOutputStream y un DateTimeFormatter por ticket).
+ *
+ * Las dos versiones usan el mismo diseño (el QR impreso como texto, anterior a la
+ * impresión del código QR nativo, y los [CENTRO] repetidos que enviaba el armado
+ * anterior); al preparar se verifica que generen los mismos bytes.
+ *
+ * <pre>
+ * mvn -Pjmh package
+ * java -cp target/ParkCrud-1.0-SNAPSHOT-jar-with-dependencies.jar org.openjdk.jmh.Main PlantillaTicketBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PlantillaTicketBenchmark {
+
+    private static final String DISENO =
+            "[INIT][CENTRO][NORMAL]==============================\n" +
+            "[NEGRITA][DOBLE]CrudPark - Crudzaso\n" +
+            "[/NEGRITA][NORMAL]==============================\n" +
+            "\n" +
+            "[IZQUIERDA]Ticket #: {folio}\n" +
+            "Placa: {placa}\n" +
+            "Tipo: {tipo}\n" +
+            "Ingreso: {ingreso}\n" +
+            "Operador: {operador}\n" +
+            "------------------------------\n" +
+            "[CENTRO][NEGRITA]QR: {qr}\n" +
+            "[/NEGRITA][CENTRO]------------------------------\n" +
+            "[CENTRO]Gracias por su visita.\n" +
+            "==============================\n" +
+            "\n\n\n" +
+            "[CORTE]";
+
+    // Comandos ESC/POS del armado anterior
+    private static final byte[] INIT = {0x1B, 0x40};
+    private static final byte[] CENTER = {0x1B, 0x61, 0x01};
+    private static final byte[] LEFT = {0x1B, 0x61, 0x00};
+    private static final byte[] BOLD_ON = {0x1B, 0x45, 0x01};
+    // El original enviaba ESC dos veces; corregido para comparar los bytes con la plantilla
+    private static final byte[] BOLD_OFF = {0x1B, 0x45, 0x00};
+    private static final byte[] DOUBLE_HEIGHT = {0x1D, 0x21, 0x01};
+    private static final byte[] NORMAL_FONT = {0x1D, 0x21, 0x00};
+    private static final byte[] CUT = {0x1D, 0x56, 0x00};
+
+    private Ticket ticket;
+    private String operador;
+    private PlantillaTicket plantilla;
+
+    @Setup
+    public void preparar() throws IOException {
+        ticket = new Ticket();
+        ticket.setNumeroFolio("T-00012345");
+        ticket.setPlaca("ABC123");
+        ticket.setTipoIngreso("Invitado");
+        ticket.setFechaIngreso(LocalDateTime.of(2025, 3, 14, 9, 26, 53));
+        ticket.setQrCode("TICKET:T-00012345|PLACA:ABC123|FECHA:1741944413|FIRMA:3f9a0c1d");
+        operador = "Operador de turno";
+        plantilla = PlantillaTicket.compilar(DISENO);
+
+        if (!Arrays.equals(anterior(), plantilla())) {
+            throw new IllegalStateException("La plantilla no genera los mismos bytes que el armado anterior");
+        }
+    }
+
+    @Benchmark
+    public byte[] anterior() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        bos.write(INIT);
+        bos.write(CENTER);
+        bos.write(NORMAL_FONT);
+
+        bos.write(toBytes("==============================\n"));
+        bos.write(BOLD_ON);
+        bos.write(DOUBLE_HEIGHT);
+        bos.write(toBytes("CrudPark - Crudzaso\n"));
+        bos.write(BOLD_OFF);
+        bos.write(NORMAL_FONT);
+        bos.write(toBytes("==============================\n"));
+        bos.write(toBytes("\n"));
+
+        bos.write(LEFT);
+        bos.write(toBytes(String.format("Ticket #: %s\n", ticket.getNumeroFolio())));
+        bos.write(toBytes(String.format("Placa: %s\n", ticket.getPlaca())));
+        bos.write(toBytes(String.format("Tipo: %s\n", ticket.getTipoIngreso())));
+
+        String fechaIngreso = ticket.getFechaIngreso()
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm a"));
+        bos.write(toBytes(String.format("Ingreso: %s\n", fechaIngreso)));
+        bos.write(toBytes(String.format("Operador: %s\n", operador)));
+
+        bos.write(toBytes("------------------------------\n"));
+
+        bos.write(CENTER);
+        bos.write(BOLD_ON);
+        bos.write(toBytes("QR: " + ticket.getQrCode() + "\n"));
+        bos.write(BOLD_OFF);
+
+        bos.write(CENTER);
+        bos.write(toBytes("------------------------------\n"));
+
+        bos.write(CENTER);
+        bos.write(toBytes("Gracias por su visita.\n"));
+        bos.write(toBytes("==============================\n"));
+
+        bos.write(toBytes("\n\n\n"));
+        bos.write(CUT);
+
+        return bos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] plantilla() {
+        return plantilla.generar(ticket, operador, null, 0, null, null);
+    }
+
+    private static byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
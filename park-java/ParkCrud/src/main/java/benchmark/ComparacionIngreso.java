@@ -0,0 +1,285 @@
+package benchmark;
+
+import config.ConnectionPool;
+import config.DatabaseConfig;
+import dao.IngresoDAO;
+import dao.MensualidadDAO;
+import dao.TicketDAO;
+import models.Mensualidad;
+import models.Ticket;
+import services.FolioAllocator;
+import util.Log;
+import util.Metricas;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencia del registro de ingreso en la base de datos: el camino anterior contra la
+ * sentencia única de IngresoDAO, contra un PostgreSQL local.
+ *
+ * <ul>
+ *   <li>anterior: ticket abierto de la placa, mensualidad vigente y siguiente folio (tres
+ *       lecturas en auto-commit) y el INSERT en su propia transacción, como lo hacía
+ *       registrarIngreso antes de IngresoDAO.</li>
+ *   <li>cte: IngresoDAO sin tipo de ingreso; la mensualidad se resuelve en la misma
+ *       sentencia (camino cuando MensualidadCache no es confiable).</li>
+ *   <li>clasificado: IngresoDAO con el tipo ya resuelto en memoria (camino habitual).</li>
+ * </ul>
+ *
+ * Cada variante registra sus ingresos en un ciclo cerrado desde {@code hilos} hilos, con
+ * placas de invitado nuevas, y se informan p50/p99/p999 y los viajes a la base de datos
+ * por ingreso (ver ConnectionPool#getViajes). El folio del camino anterior se consulta igual
+ * que antes (MAX + 1, para medir su costo) pero el ticket se guarda con uno de
+ * FolioAllocator, para no chocar con los folios de la secuencia. Al terminar se borran los
+ * tickets creados.
+ *
+ * Uso (con db.* apuntando a una base de datos de pruebas, nunca a producción):
+ * <pre>
+ * java -cp ParkCrud-1.0-SNAPSHOT-jar-with-dependencies.jar benchmark.ComparacionIngreso \
+ *      --ingresos 5000 --calentamiento 500 --hilos 4
+ * </pre>
+ * Opciones: ingresos y calentamiento (por variante), hilos, operador (id existente),
+ * variantes (separadas por coma), semilla y config (archivo de configuración).
+ */
+public final class ComparacionIngreso {
+
+    private static final Log LOG = Log.de(ComparacionIngreso.class);
+
+    private static final String SQL_BORRAR = "DELETE FROM tickets WHERE placa LIKE ?";
+
+    private final Opciones opciones;
+    private final ConnectionPool pool;
+    private final TicketDAO ticketDAO = new TicketDAO();
+    private final MensualidadDAO mensualidadDAO = new MensualidadDAO();
+    private final IngresoDAO ingresoDAO = new IngresoDAO();
+    private final FolioAllocator folios = FolioAllocator.getInstance();
+
+    private final String prefijoPlacas;
+    private final AtomicLong secuenciaPlacas = new AtomicLong();
+    private final Map<String, LongAdder> errores = new ConcurrentHashMap<>();
+
+    private ComparacionIngreso(Opciones opciones) {
+        this.opciones = opciones;
+        this.pool = DatabaseConfig.getInstance().getPool();
+        // Prefijo distinto por ejecución: una corrida interrumpida no choca con la siguiente
+        SplittableRandom azar = new SplittableRandom(opciones.semilla);
+        this.prefijoPlacas = "I" + Character.toUpperCase(Character.forDigit(10 + azar.nextInt(26), 36))
+                + Character.toUpperCase(Character.forDigit(azar.nextInt(36), 36));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Opciones opciones;
+        try {
+            opciones = Opciones.leer(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (opciones.config != null) {
+            // Antes de que cualquier componente lea la configuración
+            System.setProperty("crudpark.config", opciones.config);
+        }
+        System.exit(new ComparacionIngreso(opciones).ejecutar());
+    }
+
+    private int ejecutar() throws InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%nIngresos: %d por variante (+%d de calentamiento), %d hilos, semilla %d%n",
+                opciones.ingresos, opciones.calentamiento, opciones.hilos, opciones.semilla));
+        sb.append(String.format("%n%-12s %9s %8s %9s %9s %9s %9s %10s %9s%n",
+                "variante", "total", "errores", "p50 ms", "p99 ms", "p999 ms", "max ms", "ingresos/s", "viajes"));
+        try {
+            for (String variante : opciones.variantes) {
+                LOG.info("Variante {}: calentamiento", variante);
+                correr(variante, opciones.calentamiento, new Metricas.Histograma(), new LongAdder());
+
+                LOG.info("Variante {}: medición", variante);
+                Metricas.Histograma l = new Metricas.Histograma();
+                LongAdder fallidas = new LongAdder();
+                long viajes = pool.getViajes();
+                long inicio = System.nanoTime();
+                correr(variante, opciones.ingresos, l, fallidas);
+                double segundos = (System.nanoTime() - inicio) / 1e9;
+                viajes = pool.getViajes() - viajes;
+
+                long total = l.getTotal() + fallidas.sum();
+                sb.append(String.format("%-12s %9d %8d %9.2f %9.2f %9.2f %9.2f %10.1f %9.2f%n", variante,
+                        l.getTotal(), fallidas.sum(), l.percentil(0.50) / 1000.0, l.percentil(0.99) / 1000.0,
+                        l.percentil(0.999) / 1000.0, l.getMaximo() / 1000.0, l.getTotal() / segundos,
+                        total == 0 ? 0.0 : viajes / (double) total));
+            }
+        } finally {
+            borrarTickets();
+        }
+        sb.append(String.format("%nPool: %s%n", pool));
+        if (!errores.isEmpty()) {
+            sb.append(String.format("%nErrores:%n"));
+            errores.forEach((mensaje, n) -> sb.append(String.format("  %6d  %s%n", n.sum(), mensaje)));
+        }
+        System.out.print(sb);
+        return 0;
+    }
+
+    /**
+     * Registra {@code cantidad} ingresos repartidos entre los hilos (ciclo cerrado: cada hilo
+     * empieza el siguiente cuando termina el anterior).
+     */
+    private void correr(String variante, int cantidad, Metricas.Histograma latencias,
+                        LongAdder fallidas) throws InterruptedException {
+        AtomicInteger restantes = new AtomicInteger(cantidad);
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < opciones.hilos; i++) {
+            hilos.add(Thread.ofVirtual().name("crudpark-benchmark-ingreso-" + i).start(() -> {
+                while (restantes.getAndDecrement() > 0) {
+                    long inicio = System.nanoTime();
+                    try {
+                        ingresar(variante, siguientePlaca());
+                        latencias.registrar(System.nanoTime() - inicio);
+                    } catch (SQLException e) {
+                        fallidas.increment();
+                        errores.computeIfAbsent(variante + ": " + e.getMessage(), k -> new LongAdder()).increment();
+                    }
+                }
+            }));
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+    }
+
+    private void ingresar(String variante, String placa) throws SQLException {
+        switch (variante) {
+            case "anterior":
+                ingresoAnterior(placa);
+                break;
+            case "cte":
+                exigirCreado(ingresoDAO.registrarIngreso(nuevoTicket(placa, folios.siguienteFolio(), null)), placa);
+                break;
+            case "clasificado":
+                exigirCreado(ingresoDAO.registrarIngreso(nuevoTicket(placa, folios.siguienteFolio(), "Invitado")), placa);
+                break;
+            default:
+                throw new IllegalStateException("Variante desconocida: " + variante);
+        }
+    }
+
+    /**
+     * registrarIngreso antes de IngresoDAO: tres lecturas y el INSERT en una transacción.
+     */
+    private void ingresoAnterior(String placa) throws SQLException {
+        if (ticketDAO.findTicketAbiertoByPlaca(placa) != null) {
+            throw new SQLException("Ya existe un ticket abierto para la placa: " + placa);
+        }
+        Mensualidad mensualidad = mensualidadDAO.findVigenteByPlaca(placa);
+        String tipoIngreso = mensualidad != null ? "Mensualidad" : "Invitado";
+        ticketDAO.generarNumeroFolio();
+
+        Ticket ticket = nuevoTicket(placa, folios.siguienteFolio(), tipoIngreso);
+        ticket.setActivo(true);
+        ticket.setPagado(tipoIngreso.equals("Mensualidad"));
+        ticket.setMontoCobrado(BigDecimal.ZERO);
+
+        Connection conn = pool.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            if (ticketDAO.create(ticket, conn) == null) {
+                throw new SQLException("Error al crear el ticket en la base de datos.");
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+            conn.close();
+        }
+    }
+
+    private Ticket nuevoTicket(String placa, String folio, String tipoIngreso) {
+        Ticket ticket = new Ticket();
+        ticket.setNumeroFolio(folio);
+        ticket.setPlaca(placa);
+        ticket.setTipoIngreso(tipoIngreso);
+        ticket.setFechaIngreso(LocalDateTime.now());
+        ticket.setOperadorIngresoId(opciones.operador);
+        ticket.setQrCode("TICKET:" + folio + "|PLACA:" + placa);
+        return ticket;
+    }
+
+    private static void exigirCreado(Ticket ticket, String placa) throws SQLException {
+        if (ticket == null) {
+            throw new SQLException("Ya existe un ticket abierto para la placa: " + placa);
+        }
+    }
+
+    private String siguientePlaca() {
+        String numero = Long.toString(secuenciaPlacas.incrementAndGet(), 36).toUpperCase();
+        return prefijoPlacas + "00000".substring(Math.min(5, numero.length())) + numero;
+    }
+
+    private void borrarTickets() {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_BORRAR)) {
+            stmt.setString(1, prefijoPlacas + "%");
+            LOG.info("Tickets de la comparación borrados: {}", stmt.executeUpdate());
+        } catch (SQLException e) {
+            LOG.warn("No se pudieron borrar los tickets con placa {}*: {}", prefijoPlacas, e.getMessage());
+        }
+    }
+
+    /**
+     * Opciones de la línea de comandos (--nombre valor).
+     */
+    private static final class Opciones {
+        private int ingresos = 2000;
+        private int calentamiento = 200;
+        private int hilos = 1;
+        private int operador = 1;
+        private List<String> variantes = List.of("anterior", "cte", "clasificado");
+        private long semilla = System.nanoTime();
+        private String config;
+
+        private static Opciones leer(String[] args) {
+            Opciones o = new Opciones();
+            for (int i = 0; i < args.length; i += 2) {
+                if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Uso: --opcion valor (ver la documentación de ComparacionIngreso)");
+                }
+                String valor = args[i + 1];
+                try {
+                    switch (args[i].substring(2)) {
+                        case "ingresos": o.ingresos = Math.max(1, Integer.parseInt(valor)); break;
+                        case "calentamiento": o.calentamiento = Math.max(0, Integer.parseInt(valor)); break;
+                        case "hilos": o.hilos = Math.max(1, Integer.parseInt(valor)); break;
+                        case "operador": o.operador = Integer.parseInt(valor); break;
+                        case "variantes": o.variantes = List.of(valor.split(",")); break;
+                        case "semilla": o.semilla = Long.parseLong(valor); break;
+                        case "config": o.config = valor; break;
+                        default: throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Valor inválido para " + args[i] + ": " + valor);
+                }
+            }
+            for (String v : o.variantes) {
+                if (!v.equals("anterior") && !v.equals("cte") && !v.equals("clasificado")) {
+                    throw new IllegalArgumentException("Variante desconocida: " + v);
+                }
+            }
+            return o;
+        }
+    }
+}
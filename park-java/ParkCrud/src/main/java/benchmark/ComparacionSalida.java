@@ -0,0 +1,320 @@
+package benchmark;
+
+import config.ConnectionPool;
+import config.DatabaseConfig;
+import dao.PagoDAO;
+import dao.SalidaDAO;
+import dao.TicketDAO;
+import models.Pago;
+import services.SalidasAgrupadas;
+import util.Log;
+import util.Metricas;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencia del registro de salida en la base de datos: los tres modos de
+ * salida.persistencia, contra un PostgreSQL local.
+ *
+ * <ul>
+ *   <li>transaccion: registrarSalida, el INSERT del pago y registrarPago en una transacción
+ *       con su commit, como cerrarTicketEnTransaccion.</li>
+ *   <li>sentencia: SalidaDAO#cerrarTicket, salida y pago en una sentencia en auto-commit.</li>
+ *   <li>grupo: SalidasAgrupadas, las salidas concurrentes en una sentencia y un commit
+ *       (salida.grupo.ventana_ms y salida.grupo.max de la configuración).</li>
+ * </ul>
+ *
+ * Antes de medir cada variante se crean los tickets de invitado abiertos que va a cerrar
+ * (ingresados 95 minutos antes, todos con cobro). Cada variante los cierra en un ciclo
+ * cerrado desde {@code hilos} hilos y se informan p50/p99/p999 y los viajes a la base de
+ * datos por salida (ver ConnectionPool#getViajes). El cálculo del cobro queda fuera de la
+ * medición: todas las salidas cobran el mismo monto. Al terminar se borran los pagos y los
+ * tickets creados.
+ *
+ * Uso (con db.* apuntando a una base de datos de pruebas, nunca a producción):
+ * <pre>
+ * java -cp ParkCrud-1.0-SNAPSHOT-jar-with-dependencies.jar benchmark.ComparacionSalida \
+ *      --salidas 5000 --calentamiento 500 --hilos 8
+ * </pre>
+ * Opciones: salidas y calentamiento (por variante), hilos, operador (id existente),
+ * variantes (separadas por coma), semilla y config (archivo de configuración).
+ */
+public final class ComparacionSalida {
+
+    private static final Log LOG = Log.de(ComparacionSalida.class);
+
+    private static final int MINUTOS_ESTADIA = 95;
+    private static final BigDecimal MONTO = new BigDecimal("4500.00");
+    private static final String METODO_PAGO = "Efectivo";
+
+    private static final String SQL_CREAR =
+            "INSERT INTO tickets (numero_folio, placa, tipo_ingreso, fecha_ingreso, operador_ingreso_id," +
+            "                     qr_code, activo, pagado, monto_cobrado) " +
+            "SELECT ? || n, ? || lpad(n::text, 6, '0'), 'Invitado', CURRENT_TIMESTAMP - make_interval(mins => ?)," +
+            "       ?, 'TICKET:' || ? || n, true, false, 0 " +
+            "FROM generate_series(?, ?) AS n " +
+            "RETURNING id";
+    private static final String SQL_BORRAR_PAGOS =
+            "DELETE FROM pagos WHERE ticket_id IN (SELECT id FROM tickets WHERE placa LIKE ?)";
+    private static final String SQL_BORRAR = "DELETE FROM tickets WHERE placa LIKE ?";
+
+    private final Opciones opciones;
+    private final ConnectionPool pool;
+    private final TicketDAO ticketDAO = new TicketDAO();
+    private final PagoDAO pagoDAO = new PagoDAO();
+    private final SalidaDAO salidaDAO = new SalidaDAO();
+
+    private final String prefijoPlacas;
+    private final AtomicLong secuenciaPlacas = new AtomicLong();
+    private final Map<String, LongAdder> errores = new ConcurrentHashMap<>();
+
+    private ComparacionSalida(Opciones opciones) {
+        this.opciones = opciones;
+        this.pool = DatabaseConfig.getInstance().getPool();
+        // Prefijo distinto por ejecución: una corrida interrumpida no choca con la siguiente
+        SplittableRandom azar = new SplittableRandom(opciones.semilla);
+        this.prefijoPlacas = "S" + Character.toUpperCase(Character.forDigit(10 + azar.nextInt(26), 36))
+                + Character.toUpperCase(Character.forDigit(azar.nextInt(36), 36));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Opciones opciones;
+        try {
+            opciones = Opciones.leer(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (opciones.config != null) {
+            // Antes de que cualquier componente lea la configuración
+            System.setProperty("crudpark.config", opciones.config);
+        }
+        System.exit(new ComparacionSalida(opciones).ejecutar());
+    }
+
+    private int ejecutar() throws InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%nSalidas: %d por variante (+%d de calentamiento), %d hilos, semilla %d%n",
+                opciones.salidas, opciones.calentamiento, opciones.hilos, opciones.semilla));
+        sb.append(String.format("%n%-12s %9s %8s %9s %9s %9s %9s %10s %9s%n",
+                "variante", "total", "errores", "p50 ms", "p99 ms", "p999 ms", "max ms", "salidas/s", "viajes"));
+        try {
+            for (String variante : opciones.variantes) {
+                LOG.info("Variante {}: calentamiento", variante);
+                correr(variante, crearTickets(opciones.calentamiento), new Metricas.Histograma(), new LongAdder());
+
+                Queue<Integer> tickets = crearTickets(opciones.salidas);
+                LOG.info("Variante {}: medición", variante);
+                Metricas.Histograma l = new Metricas.Histograma();
+                LongAdder fallidas = new LongAdder();
+                long viajes = pool.getViajes();
+                long inicio = System.nanoTime();
+                correr(variante, tickets, l, fallidas);
+                double segundos = (System.nanoTime() - inicio) / 1e9;
+                viajes = pool.getViajes() - viajes;
+
+                long total = l.getTotal() + fallidas.sum();
+                sb.append(String.format("%-12s %9d %8d %9.2f %9.2f %9.2f %9.2f %10.1f %9.2f%n", variante,
+                        l.getTotal(), fallidas.sum(), l.percentil(0.50) / 1000.0, l.percentil(0.99) / 1000.0,
+                        l.percentil(0.999) / 1000.0, l.getMaximo() / 1000.0, l.getTotal() / segundos,
+                        total == 0 ? 0.0 : viajes / (double) total));
+            }
+        } catch (SQLException e) {
+            LOG.error("No se pudieron crear los tickets de la comparación: {}", e.getMessage());
+            return 1;
+        } finally {
+            borrarTickets();
+        }
+        sb.append(String.format("%nPool: %s%n", pool));
+        if (!errores.isEmpty()) {
+            sb.append(String.format("%nErrores:%n"));
+            errores.forEach((mensaje, n) -> sb.append(String.format("  %6d  %s%n", n.sum(), mensaje)));
+        }
+        System.out.print(sb);
+        return 0;
+    }
+
+    /**
+     * Cierra los tickets repartidos entre los hilos (ciclo cerrado: cada hilo empieza la
+     * siguiente salida cuando termina la anterior).
+     */
+    private void correr(String variante, Queue<Integer> tickets, Metricas.Histograma latencias,
+                        LongAdder fallidas) throws InterruptedException {
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < opciones.hilos; i++) {
+            hilos.add(Thread.ofVirtual().name("crudpark-benchmark-salida-" + i).start(() -> {
+                Integer ticketId;
+                while ((ticketId = tickets.poll()) != null) {
+                    long inicio = System.nanoTime();
+                    try {
+                        if (!cerrar(variante, ticketId)) {
+                            throw new SQLException("El ticket " + ticketId + " ya no estaba abierto");
+                        }
+                        latencias.registrar(System.nanoTime() - inicio);
+                    } catch (SQLException e) {
+                        fallidas.increment();
+                        errores.computeIfAbsent(variante + ": " + e.getMessage(), k -> new LongAdder()).increment();
+                    }
+                }
+            }));
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+    }
+
+    private boolean cerrar(String variante, int ticketId) throws SQLException {
+        switch (variante) {
+            case "transaccion":
+                return cerrarEnTransaccion(ticketId);
+            case "sentencia":
+                return salidaDAO.cerrarTicket(ticketId, opciones.operador, MINUTOS_ESTADIA, MONTO, METODO_PAGO,
+                        LocalDateTime.now());
+            case "grupo":
+                return SalidasAgrupadas.getInstance().cerrar(ticketId, opciones.operador, MINUTOS_ESTADIA, MONTO,
+                        METODO_PAGO, LocalDateTime.now());
+            default:
+                throw new IllegalStateException("Variante desconocida: " + variante);
+        }
+    }
+
+    /**
+     * Las escrituras de cerrarTicketEnTransaccion (invitado con cobro) y su commit.
+     */
+    private boolean cerrarEnTransaccion(int ticketId) throws SQLException {
+        Connection conn = pool.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            if (!salidaDAO.registrarSalida(ticketId, opciones.operador, MINUTOS_ESTADIA, conn)) {
+                conn.rollback();
+                return false;
+            }
+
+            Pago pago = new Pago();
+            pago.setTicketId(ticketId);
+            pago.setMonto(MONTO);
+            pago.setMetodoPago(METODO_PAGO);
+            pago.setOperadorId(opciones.operador);
+            pago.setFechaPago(LocalDateTime.now());
+            pago.setObservaciones("Pago automático por salida - Tiempo: " + MINUTOS_ESTADIA + " min");
+            if (pagoDAO.create(pago, conn) == null) {
+                throw new SQLException("Error al registrar el pago en la tabla 'pagos'.");
+            }
+            if (!ticketDAO.registrarPago(ticketId, MONTO, conn)) {
+                throw new SQLException("Error al actualizar el estado de pago del ticket.");
+            }
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+            conn.close();
+        }
+    }
+
+    /**
+     * Crea {@code cantidad} tickets de invitado abiertos en una sola sentencia.
+     */
+    private Queue<Integer> crearTickets(int cantidad) throws SQLException {
+        Queue<Integer> ids = new ConcurrentLinkedQueue<>();
+        if (cantidad == 0) {
+            return ids;
+        }
+        long desde = secuenciaPlacas.get() + 1;
+        long hasta = secuenciaPlacas.addAndGet(cantidad);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_CREAR)) {
+            stmt.setString(1, "B" + prefijoPlacas + "-");
+            stmt.setString(2, prefijoPlacas);
+            stmt.setInt(3, MINUTOS_ESTADIA);
+            stmt.setInt(4, opciones.operador);
+            stmt.setString(5, prefijoPlacas + "-");
+            stmt.setLong(6, desde);
+            stmt.setLong(7, hasta);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void borrarTickets() {
+        try (Connection conn = pool.getConnection()) {
+            int pagos;
+            int tickets;
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_BORRAR_PAGOS)) {
+                stmt.setString(1, prefijoPlacas + "%");
+                pagos = stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_BORRAR)) {
+                stmt.setString(1, prefijoPlacas + "%");
+                tickets = stmt.executeUpdate();
+            }
+            LOG.info("Datos de la comparación borrados: {} tickets, {} pagos", tickets, pagos);
+        } catch (SQLException e) {
+            LOG.warn("No se pudieron borrar los tickets con placa {}*: {}", prefijoPlacas, e.getMessage());
+        }
+    }
+
+    /**
+     * Opciones de la línea de comandos (--nombre valor).
+     */
+    private static final class Opciones {
+        private int salidas = 2000;
+        private int calentamiento = 200;
+        private int hilos = 1;
+        private int operador = 1;
+        private List<String> variantes = List.of("transaccion", "sentencia", "grupo");
+        private long semilla = System.nanoTime();
+        private String config;
+
+        private static Opciones leer(String[] args) {
+            Opciones o = new Opciones();
+            for (int i = 0; i < args.length; i += 2) {
+                if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Uso: --opcion valor (ver la documentación de ComparacionSalida)");
+                }
+                String valor = args[i + 1];
+                try {
+                    switch (args[i].substring(2)) {
+                        case "salidas": o.salidas = Math.max(1, Integer.parseInt(valor)); break;
+                        case "calentamiento": o.calentamiento = Math.max(0, Integer.parseInt(valor)); break;
+                        case "hilos": o.hilos = Math.max(1, Integer.parseInt(valor)); break;
+                        case "operador": o.operador = Integer.parseInt(valor); break;
+                        case "variantes": o.variantes = List.of(valor.split(",")); break;
+                        case "semilla": o.semilla = Long.parseLong(valor); break;
+                        case "config": o.config = valor; break;
+                        default: throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Valor inválido para " + args[i] + ": " + valor);
+                }
+            }
+            for (String v : o.variantes) {
+                if (!v.equals("transaccion") && !v.equals("sentencia") && !v.equals("grupo")) {
+                    throw new IllegalArgumentException("Variante desconocida: " + v);
+                }
+            }
+            return o;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package benchmark;
+
+import config.ConnectionPool;
+import config.DatabaseConfig;
+import dao.MensualidadIndiceDAO;
+import models.Mensualidad;
+import services.CarrilExecutor;
+import util.Log;
+import util.Metricas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulador de carga de la portería contra un PostgreSQL local.
+ *
+ * Cada carril recibe llegadas de Poisson (tiempo entre llegadas exponencial) y cada vehículo
+ * se queda una estadía log-normal antes de salir por un carril al azar. Una parte de las
+ * llegadas son placas con mensualidad vigente (tomadas de la base de datos) y el resto
+ * invitados; algunos invitados pagan antes de salir (registrarPagoManual). Las operaciones
+ * pasan por CarrilExecutor y TicketService igual que desde la interfaz, y los tickets se
+ * imprimen a un archivo temporal en lugar de una impresora.
+ *
+ * La latencia se mide desde la hora programada de la llegada (o de la salida) hasta que la
+ * operación termina, así que incluye la espera en la cola del carril cuando el sistema no
+ * da abasto. Al terminar se informan throughput, p50/p99/p999 por operación y los viajes a
+ * la base de datos por operación (ver ConnectionPool#getViajes).
+ *
+ * Uso (con db.* apuntando a una base de datos de pruebas, nunca a producción):
+ * <pre>
+ * java -cp ParkCrud-1.0-SNAPSHOT-jar-with-dependencies.jar benchmark.SimuladorCarga \
+ *      --carriles 4 --tasa 20 --duracion 120 --calentamiento 15 --mensualidad 0.3
+ * </pre>
+ * Opciones: carriles, tasa (llegadas/s en total), duracion y calentamiento (s),
+ * estadia-mediana-ms, estadia-sigma, mensualidad (fracción), pago-previo (fracción de
+ * invitados), operador (id existente), claves (true = con claves de idempotencia),
+ * semilla y config (archivo de configuración base).
+ *
+ * Las estadías están comprimidas (segundos en lugar de horas): con la tarifa habitual casi
+ * todas caen en el tiempo de gracia y la salida no cobra. Para medir también el pago de la
+ * salida, use en la base de pruebas una tarifa sin tiempo de gracia.
+ */
+public final class SimuladorCarga {
+
+    private static final Log LOG = Log.de(SimuladorCarga.class);
+
+    private static final String[] METODOS = {"Efectivo", "Tarjeta", "Transferencia"};
+    private static final BigDecimal MONTO_PAGO_PREVIO = new BigDecimal("2000");
+    private static final long ESPERA_VACIADO_MILLIS = 120_000;
+
+    private final Opciones opciones;
+    private final CarrilExecutor carriles;
+    private final ConnectionPool pool;
+    private final ScheduledExecutorService reloj;
+
+    private final Map<String, Metricas.Histograma> latencias = new LinkedHashMap<>();
+    private final Map<String, LongAdder> fallidas = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errores = new ConcurrentHashMap<>();
+    private final Set<String> adentro = ConcurrentHashMap.newKeySet();
+    private final Map<Vehiculo, ScheduledFuture<?>> salidasProgramadas = new ConcurrentHashMap<>();
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final AtomicLong secuenciaPlacas = new AtomicLong();
+    private final LongAdder completadasEnVentana = new LongAdder();
+    private final LongAdder llegadas = new LongAdder();
+
+    private final String prefijoPlacas;
+    private List<String> placasMensualidad = new ArrayList<>();
+    private volatile long inicioMedicion = Long.MAX_VALUE;
+    private volatile long finMedicion = Long.MAX_VALUE;
+    private volatile long viajesInicio;
+    private volatile long viajesFin;
+
+    private SimuladorCarga(Opciones opciones) {
+        this.opciones = opciones;
+        this.carriles = CarrilExecutor.getInstance();
+        this.pool = DatabaseConfig.getInstance().getPool();
+        this.reloj = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "crudpark-benchmark-reloj");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        for (String tipo : new String[]{"ingreso", "pago_manual", "salida"}) {
+            latencias.put(tipo, new Metricas.Histograma());
+            fallidas.put(tipo, new LongAdder());
+        }
+
+        // Prefijo distinto por ejecución: una corrida interrumpida no choca con la siguiente
+        SplittableRandom azar = new SplittableRandom(opciones.semilla);
+        this.prefijoPlacas = "B" + Character.toUpperCase(Character.forDigit(10 + azar.nextInt(26), 36))
+                + Character.toUpperCase(Character.forDigit(azar.nextInt(36), 36));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Opciones opciones;
+        try {
+            opciones = Opciones.leer(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        // Antes de que cualquier componente lea la configuración
+        prepararConfiguracion(opciones);
+
+        SimuladorCarga simulador = new SimuladorCarga(opciones);
+        // Al salir, el gancho de cierre de Log escribe los eventos pendientes
+        System.exit(simulador.ejecutar());
+    }
+
+    /**
+     * Copia la configuración externa (o la indicada con --config) a un archivo temporal con
+     * la impresora apuntando a un archivo y el spool en el directorio temporal.
+     */
+    private static void prepararConfiguracion(Opciones opciones) throws IOException {
+        Properties props = new Properties();
+        Path base = opciones.config != null ? Paths.get(opciones.config) : configuracionExterna();
+        if (base != null && Files.isRegularFile(base)) {
+            try (InputStream in = Files.newInputStream(base)) {
+                props.load(in);
+            }
+        }
+
+        Path dir = Files.createTempDirectory("crudpark-benchmark");
+        props.setProperty("config.recarga", "false");
+        props.setProperty("impresion.impresora.principal.tipo", "archivo");
+        props.setProperty("impresion.impresora.principal.ruta", dir.resolve("tickets.prn").toString());
+        props.setProperty("impresion.spool.dir", dir.resolve("spool").toString());
+        // Sin impresoras por carril: todo va al archivo
+        for (String clave : new ArrayList<>(props.stringPropertyNames())) {
+            if (clave.startsWith("impresion.carril.")) {
+                props.remove(clave);
+            }
+        }
+
+        Path archivo = dir.resolve("config.properties");
+        try (OutputStream out = Files.newOutputStream(archivo)) {
+            props.store(out, "Configuracion del simulador de carga");
+        }
+        System.setProperty("crudpark.config", archivo.toString());
+        LOG.info("Configuración del simulador en {}", archivo);
+    }
+
+    // Misma búsqueda que PropertiesConfig
+    private static Path configuracionExterna() {
+        String ruta = System.getProperty("crudpark.config");
+        if (ruta == null || ruta.trim().isEmpty()) {
+            ruta = System.getenv("CRUDPARK_CONFIG");
+        }
+        if (ruta != null && !ruta.trim().isEmpty()) {
+            return Paths.get(ruta.trim());
+        }
+        return Paths.get("config.properties");
+    }
+
+    private int ejecutar() throws InterruptedException {
+        try {
+            cargarMensualidades();
+        } catch (SQLException e) {
+            System.err.println("No se pudo consultar la base de datos: " + e.getMessage());
+            return 1;
+        }
+
+        long inicio = System.nanoTime();
+        inicioMedicion = inicio + TimeUnit.SECONDS.toNanos(opciones.calentamiento);
+        finMedicion = inicioMedicion + TimeUnit.SECONDS.toNanos(opciones.duracion);
+        reloj.schedule(() -> viajesInicio = pool.getViajes(), inicioMedicion - System.nanoTime(), TimeUnit.NANOSECONDS);
+        reloj.schedule(() -> viajesFin = pool.getViajes(), finMedicion - System.nanoTime(), TimeUnit.NANOSECONDS);
+        reloj.scheduleAtFixedRate(() -> LOG.info("{} s: {} llegadas, {} operaciones en curso, {} vehículos adentro",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - inicio), llegadas.sum(), enCurso.get(), adentro.size()),
+                5, 5, TimeUnit.SECONDS);
+
+        LOG.info("Simulación: {} carriles, {} llegadas/s, {} s + {} s de calentamiento, {} placas con mensualidad",
+                opciones.carriles, opciones.tasa, opciones.duracion, opciones.calentamiento, placasMensualidad.size());
+
+        SplittableRandom maestro = new SplittableRandom(opciones.semilla);
+        List<Thread> generadores = new ArrayList<>();
+        for (int i = 0; i < opciones.carriles; i++) {
+            final int carril = i;
+            final SplittableRandom azar = maestro.split();
+            generadores.add(Thread.ofVirtual().name("crudpark-benchmark-llegadas-" + i)
+                    .start(() -> generarLlegadas(carril, azar, inicio, finMedicion)));
+        }
+        for (Thread g : generadores) {
+            g.join();
+        }
+        // La última llegada de cada carril puede ser anterior al fin de la ventana: vaciar
+        // antes sacaría de golpe a todos los vehículos dentro de la ventana y se mediría esa cola
+        long resto = finMedicion - System.nanoTime();
+        if (resto > 0) {
+            TimeUnit.NANOSECONDS.sleep(resto);
+        }
+
+        vaciar();
+        carriles.cerrar();
+        imprimirResultado();
+        return 0;
+    }
+
+    private void cargarMensualidades() throws SQLException {
+        LocalDate hoy = LocalDate.now();
+        List<String> placas = new ArrayList<>();
+        for (Mensualidad m : new MensualidadIndiceDAO().findActivasNoVencidas()) {
+            if (m.getPlaca() != null && (m.getFechaInicio() == null || !m.getFechaInicio().isAfter(hoy))) {
+                placas.add(m.getPlaca().trim().toUpperCase());
+            }
+        }
+        if (placas.isEmpty() && opciones.mensualidad > 0) {
+            LOG.warn("No hay mensualidades vigentes en la base de datos: todas las llegadas serán invitados");
+        }
+        placasMensualidad = placas;
+    }
+
+    // Llegadas
+
+    private void generarLlegadas(int carril, SplittableRandom azar, long inicio, long fin) {
+        double tasaCarril = opciones.tasa / opciones.carriles;
+        long proxima = inicio;
+        while (true) {
+            proxima += (long) (-Math.log(1 - azar.nextDouble()) / tasaCarril * 1e9);
+            if (proxima >= fin) {
+                return;
+            }
+            long espera = proxima - System.nanoTime();
+            if (espera > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(espera);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            llegar(carril, azar, proxima);
+        }
+    }
+
+    private void llegar(int carril, SplittableRandom azar, long programado) {
+        llegadas.increment();
+        boolean mensualidad = !placasMensualidad.isEmpty() && azar.nextDouble() < opciones.mensualidad;
+        String placa = mensualidad ? mensualidadAfuera(azar) : null;
+        if (placa == null) {
+            mensualidad = false;
+            placa = placaInvitado();
+            adentro.add(placa);
+        }
+
+        double factor = Math.exp(opciones.estadiaSigma * azar.nextGaussian());
+        long estadiaNanos = TimeUnit.MILLISECONDS.toNanos((long) Math.min(opciones.estadiaMedianaMs * factor,
+                opciones.estadiaMedianaMs * 20.0));
+        Vehiculo v = new Vehiculo(placa, carril, azar.nextInt(opciones.carriles),
+                !mensualidad && azar.nextDouble() < opciones.pagoPrevio, METODOS[azar.nextInt(METODOS.length)]);
+
+        enCurso.incrementAndGet();
+        medir("ingreso", programado,
+                carriles.registrarIngreso(nombreCarril(v.carrilEntrada), v.placa, opciones.operador, clave()))
+                .whenComplete((ticket, error) -> {
+                    if (error != null) {
+                        adentro.remove(v.placa);
+                    } else {
+                        programarSalida(v, programado + estadiaNanos);
+                    }
+                });
+    }
+
+    private String mensualidadAfuera(SplittableRandom azar) {
+        for (int intento = 0; intento < 8; intento++) {
+            String placa = placasMensualidad.get(azar.nextInt(placasMensualidad.size()));
+            if (adentro.add(placa)) {
+                return placa;
+            }
+        }
+        return null;
+    }
+
+    private String placaInvitado() {
+        String numero = Long.toString(secuenciaPlacas.incrementAndGet(), 36).toUpperCase();
+        return prefijoPlacas + "0000".substring(Math.min(4, numero.length())) + numero;
+    }
+
+    // Salidas
+
+    private void programarSalida(Vehiculo v, long hora) {
+        ScheduledFuture<?> salida = reloj.schedule(() -> salir(v, hora), hora - System.nanoTime(), TimeUnit.NANOSECONDS);
+        salidasProgramadas.put(v, salida);
+    }
+
+    private void salir(Vehiculo v, long programado) {
+        salidasProgramadas.remove(v);
+        String carril = nombreCarril(v.carrilSalida);
+        // Las dos operaciones van al mismo carril: el pago siempre precede a la salida
+        if (v.pagaAntes) {
+            enCurso.incrementAndGet();
+            medir("pago_manual", programado,
+                    carriles.registrarPagoManual(carril, v.placa, MONTO_PAGO_PREVIO, v.metodoPago, opciones.operador, clave()));
+        }
+        enCurso.incrementAndGet();
+        medir("salida", programado,
+                carriles.registrarSalida(carril, v.placa, opciones.operador, v.metodoPago, clave()))
+                .whenComplete((monto, error) -> adentro.remove(v.placa));
+    }
+
+    /**
+     * Al terminar la ventana de medición, los vehículos que siguen adentro salen de
+     * inmediato (sin medir) para no dejar tickets abiertos en la base de pruebas.
+     */
+    private void vaciar() throws InterruptedException {
+        LOG.info("Fin de la medición; vaciando el parqueadero ({} vehículos)", adentro.size());
+        long limite = System.currentTimeMillis() + ESPERA_VACIADO_MILLIS;
+        while (System.currentTimeMillis() < limite) {
+            for (Map.Entry<Vehiculo, ScheduledFuture<?>> e : salidasProgramadas.entrySet()) {
+                if (e.getValue().cancel(false)) {
+                    salir(e.getKey(), System.nanoTime());
+                } else if (e.getValue().isDone()) {
+                    // Ya salió (la salida corrió antes de registrarse en el mapa)
+                    salidasProgramadas.remove(e.getKey(), e.getValue());
+                }
+            }
+            if (enCurso.get() == 0 && salidasProgramadas.isEmpty()) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        LOG.warn("El vaciado no terminó: {} operaciones en curso, {} vehículos adentro", enCurso.get(), adentro.size());
+    }
+
+    // Medición
+
+    private <T> CompletableFuture<T> medir(String tipo, long programado, CompletableFuture<T> operacion) {
+        return operacion.whenComplete((resultado, error) -> {
+            long ahora = System.nanoTime();
+            if (programado >= inicioMedicion && programado < finMedicion) {
+                if (error == null) {
+                    latencias.get(tipo).registrar(ahora - programado);
+                } else {
+                    fallidas.get(tipo).increment();
+                }
+                if (ahora < finMedicion) {
+                    completadasEnVentana.increment();
+                }
+            }
+            if (error != null) {
+                Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                errores.computeIfAbsent(tipo + ": " + causa.getMessage(), k -> new LongAdder()).increment();
+            }
+            enCurso.decrementAndGet();
+        });
+    }
+
+    private void imprimirResultado() {
+        long operaciones = 0;
+        for (Map.Entry<String, Metricas.Histograma> e : latencias.entrySet()) {
+            operaciones += e.getValue().getTotal() + fallidas.get(e.getKey()).sum();
+        }
+        long viajes = viajesFin - viajesInicio;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%nSimulación: %d carriles, %.1f llegadas/s, %d s medidos (+%d s de calentamiento), "
+                        + "estadía mediana %d ms, %.0f%% mensualidades, semilla %d%n",
+                opciones.carriles, opciones.tasa, opciones.duracion, opciones.calentamiento,
+                opciones.estadiaMedianaMs, opciones.mensualidad * 100, opciones.semilla));
+        sb.append(String.format("%n%-12s %9s %8s %9s %9s %9s %9s%n", "operacion", "total", "errores", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (Map.Entry<String, Metricas.Histograma> e : latencias.entrySet()) {
+            Metricas.Histograma l = e.getValue();
+            sb.append(String.format("%-12s %9d %8d %9.2f %9.2f %9.2f %9.2f%n", e.getKey(), l.getTotal(), fallidas.get(e.getKey()).sum(),
+                    l.percentil(0.50) / 1000.0, l.percentil(0.99) / 1000.0, l.percentil(0.999) / 1000.0, l.getMaximo() / 1000.0));
+        }
+        sb.append(String.format("%nThroughput: %.1f operaciones/s completadas en la ventana%n",
+                completadasEnVentana.sum() / (double) opciones.duracion));
+        sb.append(String.format("Viajes a la base de datos: %d (%.2f por operación)%n",
+                viajes, operaciones == 0 ? 0.0 : viajes / (double) operaciones));
+        sb.append(String.format("Pool: %s%n", pool));
+        if (!errores.isEmpty()) {
+            sb.append(String.format("%nErrores:%n"));
+            errores.forEach((mensaje, n) -> sb.append(String.format("  %6d  %s%n", n.sum(), mensaje)));
+        }
+        System.out.print(sb);
+    }
+
+    private String clave() {
+        return opciones.claves ? UUID.randomUUID().toString() : null;
+    }
+
+    private static String nombreCarril(int i) {
+        return "carril-" + (i + 1);
+    }
+
+    private static final class Vehiculo {
+        private final String placa;
+        private final int carrilEntrada;
+        private final int carrilSalida;
+        private final boolean pagaAntes;
+        private final String metodoPago;
+
+        private Vehiculo(String placa, int carrilEntrada, int carrilSalida, boolean pagaAntes, String metodoPago) {
+            this.placa = placa;
+            this.carrilEntrada = carrilEntrada;
+            this.carrilSalida = carrilSalida;
+            this.pagaAntes = pagaAntes;
+            this.metodoPago = metodoPago;
+        }
+    }
+
+    /**
+     * Opciones de la línea de comandos (--nombre valor).
+     */
+    private static final class Opciones {
+        private int carriles = 4;
+        private double tasa = 10;
+        private int duracion = 60;
+        private int calentamiento = 10;
+        private long estadiaMedianaMs = 20_000;
+        private double estadiaSigma = 0.8;
+        private double mensualidad = 0.3;
+        private double pagoPrevio = 0.2;
+        private int operador = 1;
+        private boolean claves;
+        private long semilla = System.nanoTime();
+        private String config;
+
+        private static Opciones leer(String[] args) {
+            Opciones o = new Opciones();
+            for (int i = 0; i < args.length; i += 2) {
+                if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Uso: --opcion valor (ver la documentación de SimuladorCarga)");
+                }
+                String valor = args[i + 1];
+                try {
+                    switch (args[i].substring(2)) {
+                        case "carriles": o.carriles = Math.max(1, Integer.parseInt(valor)); break;
+                        case "tasa": o.tasa = Double.parseDouble(valor); break;
+                        case "duracion": o.duracion = Math.max(1, Integer.parseInt(valor)); break;
+                        case "calentamiento": o.calentamiento = Math.max(0, Integer.parseInt(valor)); break;
+                        case "estadia-mediana-ms": o.estadiaMedianaMs = Math.max(0, Long.parseLong(valor)); break;
+                        case "estadia-sigma": o.estadiaSigma = Double.parseDouble(valor); break;
+                        case "mensualidad": o.mensualidad = Double.parseDouble(valor); break;
+                        case "pago-previo": o.pagoPrevio = Double.parseDouble(valor); break;
+                        case "operador": o.operador = Integer.parseInt(valor); break;
+                        case "claves": o.claves = Boolean.parseBoolean(valor); break;
+                        case "semilla": o.semilla = Long.parseLong(valor); break;
+                        case "config": o.config = valor; break;
+                        default: throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Valor inválido para " + args[i] + ": " + valor);
+                }
+            }
+            if (o.tasa <= 0) {
+                throw new IllegalArgumentException("La tasa de llegadas debe ser mayor a cero");
+            }
+            return o;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool acotado de conexiones físicas a PostgreSQL.
+ * Las conexiones entregadas son envoltorios: al llamar close() la conexión
+ * física vuelve al pool en lugar de cerrarse, evitando el handshake TCP + auth
+ * en cada ingreso o salida de vehículo.
+ * <p>
+ * Cada conexión prestada lleva un timeout de red, para que un servidor lento o una
+ * conexión TCP medio abierta no bloqueen al hilo indefinidamente. Las operaciones de
+ * carril se ejecutan además dentro de un plazo ({@link #conPlazo}): mientras dura, la
+ * espera por el pool y cada lectura del socket se acotan al tiempo que queda, y al
+ * vencerse el error tiene estado 08 para que el llamador recurra al diario local.
+ */
+public class ConnectionPool {
+
+    // Plazo de la operación en curso en este hilo (System.nanoTime() de vencimiento, o null)
+    private static final ThreadLocal<Long> PLAZO = new ThreadLocal<>();
+    // El driver de PostgreSQL no usa el executor de setNetworkTimeout, pero no acepta null
+    private static final Executor EN_EL_HILO = Runnable::run;
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    // Ajustables en caliente (ver ajustar)
+    private volatile int maxSize;
+    private volatile long maxWaitMillis;
+    private volatile int validationTimeoutSeconds;
+    private volatile long idleValidationMillis;
+    private volatile int networkTimeoutMillis;
+    private volatile int connectTimeoutSeconds;
+
+    // Conexiones físicas libres (LIFO: la más reciente es la más probable de seguir viva)
+    private final LinkedBlockingDeque<ConexionLibre> libres = new LinkedBlockingDeque<>();
+    // Un permiso por conexión que puede estar prestada o libre; limita el tamaño total del pool
+    private final Permisos permisos;
+
+    // Métricas
+    private final AtomicInteger activas = new AtomicInteger();
+    private final AtomicInteger esperando = new AtomicInteger();
+    private final LongAdder adquisiciones = new LongAdder();
+    private final LongAdder nanosAdquisicion = new LongAdder();
+    private final AtomicLong maxNanosAdquisicion = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    // Viajes a la base de datos (aproximado): sentencias preparadas, commits, rollbacks y validaciones
+    private final LongAdder viajes = new LongAdder();
+
+    public ConnectionPool(String url, String user, String password,
+                          int maxSize, long maxWaitMillis,
+                          int validationTimeoutSeconds, long idleValidationMillis,
+                          int networkTimeoutMillis, int connectTimeoutSeconds) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.maxWaitMillis = maxWaitMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.idleValidationMillis = idleValidationMillis;
+        this.networkTimeoutMillis = Math.max(0, networkTimeoutMillis);
+        this.connectTimeoutSeconds = Math.max(0, connectTimeoutSeconds);
+        this.permisos = new Permisos(this.maxSize);
+    }
+
+    /**
+     * Aplica una nueva configuración sin cerrar el pool. Al reducir el tamaño, las
+     * conexiones prestadas de más se van descontando a medida que se devuelven.
+     */
+    public synchronized void ajustar(int maxSize, long maxWaitMillis,
+                                     int validationTimeoutSeconds, long idleValidationMillis,
+                                     int networkTimeoutMillis, int connectTimeoutSeconds) {
+        int nuevo = Math.max(1, maxSize);
+        int diferencia = nuevo - this.maxSize;
+        if (diferencia > 0) {
+            permisos.release(diferencia);
+        } else if (diferencia < 0) {
+            permisos.reducir(-diferencia);
+            // Las libres que sobran ya no tienen permiso para volver a prestarse
+            for (int i = libres.size() - nuevo; i > 0; i--) {
+                ConexionLibre libre = libres.pollLast();
+                if (libre == null) {
+                    break;
+                }
+                cerrarSilencioso(libre.conexion);
+            }
+        }
+        this.maxSize = nuevo;
+        this.maxWaitMillis = maxWaitMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.idleValidationMillis = idleValidationMillis;
+        this.networkTimeoutMillis = Math.max(0, networkTimeoutMillis);
+        this.connectTimeoutSeconds = Math.max(0, connectTimeoutSeconds);
+    }
+
+    /**
+     * Trabajo contra la base de datos que se ejecuta dentro de un plazo.
+     */
+    public interface Trabajo<T> {
+        T ejecutar() throws SQLException;
+    }
+
+    /**
+     * Ejecuta el trabajo con un plazo total de {@code millis} para todas las conexiones
+     * que pida este hilo. Un plazo ya abierto por un llamador exterior se respeta si es
+     * más corto. Con {@code millis <= 0} el trabajo se ejecuta sin plazo propio.
+     */
+    public static <T> T conPlazo(long millis, Trabajo<T> trabajo) throws SQLException {
+        Long anterior = PLAZO.get();
+        if (millis <= 0) {
+            return trabajo.ejecutar();
+        }
+        long vence = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (anterior == null || vence - anterior < 0) {
+            PLAZO.set(vence);
+        }
+        try {
+            return trabajo.ejecutar();
+        } finally {
+            if (anterior == null) {
+                PLAZO.remove();
+            } else {
+                PLAZO.set(anterior);
+            }
+        }
+    }
+
+    /**
+     * Milisegundos que le quedan al plazo del hilo actual: -1 si no hay plazo y 0 si ya venció.
+     */
+    public static long restantePlazoMillis() {
+        Long vence = PLAZO.get();
+        if (vence == null) {
+            return -1;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(vence - System.nanoTime()));
+    }
+
+    /**
+     * Presta una conexión del pool. Si no hay conexiones libres y el pool está lleno,
+     * espera como máximo {@code maxWaitMillis} (o lo que quede del plazo) antes de fallar.
+     */
+    public Connection getConnection() throws SQLException {
+        long inicio = System.nanoTime();
+        long restante = restantePlazoMillis();
+        if (restante == 0) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException("Plazo de la operación vencido antes de obtener una conexión", "08001");
+        }
+        long espera = restante < 0 ? maxWaitMillis : Math.min(maxWaitMillis, restante);
+
+        esperando.incrementAndGet();
+        try {
+            if (!permisos.tryAcquire(espera, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException(
+                        "Tiempo de espera agotado (" + espera + " ms) esperando una conexión del pool", "08001");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrumpido esperando una conexión del pool", "08001", e);
+        } finally {
+            esperando.decrementAndGet();
+        }
+
+        Connection fisica;
+        int timeoutRed;
+        try {
+            timeoutRed = timeoutDeRed();
+            fisica = obtenerFisica();
+        } catch (SQLException | RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+        try {
+            fisica.setNetworkTimeout(EN_EL_HILO, timeoutRed);
+        } catch (SQLException | RuntimeException e) {
+            cerrarSilencioso(fisica);
+            permisos.release();
+            throw e;
+        }
+
+        activas.incrementAndGet();
+        registrarLatencia(System.nanoTime() - inicio);
+        return envolver(fisica);
+    }
+
+    /**
+     * Toma una conexión libre (validándola si lleva mucho tiempo inactiva) o abre una nueva.
+     */
+    private Connection obtenerFisica() throws SQLException {
+        ConexionLibre libre;
+        while ((libre = libres.pollFirst()) != null) {
+            boolean requiereValidacion = System.currentTimeMillis() - libre.devueltaEn > idleValidationMillis;
+            if (!requiereValidacion || esValida(libre.conexion)) {
+                return libre.conexion;
+            }
+            cerrarSilencioso(libre.conexion);
+        }
+        return abrir();
+    }
+
+    /**
+     * Timeout de red para la conexión que se presta: el configurado, acotado por lo que
+     * quede del plazo del hilo (0 = sin límite).
+     */
+    private int timeoutDeRed() throws SQLException {
+        long restante = restantePlazoMillis();
+        if (restante < 0) {
+            return networkTimeoutMillis;
+        }
+        if (restante == 0) {
+            throw new SQLTransientConnectionException("Plazo de la operación vencido esperando una conexión", "08001");
+        }
+        return networkTimeoutMillis == 0 ? (int) restante : (int) Math.min(networkTimeoutMillis, restante);
+    }
+
+    /**
+     * Abre una conexión física con timeout de conexión, para que un servidor que no
+     * responde al handshake no bloquee al llamador. Sin timeout de red: queda a cargo
+     * de quien la use (el pool lo fija en cada préstamo).
+     */
+    public Connection abrir() throws SQLException {
+        Properties info = new Properties();
+        info.setProperty("user", user);
+        info.setProperty("password", password);
+        int segundos = connectTimeoutSeconds;
+        long restante = restantePlazoMillis();
+        if (restante > 0) {
+            int segundosPlazo = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(restante + 999));
+            segundos = segundos == 0 ? segundosPlazo : Math.min(segundos, segundosPlazo);
+        }
+        if (segundos > 0) {
+            info.setProperty("connectTimeout", String.valueOf(segundos));
+            info.setProperty("loginTimeout", String.valueOf(segundos));
+        }
+        return DriverManager.getConnection(url, info);
+    }
+
+    private boolean esValida(Connection conexion) {
+        viajes.increment();
+        try {
+            return conexion.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve la conexión física al pool dejando su estado limpio
+     * (sin transacción pendiente y en auto-commit). Si ajustar redujo el pool y ya hay
+     * maxSize conexiones libres, la devuelta sobra y se cierra.
+     */
+    private void devolver(Connection fisica) {
+        try {
+            if (!fisica.isClosed()) {
+                if (!fisica.getAutoCommit()) {
+                    viajes.increment();
+                    fisica.rollback();
+                    fisica.setAutoCommit(true);
+                }
+                if (libres.size() >= maxSize) {
+                    cerrarSilencioso(fisica);
+                } else {
+                    libres.offerFirst(new ConexionLibre(fisica, System.currentTimeMillis()));
+                }
+            }
+        } catch (SQLException e) {
+            // Conexión rota: se descarta y el permiso queda libre para abrir una nueva
+            cerrarSilencioso(fisica);
+        } finally {
+            activas.decrementAndGet();
+            permisos.release();
+        }
+    }
+
+    private void registrarLatencia(long nanos) {
+        adquisiciones.increment();
+        nanosAdquisicion.add(nanos);
+        long max;
+        while (nanos > (max = maxNanosAdquisicion.get())) {
+            if (maxNanosAdquisicion.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    private Connection envolver(Connection fisica) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ConexionPrestada(fisica));
+    }
+
+    /**
+     * Cierra todas las conexiones libres. Las prestadas se cierran al devolverse.
+     */
+    public void cerrar() {
+        ConexionLibre libre;
+        while ((libre = libres.pollFirst()) != null) {
+            cerrarSilencioso(libre.conexion);
+        }
+    }
+
+    private static void cerrarSilencioso(Connection conexion) {
+        try {
+            conexion.close();
+        } catch (SQLException ignored) {
+            // La conexión ya no es utilizable; no hay nada más que hacer
+        }
+    }
+
+    // Métricas del pool
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActivas() {
+        return activas.get();
+    }
+
+    public int getInactivas() {
+        return libres.size();
+    }
+
+    public int getEsperando() {
+        return esperando.get();
+    }
+
+    public long getTotalAdquisiciones() {
+        return adquisiciones.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Viajes a la base de datos hechos con conexiones del pool. Es una aproximación: cuenta
+     * cada sentencia preparada como una ejecución (los DAO preparan una sentencia por
+     * consulta), más commits, rollbacks y validaciones; un lote cuenta como un viaje.
+     */
+    public long getViajes() {
+        return viajes.sum();
+    }
+
+    public double getLatenciaPromedioMicros() {
+        long total = adquisiciones.sum();
+        return total == 0 ? 0 : nanosAdquisicion.sum() / (total * 1000.0);
+    }
+
+    public double getLatenciaMaximaMicros() {
+        return maxNanosAdquisicion.get() / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "max=" + maxSize +
+                ", activas=" + getActivas() +
+                ", inactivas=" + getInactivas() +
+                ", esperando=" + getEsperando() +
+                ", adquisiciones=" + getTotalAdquisiciones() +
+                ", timeouts=" + getTimeouts() +
+                ", viajes=" + getViajes() +
+                ", latenciaPromedioUs=" + String.format("%.1f", getLatenciaPromedioMicros()) +
+                ", latenciaMaximaUs=" + String.format("%.1f", getLatenciaMaximaMicros()) +
+                ", networkTimeoutMs=" + networkTimeoutMillis +
+                '}';
+    }
+
+    /**
+     * Semaphore con reducePermits visible, para achicar el pool sin esperar devoluciones.
+     */
+    private static final class Permisos extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private Permisos(int permisos) {
+            super(permisos, true);
+        }
+
+        private void reducir(int cantidad) {
+            reducePermits(cantidad);
+        }
+    }
+
+    private static boolean cuentaComoViaje(String metodo) {
+        switch (metodo) {
+            case "prepareStatement":
+            case "prepareCall":
+            case "createStatement":
+            case "commit":
+            case "rollback":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static final class ConexionLibre {
+        private final Connection conexion;
+        private final long devueltaEn;
+
+        private ConexionLibre(Connection conexion, long devueltaEn) {
+            this.conexion = conexion;
+            this.devueltaEn = devueltaEn;
+        }
+    }
+
+    /**
+     * Intercepta close()/isClosed() de la conexión prestada; el resto de llamadas
+     * se delegan a la conexión física.
+     */
+    private final class ConexionPrestada implements InvocationHandler {
+
+        private final Connection fisica;
+        private boolean devuelta;
+
+        private ConexionPrestada(Connection fisica) {
+            this.fisica = fisica;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!devuelta) {
+                        devuelta = true;
+                        devolver(fisica);
+                    }
+                    return null;
+                case "isClosed":
+                    return devuelta || fisica.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + fisica + "]";
+                default:
+                    if (devuelta) {
+                        throw new SQLException("La conexión ya fue devuelta al pool");
+                    }
+                    if (cuentaComoViaje(method.getName())) {
+                        viajes.increment();
+                    }
+                    try {
+                        return method.invoke(fisica, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package config;
+
+import util.Log;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Configuración de acceso a PostgreSQL.
+ * Todas las conexiones se prestan desde un pool acotado (ver {@link ConnectionPool});
+ * cerrar la conexión la devuelve al pool en lugar de cerrar el socket.
+ */
+public class DatabaseConfig {
+
+    private static final Log LOG = Log.de(DatabaseConfig.class);
+
+    private static volatile DatabaseConfig instance;
+    private final ConnectionPool pool;
+    private String url;
+    private String user;
+    private String password;
+
+    private DatabaseConfig() {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        this.url = props.getProperty("db.url");
+        this.user = props.getProperty("db.user");
+        this.password = props.getProperty("db.password");
+
+        try {
+            Class.forName("org.postgresql.Driver");
+        } catch (ClassNotFoundException e) {
+            LOG.error("Error al cargar el driver de PostgreSQL", e);
+        }
+
+        this.pool = new ConnectionPool(
+                url, user, password,
+                props.getIntProperty("db.pool.max_size", 5),
+                props.getIntProperty("db.pool.max_wait_ms", 3000),
+                props.getIntProperty("db.pool.validation_timeout_s", 2),
+                props.getIntProperty("db.pool.idle_validation_ms", 30000),
+                props.getIntProperty("db.pool.network_timeout_ms", 60000),
+                props.getIntProperty("db.pool.connect_timeout_s", 5)
+        );
+
+        props.suscribir("db.pool.", claves -> {
+            pool.ajustar(
+                    props.getIntProperty("db.pool.max_size", 5),
+                    props.getIntProperty("db.pool.max_wait_ms", 3000),
+                    props.getIntProperty("db.pool.validation_timeout_s", 2),
+                    props.getIntProperty("db.pool.idle_validation_ms", 30000),
+                    props.getIntProperty("db.pool.network_timeout_ms", 60000),
+                    props.getIntProperty("db.pool.connect_timeout_s", 5));
+            LOG.info("Pool de conexiones ajustado: {}", pool);
+        });
+        props.suscribir("db.url", claves -> LOG.warn("El cambio de db.url se aplica al reiniciar la aplicación"));
+    }
+
+    public static DatabaseConfig getInstance() {
+        if (instance == null) {
+            synchronized (DatabaseConfig.class) {
+                if (instance == null) {
+                    instance = new DatabaseConfig();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Presta una conexión del pool. Debe cerrarse (try-with-resources) para devolverla.
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    /**
+     * Conexión para una unidad de trabajo transaccional. Se mantiene por compatibilidad:
+     * también proviene del pool y se devuelve al cerrarla.
+     */
+    public Connection getNewConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    /**
+     * Abre una conexión física fuera del pool, para usos de larga duración
+     * (p. ej. LISTEN/NOTIFY) que no deben ocupar un cupo del pool. Usa el timeout de
+     * conexión del pool, pero no el de red: los reportes largos no deben cortarse.
+     */
+    public Connection abrirConexionDedicada() throws SQLException {
+        return pool.abrir();
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+}
@@ -1,18 +1,71 @@
 package config;
 
+import util.Log;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
+/**
+ * Configuración de la aplicación.
+ *
+ * Se carga config.properties del classpath y, encima, un archivo externo opcional para
+ * ajustar cada portería sin recompilar: la ruta en -Dcrudpark.config o en la variable
+ * CRUDPARK_CONFIG, o config.properties en el directorio de trabajo si existe. Los cambios
+ * en el archivo externo se aplican sin reiniciar (config.recarga=false lo desactiva).
+ *
+ * Los valores se leen de una instantánea inmutable, con los números ya convertidos, que se
+ * reemplaza completa al recargar: una lectura es una lectura volatile y una búsqueda en un
+ * mapa. Los componentes que guardan valores al arrancar se suscriben a un prefijo de claves
+ * con {@link #suscribir} para aplicar los cambios.
+ */
 public class PropertiesConfig {
 
-    private static PropertiesConfig instance;
-    private final Properties properties;
+    private static final Log LOG = Log.de(PropertiesConfig.class);
+
+    private static volatile PropertiesConfig instance;
     private static final String CONFIG_FILE = "config.properties";
 
+    // Espera para que el editor termine de escribir antes de releer
+    private static final long ESPERA_RECARGA_MS = 200;
+
+    private final Properties base;
+    // null = solo el archivo del classpath
+    private final Path archivoExterno;
+    private volatile Valores valores;
+    private final List<Suscripcion> suscriptores = new CopyOnWriteArrayList<>();
+
     private PropertiesConfig() {
-        properties = new Properties();
+        base = new Properties();
         loadProperties();
+        archivoExterno = buscarArchivoExterno();
+        valores = new Valores(combinar(leerArchivoExterno()));
+        Log.configurar(valores.texto("log.nivel"), valores.texto("log.archivo"));
+
+        if (archivoExterno != null) {
+            LOG.info("Configuración externa: {}", archivoExterno);
+            if (!"false".equalsIgnoreCase(valores.texto("config.recarga"))) {
+                vigilar();
+            }
+        }
     }
 
     public static PropertiesConfig getInstance() {
@@ -33,18 +86,15 @@ public class PropertiesConfig {
 
             // Verificamos si el ClassLoader encontró el recurso DENTRO del JAR/Classpath
             if (input == null) {
-                // Si input es null, el archivo no se incluyó en el JAR.
-                // No intentamos usar FileInputStream para evitar dependencias de rutas externas.
                 throw new IOException("El archivo de configuración '" + CONFIG_FILE + "' NO fue encontrado en el classpath (resources/).");
             }
 
-            properties.load(input);
-            System.out.println("Archivo de configuración cargado exitosamente");
+            base.load(input);
+            LOG.info("Archivo de configuración cargado exitosamente");
 
         } catch (IOException e) {
             // Capturamos el error (ya sea de archivo no encontrado o de lectura)
-            System.err.println("Error grave al cargar el archivo de configuración: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error grave al cargar el archivo de configuración", e);
 
             // Si falla la carga, cargamos la configuración por defecto
             loadDefaultProperties();
@@ -52,16 +102,246 @@ public class PropertiesConfig {
     }
 
     private void loadDefaultProperties() {
-        System.out.println("Cargando configuración por defecto...");
-        properties.setProperty("db.url", "jdbc:postgresql://localhost:5432/crudpark_db");
-        properties.setProperty("db.user", "postgres");
-        properties.setProperty("db.password", "postgres");
-        properties.setProperty("app.name", "CrudPark");
-        properties.setProperty("app.version", "1.0.0");
-        properties.setProperty("ticket.tiempo_gracia", "30");
+        LOG.info("Cargando configuración por defecto...");
+        base.setProperty("db.url", "jdbc:postgresql://localhost:5432/crudpark_db");
+        base.setProperty("db.user", "postgres");
+        base.setProperty("db.password", "postgres");
+        base.setProperty("app.name", "CrudPark");
+        base.setProperty("app.version", "1.0.0");
+        base.setProperty("ticket.tiempo_gracia", "30");
+        base.setProperty("db.pool.max_size", "5");
+        base.setProperty("db.pool.max_wait_ms", "3000");
+        base.setProperty("db.pool.validation_timeout_s", "2");
+        base.setProperty("db.pool.idle_validation_ms", "30000");
+        base.setProperty("tarifa.cache.ttl_ms", "300000");
+        base.setProperty("tarifa.cache.max_stale_ms", "900000");
+        base.setProperty("db.listen.reconexion_ms", "5000");
     }
 
     public String getProperty(String key) {
-        return properties.getProperty(key);
+        return valores.texto(key);
+    }
+
+    /**
+     * Lee una propiedad numérica; si no existe o no es un número válido retorna el valor por defecto.
+     */
+    public int getIntProperty(String key, int defaultValue) {
+        return valores.entero(key, defaultValue);
+    }
+
+    /**
+     * Lee una propiedad true/false; si no existe retorna el valor por defecto.
+     */
+    public boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = valores.texto(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Avisa cada vez que cambian claves que empiezan con {@code prefijo} (una clave exacta
+     * también sirve). El suscriptor recibe las claves que cambiaron y lee los valores nuevos
+     * con los métodos de siempre; se llama en el hilo que recarga la configuración.
+     *
+     * @return acción para cancelar la suscripción
+     */
+    public Runnable suscribir(String prefijo, Consumer<Set<String>> suscriptor) {
+        Suscripcion s = new Suscripcion(prefijo, suscriptor);
+        suscriptores.add(s);
+        return () -> suscriptores.remove(s);
+    }
+
+    // Archivo externo y recarga
+
+    private static Path buscarArchivoExterno() {
+        String ruta = System.getProperty("crudpark.config");
+        if (ruta == null || ruta.trim().isEmpty()) {
+            ruta = System.getenv("CRUDPARK_CONFIG");
+        }
+        if (ruta != null && !ruta.trim().isEmpty()) {
+            return Paths.get(ruta.trim()).toAbsolutePath();
+        }
+        Path local = Paths.get(CONFIG_FILE).toAbsolutePath();
+        return Files.isRegularFile(local) ? local : null;
+    }
+
+    /**
+     * @return las propiedades del archivo externo, o null si no hay o no se pudo leer
+     */
+    private Properties leerArchivoExterno() {
+        if (archivoExterno == null || !Files.isRegularFile(archivoExterno)) {
+            return null;
+        }
+        Properties externas = new Properties();
+        try (InputStream input = Files.newInputStream(archivoExterno)) {
+            externas.load(input);
+            return externas;
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("No se pudo leer {}: {}", archivoExterno, e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<String, String> combinar(Properties externas) {
+        Map<String, String> todas = new HashMap<>();
+        for (String clave : base.stringPropertyNames()) {
+            todas.put(clave, base.getProperty(clave));
+        }
+        if (externas != null) {
+            for (String clave : externas.stringPropertyNames()) {
+                todas.put(clave, externas.getProperty(clave));
+            }
+        }
+        return todas;
+    }
+
+    /**
+     * Relee el archivo externo y aplica los cambios. Si el archivo no se puede leer se
+     * conserva la configuración actual.
+     */
+    public synchronized void recargar() {
+        Properties externas = leerArchivoExterno();
+        if (externas == null) {
+            return;
+        }
+        Valores anteriores = valores;
+        Valores nuevos = new Valores(combinar(externas));
+        Set<String> cambios = anteriores.diferencias(nuevos);
+        if (cambios.isEmpty()) {
+            return;
+        }
+        valores = nuevos;
+        LOG.info("Configuración recargada, claves cambiadas: {}", String.join(", ", cambios));
+
+        if (cambios.contains("log.nivel") || cambios.contains("log.archivo")) {
+            Log.configurar(nuevos.texto("log.nivel"), nuevos.texto("log.archivo"));
+        }
+        for (Suscripcion s : suscriptores) {
+            Set<String> propias = s.filtrar(cambios);
+            if (propias.isEmpty()) {
+                continue;
+            }
+            try {
+                s.suscriptor.accept(propias);
+            } catch (RuntimeException e) {
+                LOG.warn("Error aplicando el cambio de configuración ({}): {}", s.prefijo, e.getMessage());
+            }
+        }
+    }
+
+    private void vigilar() {
+        WatchService vigilante;
+        try {
+            vigilante = FileSystems.getDefault().newWatchService();
+            // Se vigila la carpeta: los editores suelen reemplazar el archivo en vez de modificarlo
+            archivoExterno.getParent().register(vigilante,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOG.warn("No se puede vigilar {}, los cambios requieren reiniciar: {}", archivoExterno, e.getMessage());
+            return;
+        }
+
+        Path nombre = archivoExterno.getFileName();
+        Thread hilo = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    WatchKey clave = vigilante.take();
+                    boolean cambio = false;
+                    for (WatchEvent<?> evento : clave.pollEvents()) {
+                        cambio |= nombre.equals(evento.context()) || evento.kind() == StandardWatchEventKinds.OVERFLOW;
+                    }
+                    clave.reset();
+                    if (!cambio) {
+                        continue;
+                    }
+                    // Un guardado suele producir varios eventos seguidos: se aplica una sola vez
+                    Thread.sleep(ESPERA_RECARGA_MS);
+                    WatchKey extra;
+                    while ((extra = vigilante.poll()) != null) {
+                        extra.pollEvents();
+                        extra.reset();
+                    }
+                    recargar();
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "crudpark-config");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Instantánea inmutable de la configuración: textos y enteros ya convertidos.
+     */
+    private static final class Valores {
+        private final Map<String, String> textos;
+        private final Map<String, Integer> enteros;
+
+        private Valores(Map<String, String> textos) {
+            Map<String, Integer> convertidos = new HashMap<>();
+            for (Map.Entry<String, String> e : textos.entrySet()) {
+                try {
+                    convertidos.put(e.getKey(), Integer.parseInt(e.getValue().trim()));
+                } catch (NumberFormatException ignored) {
+                    // No es un número; si se lee como tal se avisa en entero()
+                }
+            }
+            this.textos = Collections.unmodifiableMap(textos);
+            this.enteros = Collections.unmodifiableMap(convertidos);
+        }
+
+        private String texto(String clave) {
+            return textos.get(clave);
+        }
+
+        private int entero(String clave, int porDefecto) {
+            Integer valor = enteros.get(clave);
+            if (valor != null) {
+                return valor;
+            }
+            String texto = textos.get(clave);
+            if (texto != null && !texto.trim().isEmpty()) {
+                LOG.warn("Valor inválido para '{}': {}. Usando {}", clave, texto, porDefecto);
+            }
+            return porDefecto;
+        }
+
+        private Set<String> diferencias(Valores otros) {
+            Set<String> cambios = new TreeSet<>();
+            for (Map.Entry<String, String> e : textos.entrySet()) {
+                if (!Objects.equals(e.getValue(), otros.textos.get(e.getKey()))) {
+                    cambios.add(e.getKey());
+                }
+            }
+            for (String clave : otros.textos.keySet()) {
+                if (!textos.containsKey(clave)) {
+                    cambios.add(clave);
+                }
+            }
+            return cambios;
+        }
+    }
+
+    private static final class Suscripcion {
+        private final String prefijo;
+        private final Consumer<Set<String>> suscriptor;
+
+        private Suscripcion(String prefijo, Consumer<Set<String>> suscriptor) {
+            this.prefijo = prefijo;
+            this.suscriptor = suscriptor;
+        }
+
+        private Set<String> filtrar(Set<String> claves) {
+            Set<String> propias = new TreeSet<>();
+            for (String clave : claves) {
+                if (clave.startsWith(prefijo)) {
+                    propias.add(clave);
+                }
+            }
+            return propias;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package dao;
+
+import config.DatabaseConfig;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * Aplica en la base de datos los eventos del diario local (services.DiarioOperaciones).
+ * Cada evento es una sola sentencia (atómica en auto-commit) e idempotente por folio:
+ * reaplicar un evento que ya llegó no cambia nada.
+ */
+public class DiarioDAO {
+
+    // Sin destino en ON CONFLICT: cubre el folio repetido (UNIQUE de tickets.numero_folio)
+    // y la placa con otro ticket abierto
+    private static final String SQL_INGRESO =
+            "INSERT INTO tickets (numero_folio, placa, tipo_ingreso, fecha_ingreso, operador_ingreso_id," +
+            "                     qr_code, monto_cobrado, pagado, activo) " +
+            "VALUES (?, ?, ?, ?, ?, ?, 0, ?, true) " +
+            "ON CONFLICT DO NOTHING " +
+            "RETURNING id";
+
+    private static final String SQL_ID_POR_FOLIO = "SELECT id FROM tickets WHERE numero_folio = ?";
+
+    // El pago solo se inserta si esta misma sentencia cerró el ticket
+    private static final String SQL_SALIDA =
+            "WITH cerrado AS (" +
+            "  UPDATE tickets SET fecha_salida = ?, operador_salida_id = ?, tiempo_estadia_minutos = ?," +
+            "         monto_cobrado = ?, pagado = true, fecha_actualizacion = CURRENT_TIMESTAMP" +
+            "  WHERE numero_folio = ? AND fecha_salida IS NULL" +
+            "  RETURNING id" +
+            "), pago AS (" +
+            "  INSERT INTO pagos (ticket_id, monto, metodo_pago, operador_id, fecha_pago, observaciones)" +
+            "  SELECT id, ?, ?, ?, ?, ? FROM cerrado WHERE ? > 0" +
+            "  RETURNING id" +
+            ") " +
+            "SELECT (SELECT count(*) FROM cerrado) AS cerrados," +
+            // Antes de la actualización: la misma salida ya se había aplicado (reintento)
+            "       (SELECT count(*) FROM tickets WHERE numero_folio = ? AND fecha_salida = ?) AS previos";
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * Inserta el ticket de un ingreso registrado sin conexión.
+     *
+     * @return id del ticket (nuevo o ya existente con ese folio), o 0 si no se pudo
+     *         insertar porque la placa ya tenía otro ticket abierto
+     */
+    public int aplicarIngreso(String numeroFolio, String placa, String tipoIngreso, LocalDateTime fechaIngreso,
+                              int operadorIngresoId, String qrCode) throws SQLException {
+        try (Connection conn = getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_INGRESO)) {
+                stmt.setString(1, numeroFolio);
+                stmt.setString(2, placa);
+                stmt.setString(3, tipoIngreso);
+                stmt.setTimestamp(4, Timestamp.valueOf(fechaIngreso));
+                stmt.setInt(5, operadorIngresoId);
+                stmt.setString(6, qrCode);
+                stmt.setBoolean(7, "Mensualidad".equals(tipoIngreso));
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getInt("id");
+                    }
+                }
+            }
+            // Conflicto: ¿ya se había aplicado este mismo folio?
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_ID_POR_FOLIO)) {
+                stmt.setString(1, numeroFolio);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getInt("id") : 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra el ticket del folio y registra su pago (si hay monto) en una sola sentencia.
+     *
+     * @return true si esta llamada cerró el ticket o si esta misma salida ya se había
+     *         aplicado; false si el ticket no existe o lo cerró otra salida
+     */
+    public boolean aplicarSalida(String numeroFolio, LocalDateTime fechaSalida, int operadorSalidaId,
+                                 int minutosEstadia, BigDecimal monto, String metodoPago) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_SALIDA)) {
+
+            Timestamp salida = Timestamp.valueOf(fechaSalida);
+            stmt.setTimestamp(1, salida);
+            stmt.setInt(2, operadorSalidaId);
+            stmt.setInt(3, minutosEstadia);
+            stmt.setBigDecimal(4, monto);
+            stmt.setString(5, numeroFolio);
+            stmt.setBigDecimal(6, monto);
+            stmt.setString(7, metodoPago);
+            stmt.setInt(8, operadorSalidaId);
+            stmt.setTimestamp(9, salida);
+            stmt.setString(10, "Pago registrado sin conexión - Tiempo: " + minutosEstadia + " min");
+            stmt.setBigDecimal(11, monto);
+            stmt.setString(12, numeroFolio);
+            stmt.setTimestamp(13, salida);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && (rs.getLong("cerrados") > 0 || rs.getLong("previos") > 0);
+            }
+        }
+    }
+}
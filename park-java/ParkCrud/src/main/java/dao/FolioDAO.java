@@ -0,0 +1,53 @@
+package dao;
+
+import config.DatabaseConfig;
+
+import java.sql.*;
+
+/**
+ * Acceso a la secuencia de folios tickets_folio_seq.
+ * Ver database/migraciones/002_secuencia_folios.sql.
+ */
+public class FolioDAO {
+
+    /**
+     * Números por bloque. Es fijo en el cliente: el bloque no se deduce de increment_by,
+     * que puede cambiar entre la lectura y el nextval() y hacer que dos instancias
+     * repartan números solapados. Debe coincidir con INCREMENT BY de la secuencia.
+     */
+    public static final int TAMANO_BLOQUE = 50;
+
+    private static final String SQL_RESERVAR_BLOQUE =
+            "SELECT nextval('tickets_folio_seq') AS inicio, " +
+            "       (SELECT increment_by FROM pg_sequences " +
+            "        WHERE schemaname = current_schema() AND sequencename = 'tickets_folio_seq') AS incremento";
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * Reserva un bloque de {@link #TAMANO_BLOQUE} números de folio con un solo nextval().
+     * Falla si la secuencia avanza menos que el bloque (los bloques se solaparían); un
+     * incremento mayor solo deja huecos.
+     *
+     * @return arreglo {inicio, tamaño}: el bloque reservado es [inicio, inicio + tamaño)
+     */
+    public long[] reservarBloque() throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_RESERVAR_BLOQUE);
+             ResultSet rs = stmt.executeQuery()) {
+
+            if (!rs.next()) {
+                throw new SQLException("No se pudo reservar un bloque de folios");
+            }
+            long inicio = rs.getLong("inicio");
+            long incremento = rs.getLong("incremento");
+            if (incremento < TAMANO_BLOQUE) {
+                throw new SQLException("tickets_folio_seq tiene INCREMENT BY " + incremento
+                        + " y el bloque de folios es de " + TAMANO_BLOQUE + ": se repetirían folios");
+            }
+            return new long[]{inicio, TAMANO_BLOQUE};
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package dao;
+
+import config.DatabaseConfig;
+import models.FranjaTarifa;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Acceso a las franjas horarias de las tarifas (tabla tarifa_franjas).
+ */
+public class FranjaTarifaDAO {
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * Franjas activas de la tarifa, en el orden en que se aplican (por id).
+     */
+    public List<FranjaTarifa> findActivasByTarifa(int tarifaId) throws SQLException {
+        String sql = "SELECT * FROM tarifa_franjas WHERE tarifa_id = ? AND activa = true ORDER BY id";
+        List<FranjaTarifa> franjas = new ArrayList<>();
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, tarifaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    franjas.add(mapResultSetToFranja(rs));
+                }
+            }
+        }
+        return franjas;
+    }
+
+    private FranjaTarifa mapResultSetToFranja(ResultSet rs) throws SQLException {
+        FranjaTarifa f = new FranjaTarifa();
+        f.setId(rs.getInt("id"));
+        f.setTarifaId(rs.getInt("tarifa_id"));
+        f.setTipoDia(rs.getString("tipo_dia"));
+        f.setHoraInicio(rs.getTime("hora_inicio").toLocalTime());
+        f.setHoraFin(rs.getTime("hora_fin").toLocalTime());
+        f.setValorHora(rs.getBigDecimal("valor_hora"));
+        f.setValorFraccion(rs.getBigDecimal("valor_fraccion"));
+        f.setActiva(rs.getBoolean("activa"));
+        return f;
+    }
+}
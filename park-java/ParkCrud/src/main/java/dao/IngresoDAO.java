@@ -0,0 +1,95 @@
+package dao;
+
+import config.DatabaseConfig;
+import models.Ticket;
+
+import java.math.BigDecimal;
+import java.sql.*;
+
+/**
+ * Registro de ingreso en un solo viaje a la base de datos.
+ * Una única sentencia verifica la mensualidad vigente e inserta el ticket con el folio
+ * asignado por {@code services.FolioAllocator}; la regla "un ticket abierto por placa"
+ * la garantiza el índice único parcial ux_tickets_placa_abierto (ver database/migraciones/001_ticket_abierto_por_placa.sql).
+ */
+public class IngresoDAO {
+
+    private static final String SQL_REGISTRAR_INGRESO =
+            "WITH datos AS (" +
+            "  SELECT EXISTS (SELECT 1 FROM mensualidades m" +
+            "                 WHERE m.placa = ? AND m.activa = true" +
+            "                   AND CURRENT_DATE BETWEEN m.fecha_inicio AND m.fecha_fin) AS es_mensualidad" +
+            ") " +
+            "INSERT INTO tickets (numero_folio, placa, tipo_ingreso, fecha_ingreso, operador_ingreso_id," +
+            "                     qr_code, monto_cobrado, pagado, activo) " +
+            "SELECT ?, ?," +
+            "       CASE WHEN es_mensualidad THEN 'Mensualidad' ELSE 'Invitado' END," +
+            "       ?, ?, ?, 0, es_mensualidad, true " +
+            "FROM datos " +
+            "ON CONFLICT (placa) WHERE fecha_salida IS NULL AND activo = true DO NOTHING " +
+            "RETURNING id, tipo_ingreso, pagado";
+
+    // Variante cuando el tipo de ingreso ya se resolvió en memoria (MensualidadCache)
+    private static final String SQL_REGISTRAR_INGRESO_CLASIFICADO =
+            "INSERT INTO tickets (numero_folio, placa, tipo_ingreso, fecha_ingreso, operador_ingreso_id," +
+            "                     qr_code, monto_cobrado, pagado, activo) " +
+            "VALUES (?, ?, ?, ?, ?, ?, 0, ?, true) " +
+            "ON CONFLICT (placa) WHERE fecha_salida IS NULL AND activo = true DO NOTHING " +
+            "RETURNING id, tipo_ingreso, pagado";
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * Registra el ingreso del ticket en una sola sentencia.
+     * El ticket debe traer folio, placa (normalizada), fecha de ingreso, operador y QR.
+     * Si además trae tipo de ingreso se usa tal cual; si no, la base de datos lo resuelve
+     * consultando la mensualidad vigente. En ambos casos completa el id y si queda pagado.
+     *
+     * @return el ticket completo, o null si la placa ya tiene un ticket abierto
+     */
+    public Ticket registrarIngreso(Ticket ticket, Connection conn) throws SQLException {
+        boolean clasificado = ticket.getTipoIngreso() != null;
+        String sql = clasificado ? SQL_REGISTRAR_INGRESO_CLASIFICADO : SQL_REGISTRAR_INGRESO;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (!clasificado) {
+                stmt.setString(i++, ticket.getPlaca());
+            }
+            stmt.setString(i++, ticket.getNumeroFolio());
+            stmt.setString(i++, ticket.getPlaca());
+            if (clasificado) {
+                stmt.setString(i++, ticket.getTipoIngreso());
+            }
+            stmt.setTimestamp(i++, Timestamp.valueOf(ticket.getFechaIngreso()));
+            stmt.setInt(i++, ticket.getOperadorIngresoId());
+            stmt.setString(i++, ticket.getQrCode());
+            if (clasificado) {
+                stmt.setBoolean(i, "Mensualidad".equals(ticket.getTipoIngreso()));
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null; // ON CONFLICT: ya existe un ticket abierto para la placa
+                }
+                ticket.setId(rs.getInt("id"));
+                ticket.setTipoIngreso(rs.getString("tipo_ingreso"));
+                ticket.setPagado(rs.getBoolean("pagado"));
+                ticket.setMontoCobrado(BigDecimal.ZERO);
+                ticket.setActivo(true);
+                return ticket;
+            }
+        }
+    }
+
+    /**
+     * Variante que presta su propia conexión del pool (auto-commit).
+     */
+    public Ticket registrarIngreso(Ticket ticket) throws SQLException {
+        try (Connection conn = getConnection()) {
+            return registrarIngreso(ticket, conn);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package dao;
+
+import config.DatabaseConfig;
+import models.Mensualidad;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consultas para construir el índice en memoria de mensualidades (MensualidadCache).
+ */
+public class MensualidadIndiceDAO {
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * Mensualidades activas que aún no han vencido (vigentes hoy o que inician después).
+     */
+    public List<Mensualidad> findActivasNoVencidas() throws SQLException {
+        String sql = "SELECT * FROM mensualidades WHERE activa = true AND fecha_fin >= CURRENT_DATE";
+        List<Mensualidad> mensualidades = new ArrayList<>();
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                mensualidades.add(mapResultSetToMensualidad(rs));
+            }
+        }
+        return mensualidades;
+    }
+
+    /**
+     * Todas las mensualidades activas de la placa que aún no han vencido (una placa puede
+     * tener varias, p. ej. la vigente y la renovación del mes siguiente).
+     */
+    public List<Mensualidad> findActivasNoVencidasByPlaca(String placa) throws SQLException {
+        String sql = "SELECT * FROM mensualidades WHERE placa = ? AND activa = true AND fecha_fin >= CURRENT_DATE " +
+                "ORDER BY fecha_inicio";
+        List<Mensualidad> mensualidades = new ArrayList<>();
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, placa.toUpperCase());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    mensualidades.add(mapResultSetToMensualidad(rs));
+                }
+            }
+        }
+        return mensualidades;
+    }
+
+    private Mensualidad mapResultSetToMensualidad(ResultSet rs) throws SQLException {
+        Mensualidad m = new Mensualidad();
+        m.setId(rs.getInt("id"));
+        m.setNombrePropietario(rs.getString("nombre_propietario"));
+        m.setEmail(rs.getString("email"));
+        m.setPlaca(rs.getString("placa"));
+        m.setFechaInicio(rs.getDate("fecha_inicio").toLocalDate());
+        m.setFechaFin(rs.getDate("fecha_fin").toLocalDate());
+        m.setActiva(rs.getBoolean("activa"));
+        return m;
+    }
+}
@@ -0,0 +1,109 @@
+package dao;
+
+import config.DatabaseConfig;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * Claves de idempotencia (ver database/migraciones/007_operaciones_idempotentes.sql).
+ *
+ * La clave se reserva antes de ejecutar la operación y se completa con su resultado al
+ * terminar; si la operación falla se libera para que el reintento la vuelva a ejecutar.
+ */
+public class OperacionIdempotenteDAO {
+
+    private static final String SQL_RESERVAR =
+            "INSERT INTO operaciones_idempotentes (clave, operacion) VALUES (?, ?) " +
+            "ON CONFLICT (clave) DO NOTHING";
+
+    private static final String SQL_BUSCAR =
+            "SELECT operacion, resultado FROM operaciones_idempotentes WHERE clave = ?";
+
+    private static final String SQL_COMPLETAR =
+            "UPDATE operaciones_idempotentes SET resultado = ? WHERE clave = ?";
+
+    private static final String SQL_LIBERAR =
+            "DELETE FROM operaciones_idempotentes WHERE clave = ? AND resultado IS NULL";
+
+    private static final String SQL_PURGAR =
+            "DELETE FROM operaciones_idempotentes WHERE fecha_creacion < ?";
+
+    /**
+     * Operación registrada con una clave; resultado es null si aún no terminó.
+     */
+    public static class Registro {
+        public final String operacion;
+        public final String resultado;
+
+        public Registro(String operacion, String resultado) {
+            this.operacion = operacion;
+            this.resultado = resultado;
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * @return true si la clave quedó reservada; false si ya existía
+     */
+    public boolean reservar(String clave, String operacion) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_RESERVAR)) {
+            stmt.setString(1, clave);
+            stmt.setString(2, operacion);
+            return stmt.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * @return la operación registrada con la clave, o null si no existe
+     */
+    public Registro buscar(String clave) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_BUSCAR)) {
+            stmt.setString(1, clave);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Registro(rs.getString("operacion"), rs.getString("resultado"));
+                }
+            }
+        }
+        return null;
+    }
+
+    public void completar(String clave, String resultado) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_COMPLETAR)) {
+            stmt.setString(1, resultado);
+            stmt.setString(2, clave);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Borra una reserva sin resultado (la operación falló sin escribir nada).
+     */
+    public void liberar(String clave) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_LIBERAR)) {
+            stmt.setString(1, clave);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Borra las claves creadas antes de la fecha indicada.
+     *
+     * @return cantidad de claves borradas
+     */
+    public int purgar(LocalDateTime antesDe) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_PURGAR)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(antesDe));
+            return stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package dao;
+
+import config.DatabaseConfig;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * Pago manual registrado por el operador desde el panel.
+ *
+ * Una sola sentencia marca el ticket como pagado y crea el pago, solo si el ticket sigue
+ * abierto (fecha_salida IS NULL). Es atómica en auto-commit: un ticket que otro carril ya
+ * cerró no recibe el pago, y un error no deja el pago sin el ticket marcado (ni al revés).
+ */
+public class PagoManualDAO {
+
+    private static final String SQL_REGISTRAR =
+            "WITH pagado AS (" +
+            "  UPDATE tickets SET monto_cobrado = ?, pagado = true, fecha_actualizacion = CURRENT_TIMESTAMP" +
+            "  WHERE id = ? AND fecha_salida IS NULL" +
+            "  RETURNING id" +
+            ") " +
+            "INSERT INTO pagos (ticket_id, monto, metodo_pago, operador_id, fecha_pago, observaciones) " +
+            "SELECT id, ?, ?, ?, ?, ? FROM pagado " +
+            "RETURNING id";
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * @return true si se registró; false si el ticket ya no estaba abierto
+     */
+    public boolean registrar(int ticketId, BigDecimal monto, String metodoPago, int operadorId,
+                             LocalDateTime fechaPago, String observaciones) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_REGISTRAR)) {
+
+            stmt.setBigDecimal(1, monto);
+            stmt.setInt(2, ticketId);
+            stmt.setBigDecimal(3, monto);
+            stmt.setString(4, metodoPago);
+            stmt.setInt(5, operadorId);
+            stmt.setTimestamp(6, Timestamp.valueOf(fechaPago));
+            stmt.setString(7, observaciones);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
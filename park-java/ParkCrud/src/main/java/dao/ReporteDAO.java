@@ -0,0 +1,81 @@
+package dao;
+
+import config.DatabaseConfig;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * Lectura histórica de salidas y pagos para los reportes (services.ReporteHistorico).
+ *
+ * Las filas se recorren con un cursor del servidor: con auto-commit apagado y fetchSize
+ * el driver de PostgreSQL trae de a fetchSize filas en vez de cargar el resultado
+ * completo, así que la memoria no depende del rango de fechas. Cada fila se entrega al
+ * {@link Receptor} sin crear objetos Ticket/Pago.
+ *
+ * Usa una conexión dedicada (fuera del pool) porque un reporte de varios años puede tardar
+ * y no debe ocupar un cupo que necesitan los carriles.
+ */
+public class ReporteDAO {
+
+    // Salidas y pagos en un solo flujo ordenado por fecha (tipo 0 = salida, 1 = pago)
+    private static final String SQL_MOVIMIENTOS =
+            "SELECT fecha, tipo, tipo_ingreso, minutos, monto, metodo_pago FROM (" +
+            "  SELECT fecha_salida AS fecha, 0 AS tipo, tipo_ingreso, tiempo_estadia_minutos AS minutos," +
+            "         NULL::numeric AS monto, NULL::varchar AS metodo_pago" +
+            "  FROM tickets WHERE fecha_salida >= ? AND fecha_salida < ?" +
+            "  UNION ALL" +
+            "  SELECT fecha_pago, 1, NULL, NULL, monto, metodo_pago" +
+            "  FROM pagos WHERE fecha_pago >= ? AND fecha_pago < ?" +
+            ") m ORDER BY fecha";
+
+    /**
+     * Recibe los movimientos en orden de fecha.
+     */
+    public interface Receptor {
+        void salida(LocalDateTime fecha, String tipoIngreso, int minutosEstadia) throws SQLException;
+
+        void pago(LocalDateTime fecha, BigDecimal monto, String metodoPago) throws SQLException;
+    }
+
+    /**
+     * Recorre las salidas (por fecha_salida) y los pagos (por fecha_pago) de [desde, hasta).
+     *
+     * @param fetchSize filas que se traen del servidor por viaje
+     * @return cantidad de filas leídas
+     */
+    public long recorrerMovimientos(LocalDateTime desde, LocalDateTime hasta, int fetchSize,
+                                    Receptor receptor) throws SQLException {
+        try (Connection conn = DatabaseConfig.getInstance().abrirConexionDedicada()) {
+            // Sin auto-commit el driver usa un cursor y respeta fetchSize
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_MOVIMIENTOS,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(fetchSize);
+                Timestamp d = Timestamp.valueOf(desde);
+                Timestamp h = Timestamp.valueOf(hasta);
+                stmt.setTimestamp(1, d);
+                stmt.setTimestamp(2, h);
+                stmt.setTimestamp(3, d);
+                stmt.setTimestamp(4, h);
+
+                long filas = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        LocalDateTime fecha = rs.getTimestamp(1).toLocalDateTime();
+                        if (rs.getInt(2) == 0) {
+                            receptor.salida(fecha, rs.getString(3), rs.getInt(4));
+                        } else {
+                            receptor.pago(fecha, rs.getBigDecimal(5), rs.getString(6));
+                        }
+                        filas++;
+                    }
+                }
+                conn.commit();
+                return filas;
+            }
+        }
+    }
+}
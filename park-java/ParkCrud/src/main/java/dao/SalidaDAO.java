@@ -0,0 +1,151 @@
+package dao;
+
+import config.DatabaseConfig;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * Registro de salida en un solo viaje a la base de datos.
+ *
+ * Una sentencia cierra el ticket (solo si sigue abierto), registra el pago cuando hay
+ * cobro y marca el ticket como pagado. Como es una única sentencia en auto-commit es
+ * atómica por sí misma: no hace falta BEGIN/COMMIT ni las tres escrituras separadas
+ * (registrarSalida, pagos y registrarPago) con sus viajes de ida y vuelta.
+ *
+ * Todas las variantes cierran con una actualización condicional (fecha_salida IS NULL): si
+ * dos carriles cierran el mismo ticket a la vez, solo uno lo cierra y el otro recibe false,
+ * sin leer el ticket antes ni bloquearlo con SELECT ... FOR UPDATE.
+ */
+public class SalidaDAO {
+
+    private static final String SQL_CERRAR =
+            "WITH cerrado AS (" +
+            "  UPDATE tickets SET fecha_salida = CURRENT_TIMESTAMP, operador_salida_id = ?," +
+            "         tiempo_estadia_minutos = ?, monto_cobrado = ?, pagado = true," +
+            "         fecha_actualizacion = CURRENT_TIMESTAMP" +
+            "  WHERE id = ? AND fecha_salida IS NULL" +
+            "  RETURNING id" +
+            "), pago AS (" +
+            "  INSERT INTO pagos (ticket_id, monto, metodo_pago, operador_id, fecha_pago, observaciones)" +
+            "  SELECT id, ?, ?, ?, ?, ? FROM cerrado WHERE ? > 0" +
+            ") " +
+            "SELECT id FROM cerrado";
+
+    // Primera escritura de la salida en transacción (salida.persistencia=transaccion)
+    private static final String SQL_REGISTRAR_SALIDA =
+            "UPDATE tickets SET fecha_salida = CURRENT_TIMESTAMP, operador_salida_id = ?," +
+            "       tiempo_estadia_minutos = ?, fecha_actualizacion = CURRENT_TIMESTAMP" +
+            " WHERE id = ? AND fecha_salida IS NULL";
+
+    // Varias salidas (de distintos carriles) en una sola sentencia y un solo commit
+    private static final String SQL_CERRAR_GRUPO =
+            "WITH entrada AS (" +
+            "  SELECT * FROM unnest(?::int[], ?::int[], ?::int[], ?::numeric[], ?::text[], ?::timestamp[])" +
+            "         WITH ORDINALITY AS e(ticket_id, operador_id, minutos, monto, metodo, fecha_pago, n)" +
+            "), cerrado AS (" +
+            "  UPDATE tickets t SET fecha_salida = CURRENT_TIMESTAMP, operador_salida_id = e.operador_id," +
+            "         tiempo_estadia_minutos = e.minutos, monto_cobrado = e.monto, pagado = true," +
+            "         fecha_actualizacion = CURRENT_TIMESTAMP" +
+            "  FROM entrada e" +
+            "  WHERE t.id = e.ticket_id AND t.fecha_salida IS NULL" +
+            "  RETURNING t.id, e.n, e.operador_id, e.minutos, e.monto, e.metodo, e.fecha_pago" +
+            "), pago AS (" +
+            "  INSERT INTO pagos (ticket_id, monto, metodo_pago, operador_id, fecha_pago, observaciones)" +
+            "  SELECT id, monto, metodo, operador_id, fecha_pago," +
+            "         'Pago automático por salida - Tiempo: ' || minutos || ' min'" +
+            "  FROM cerrado WHERE monto > 0" +
+            ") " +
+            "SELECT n FROM cerrado";
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * Cierra el ticket y registra su pago en una sola sentencia.
+     *
+     * @return true si se cerró; false si el ticket ya no estaba abierto
+     */
+    public boolean cerrarTicket(int ticketId, int operadorSalidaId, int minutosEstadia, BigDecimal monto,
+                                String metodoPago, LocalDateTime fechaPago) throws SQLException {
+        try (Connection conn = getConnection()) {
+            return cerrarTicket(ticketId, operadorSalidaId, minutosEstadia, monto, metodoPago, fechaPago, conn);
+        }
+    }
+
+    public boolean cerrarTicket(int ticketId, int operadorSalidaId, int minutosEstadia, BigDecimal monto,
+                                String metodoPago, LocalDateTime fechaPago, Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_CERRAR)) {
+            stmt.setInt(1, operadorSalidaId);
+            stmt.setInt(2, minutosEstadia);
+            stmt.setBigDecimal(3, monto);
+            stmt.setInt(4, ticketId);
+            stmt.setBigDecimal(5, monto);
+            stmt.setString(6, metodoPago);
+            stmt.setInt(7, operadorSalidaId);
+            stmt.setTimestamp(8, Timestamp.valueOf(fechaPago));
+            stmt.setString(9, "Pago automático por salida - Tiempo: " + minutosEstadia + " min");
+            stmt.setBigDecimal(10, monto);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Registra solo la salida (sin pago) dentro de la transacción del llamador.
+     *
+     * @return true si se cerró; false si el ticket ya no estaba abierto
+     */
+    public boolean registrarSalida(int ticketId, int operadorSalidaId, int minutosEstadia, Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_REGISTRAR_SALIDA)) {
+            stmt.setInt(1, operadorSalidaId);
+            stmt.setInt(2, minutosEstadia);
+            stmt.setInt(3, ticketId);
+            return stmt.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Cierra varios tickets en una sola sentencia (group commit). Los arreglos son
+     * paralelos: la posición i describe la salida i.
+     *
+     * @return cerrados[i] = true si la salida i cerró su ticket
+     */
+    public boolean[] cerrarTickets(int[] ticketIds, int[] operadores, int[] minutos, BigDecimal[] montos,
+                                   String[] metodos, LocalDateTime[] fechasPago) throws SQLException {
+        int n = ticketIds.length;
+        Integer[] ids = new Integer[n];
+        Integer[] ops = new Integer[n];
+        Integer[] mins = new Integer[n];
+        Timestamp[] fechas = new Timestamp[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = ticketIds[i];
+            ops[i] = operadores[i];
+            mins[i] = minutos[i];
+            fechas[i] = Timestamp.valueOf(fechasPago[i]);
+        }
+
+        boolean[] cerrados = new boolean[n];
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_CERRAR_GRUPO)) {
+
+            stmt.setArray(1, conn.createArrayOf("integer", ids));
+            stmt.setArray(2, conn.createArrayOf("integer", ops));
+            stmt.setArray(3, conn.createArrayOf("integer", mins));
+            stmt.setArray(4, conn.createArrayOf("numeric", montos));
+            stmt.setArray(5, conn.createArrayOf("text", metodos));
+            stmt.setArray(6, conn.createArrayOf("timestamp", fechas));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    cerrados[(int) rs.getLong("n") - 1] = true;
+                }
+            }
+        }
+        return cerrados;
+    }
+}
@@ -0,0 +1,106 @@
+package dao;
+
+import config.DatabaseConfig;
+import models.Ticket;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consultas de tickets abiertos para el índice en memoria (TicketsAbiertosIndex).
+ */
+public class TicketAbiertoDAO {
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * Todos los tickets abiertos (sin fecha de salida y activos).
+     */
+    public List<Ticket> findAbiertos() throws SQLException {
+        String sql = "SELECT * FROM tickets WHERE fecha_salida IS NULL AND activo = true";
+        List<Ticket> tickets = new ArrayList<>();
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setFetchSize(500);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    tickets.add(mapResultSetToTicket(rs));
+                }
+            }
+        }
+        return tickets;
+    }
+
+    /**
+     * Ticket abierto con el folio indicado, o null si no existe o ya salió.
+     */
+    public Ticket findAbiertoByFolio(String numeroFolio) throws SQLException {
+        String sql = "SELECT * FROM tickets WHERE numero_folio = ? AND fecha_salida IS NULL AND activo = true";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, numeroFolio);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapResultSetToTicket(rs);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cantidad de tickets abiertos por tipo de ingreso (para conciliar la ocupación).
+     */
+    public Map<String, Long> contarAbiertosPorTipo() throws SQLException {
+        String sql = "SELECT tipo_ingreso, COUNT(*) AS total FROM tickets " +
+                "WHERE fecha_salida IS NULL AND activo = true GROUP BY tipo_ingreso";
+        Map<String, Long> conteo = new HashMap<>();
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                conteo.put(rs.getString("tipo_ingreso"), rs.getLong("total"));
+            }
+        }
+        return conteo;
+    }
+
+    private Ticket mapResultSetToTicket(ResultSet rs) throws SQLException {
+        Ticket ticket = new Ticket();
+        ticket.setId(rs.getInt("id"));
+        ticket.setNumeroFolio(rs.getString("numero_folio"));
+        ticket.setPlaca(rs.getString("placa"));
+        ticket.setTipoIngreso(rs.getString("tipo_ingreso"));
+        ticket.setQrCode(rs.getString("qr_code"));
+        ticket.setMontoCobrado(rs.getBigDecimal("monto_cobrado"));
+        ticket.setPagado(rs.getBoolean("pagado"));
+        ticket.setActivo(rs.getBoolean("activo"));
+
+        int operadorIngreso = rs.getInt("operador_ingreso_id");
+        ticket.setOperadorIngresoId(rs.wasNull() ? null : operadorIngreso);
+        int operadorSalida = rs.getInt("operador_salida_id");
+        ticket.setOperadorSalidaId(rs.wasNull() ? null : operadorSalida);
+        int estadia = rs.getInt("tiempo_estadia_minutos");
+        ticket.setTiempoEstadiaMinutos(rs.wasNull() ? null : estadia);
+
+        Timestamp fechaIngreso = rs.getTimestamp("fecha_ingreso");
+        ticket.setFechaIngreso(fechaIngreso != null ? fechaIngreso.toLocalDateTime() : null);
+        Timestamp fechaSalida = rs.getTimestamp("fecha_salida");
+        ticket.setFechaSalida(fechaSalida != null ? fechaSalida.toLocalDateTime() : null);
+        Timestamp fechaCreacion = rs.getTimestamp("fecha_creacion");
+        ticket.setFechaCreacion(fechaCreacion != null ? fechaCreacion.toLocalDateTime() : null);
+        Timestamp fechaActualizacion = rs.getTimestamp("fecha_actualizacion");
+        ticket.setFechaActualizacion(fechaActualizacion != null ? fechaActualizacion.toLocalDateTime() : null);
+        return ticket;
+    }
+}
@@ -0,0 +1,191 @@
+package dao;
+
+import config.DatabaseConfig;
+import models.Turno;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turnos de los operadores (ver database/migraciones/006_turno_cierres.sql).
+ *
+ * El cierre guarda los totales que ya vienen calculados (services.CierreTurno): no suma
+ * pagos ni tickets. Las consultas de pagos e ingresos por rango solo se usan para la parte
+ * de un turno anterior al arranque de la aplicación.
+ */
+public class TurnoDAO {
+
+    private static final String SQL_ABIERTO =
+            "SELECT id, operador_id, fecha_apertura, fecha_cierre, total_ingresos, total_cobros, activo, observaciones " +
+            "FROM turnos WHERE operador_id = ? AND fecha_cierre IS NULL " +
+            "ORDER BY fecha_apertura DESC LIMIT 1";
+
+    private static final String SQL_ULTIMO_CIERRE =
+            "SELECT MAX(fecha_cierre) AS fecha_cierre FROM turnos WHERE operador_id = ?";
+
+    private static final String SQL_INSERTAR_CERRADO =
+            "INSERT INTO turnos (operador_id, fecha_apertura, fecha_cierre, total_ingresos, total_cobros, activo, observaciones) " +
+            "VALUES (?, ?, ?, ?, ?, false, ?) RETURNING id";
+
+    private static final String SQL_CERRAR =
+            "UPDATE turnos SET fecha_cierre = ?, total_ingresos = ?, total_cobros = ?, activo = false, observaciones = ? " +
+            "WHERE id = ? AND fecha_cierre IS NULL";
+
+    private static final String SQL_TOTAL =
+            "INSERT INTO turno_totales (turno_id, metodo_pago, cantidad, total) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (turno_id, metodo_pago) DO UPDATE SET cantidad = EXCLUDED.cantidad, total = EXCLUDED.total";
+
+    private static final String SQL_PAGOS_RANGO =
+            "SELECT metodo_pago, COUNT(*) AS cantidad, COALESCE(SUM(monto), 0) AS total " +
+            "FROM pagos WHERE operador_id = ? AND fecha_pago >= ? AND fecha_pago < ? " +
+            "GROUP BY metodo_pago";
+
+    private static final String SQL_INGRESOS_RANGO =
+            "SELECT COUNT(*) AS cantidad FROM tickets " +
+            "WHERE operador_ingreso_id = ? AND fecha_ingreso >= ? AND fecha_ingreso < ?";
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConfig.getInstance().getConnection();
+    }
+
+    /**
+     * @return el turno abierto del operador, o null si no tiene
+     */
+    public Turno findAbierto(int operadorId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_ABIERTO)) {
+            stmt.setInt(1, operadorId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Timestamp cierre = rs.getTimestamp("fecha_cierre");
+                return new Turno(
+                        rs.getInt("id"),
+                        rs.getInt("operador_id"),
+                        rs.getTimestamp("fecha_apertura").toLocalDateTime(),
+                        cierre != null ? cierre.toLocalDateTime() : null,
+                        rs.getInt("total_ingresos"),
+                        rs.getBigDecimal("total_cobros"),
+                        rs.getBoolean("activo"),
+                        rs.getString("observaciones"));
+            }
+        }
+    }
+
+    /**
+     * @return fecha del último cierre de turno del operador, o null si nunca ha cerrado uno
+     */
+    public LocalDateTime findUltimoCierre(int operadorId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_ULTIMO_CIERRE)) {
+            stmt.setInt(1, operadorId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                Timestamp cierre = rs.next() ? rs.getTimestamp("fecha_cierre") : null;
+                return cierre != null ? cierre.toLocalDateTime() : null;
+            }
+        }
+    }
+
+    /**
+     * Pagos del operador en [desde, hasta) por método de pago.
+     *
+     * @return método → {cantidad, total en centavos}
+     */
+    public Map<String, long[]> totalesPagos(int operadorId, LocalDateTime desde, LocalDateTime hasta) throws SQLException {
+        Map<String, long[]> totales = new HashMap<>();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_PAGOS_RANGO)) {
+            stmt.setInt(1, operadorId);
+            stmt.setTimestamp(2, Timestamp.valueOf(desde));
+            stmt.setTimestamp(3, Timestamp.valueOf(hasta));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long centavos = rs.getBigDecimal("total").movePointRight(2).longValue();
+                    totales.put(rs.getString("metodo_pago"), new long[]{rs.getLong("cantidad"), centavos});
+                }
+            }
+        }
+        return totales;
+    }
+
+    /**
+     * Ingresos registrados por el operador en [desde, hasta).
+     */
+    public int contarIngresos(int operadorId, LocalDateTime desde, LocalDateTime hasta) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_INGRESOS_RANGO)) {
+            stmt.setInt(1, operadorId);
+            stmt.setTimestamp(2, Timestamp.valueOf(desde));
+            stmt.setTimestamp(3, Timestamp.valueOf(hasta));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt("cantidad") : 0;
+            }
+        }
+    }
+
+    /**
+     * Guarda el cierre del turno y su desglose por método de pago en una transacción.
+     * Si el turno no existe en la base de datos (id 0) se inserta ya cerrado.
+     *
+     * @return id del turno
+     * @throws SQLException si el turno ya estaba cerrado
+     */
+    public int guardarCierre(Turno turno, String[] metodos, long[] cantidades, BigDecimal[] totales) throws SQLException {
+        try (Connection conn = DatabaseConfig.getInstance().getNewConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int turnoId = turno.getId();
+                Timestamp cierre = Timestamp.valueOf(turno.getFechaCierre());
+                if (turnoId == 0) {
+                    try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERTAR_CERRADO)) {
+                        stmt.setInt(1, turno.getOperadorId());
+                        stmt.setTimestamp(2, Timestamp.valueOf(turno.getFechaApertura()));
+                        stmt.setTimestamp(3, cierre);
+                        stmt.setInt(4, turno.getTotalIngresos());
+                        stmt.setBigDecimal(5, turno.getTotalCobros());
+                        stmt.setString(6, turno.getObservaciones());
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            rs.next();
+                            turnoId = rs.getInt(1);
+                        }
+                    }
+                } else {
+                    try (PreparedStatement stmt = conn.prepareStatement(SQL_CERRAR)) {
+                        stmt.setTimestamp(1, cierre);
+                        stmt.setInt(2, turno.getTotalIngresos());
+                        stmt.setBigDecimal(3, turno.getTotalCobros());
+                        stmt.setString(4, turno.getObservaciones());
+                        stmt.setInt(5, turnoId);
+                        if (stmt.executeUpdate() == 0) {
+                            throw new SQLException("El turno " + turnoId + " ya fue cerrado");
+                        }
+                    }
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_TOTAL)) {
+                    for (int i = 0; i < metodos.length; i++) {
+                        stmt.setInt(1, turnoId);
+                        stmt.setString(2, metodos[i]);
+                        stmt.setLong(3, cantidades[i]);
+                        stmt.setBigDecimal(4, totales[i]);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+
+                conn.commit();
+                turno.setId(turnoId);
+                return turnoId;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package exceptios;
+
+import java.sql.SQLTransactionRollbackException;
+
+/**
+ * Otra operación (p. ej. otro carril) cerró el ticket primero.
+ *
+ * El cierre es una actualización condicional (WHERE fecha_salida IS NULL): quien llega
+ * segundo no escribe nada y recibe esta excepción, con SQLState 40001 como un conflicto de
+ * serialización. Se puede reintentar: el reintento ya no encuentra el ticket abierto.
+ */
+public class ConflictoCierreException extends SQLTransactionRollbackException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String SQL_STATE = "40001";
+
+    private final int ticketId;
+    private final String numeroFolio;
+
+    public ConflictoCierreException(int ticketId, String numeroFolio) {
+        super("El ticket " + numeroFolio + " ya fue cerrado por otra operación", SQL_STATE);
+        this.ticketId = ticketId;
+        this.numeroFolio = numeroFolio;
+    }
+
+    public int getTicketId() {
+        return ticketId;
+    }
+
+    public String getNumeroFolio() {
+        return numeroFolio;
+    }
+}
@@ -0,0 +1,133 @@
+package models;
+
+import java.math.BigDecimal;
+import java.time.LocalTime;
+
+/**
+ * Franja horaria de una tarifa (p. ej. tarifa nocturna o de fin de semana).
+ * Dentro de la franja se cobran sus propios valores por hora y fracción; fuera de
+ * cualquier franja se aplican los valores base de la tarifa.
+ */
+public class FranjaTarifa {
+
+    public static final String DIA_TODOS = "Todos";
+    public static final String DIA_SEMANA = "Semana";           // lunes a viernes
+    public static final String DIA_FIN_DE_SEMANA = "FinDeSemana"; // sábado y domingo
+
+    private int id;
+    private int tarifaId;
+    private String tipoDia; // "Todos", "Semana" o "FinDeSemana"
+    private LocalTime horaInicio;
+    private LocalTime horaFin; // si es menor o igual a horaInicio, la franja cruza la medianoche
+    private BigDecimal valorHora;
+    private BigDecimal valorFraccion;
+    private boolean activa;
+
+    // Constructor vacío
+    public FranjaTarifa() {
+    }
+
+    // Constructor completo
+    public FranjaTarifa(int id, int tarifaId, String tipoDia, LocalTime horaInicio, LocalTime horaFin,
+                        BigDecimal valorHora, BigDecimal valorFraccion, boolean activa) {
+        this.id = id;
+        this.tarifaId = tarifaId;
+        this.tipoDia = tipoDia;
+        this.horaInicio = horaInicio;
+        this.horaFin = horaFin;
+        this.valorHora = valorHora;
+        this.valorFraccion = valorFraccion;
+        this.activa = activa;
+    }
+
+    /**
+     * Indica si la franja aplica al día de la semana (1 = lunes ... 7 = domingo).
+     */
+    public boolean aplicaA(int diaSemana) {
+        if (DIA_SEMANA.equalsIgnoreCase(tipoDia)) {
+            return diaSemana <= 5;
+        }
+        if (DIA_FIN_DE_SEMANA.equalsIgnoreCase(tipoDia)) {
+            return diaSemana >= 6;
+        }
+        return true;
+    }
+
+    // Getters y Setters
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getTarifaId() {
+        return tarifaId;
+    }
+
+    public void setTarifaId(int tarifaId) {
+        this.tarifaId = tarifaId;
+    }
+
+    public String getTipoDia() {
+        return tipoDia;
+    }
+
+    public void setTipoDia(String tipoDia) {
+        this.tipoDia = tipoDia;
+    }
+
+    public LocalTime getHoraInicio() {
+        return horaInicio;
+    }
+
+    public void setHoraInicio(LocalTime horaInicio) {
+        this.horaInicio = horaInicio;
+    }
+
+    public LocalTime getHoraFin() {
+        return horaFin;
+    }
+
+    public void setHoraFin(LocalTime horaFin) {
+        this.horaFin = horaFin;
+    }
+
+    public BigDecimal getValorHora() {
+        return valorHora;
+    }
+
+    public void setValorHora(BigDecimal valorHora) {
+        this.valorHora = valorHora;
+    }
+
+    public BigDecimal getValorFraccion() {
+        return valorFraccion;
+    }
+
+    public void setValorFraccion(BigDecimal valorFraccion) {
+        this.valorFraccion = valorFraccion;
+    }
+
+    public boolean isActiva() {
+        return activa;
+    }
+
+    public void setActiva(boolean activa) {
+        this.activa = activa;
+    }
+
+    @Override
+    public String toString() {
+        return "FranjaTarifa{" +
+                "id=" + id +
+                ", tarifaId=" + tarifaId +
+                ", tipoDia='" + tipoDia + '\'' +
+                ", horaInicio=" + horaInicio +
+                ", horaFin=" + horaFin +
+                ", valorHora=" + valorHora +
+                ", valorFraccion=" + valorFraccion +
+                '}';
+    }
+}
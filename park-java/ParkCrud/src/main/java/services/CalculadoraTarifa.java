@@ -0,0 +1,175 @@
+package services;
+
+import models.FranjaTarifa;
+import models.Tarifa;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Motor de cálculo de cobro por estadía.
+ *
+ * Reglas: los primeros {@code tiempoGracia} minutos no se cobran; del tiempo restante se
+ * cobra {@code valorBaseHora} por cada hora completa y {@code valorFraccion} si sobran
+ * minutos. El cobro se agrupa en días de 24 horas contados desde el ingreso y cada día se
+ * limita a {@code topeDiario} (si está configurado). Si la tarifa tiene franjas horarias
+ * (nocturna, fin de semana) cada hora se cobra con el valor de la franja en que inicia
+ * (ver {@link HorarioTarifa}).
+ *
+ * Trabaja en centavos (long) y no reserva memoria por cálculo: la conversión desde y hacia
+ * BigDecimal se hace una sola vez al crear la calculadora y al entregar el resultado.
+ * Las instancias son inmutables y se pueden compartir entre hilos.
+ */
+public final class CalculadoraTarifa {
+
+    /** Valor de tope que indica "sin tope diario". */
+    public static final long SIN_TOPE = -1;
+
+    private static final int MINUTOS_DIA = 1440;
+
+    private final int tiempoGraciaMinutos;
+    private final long valorHoraCentavos;
+    private final long valorFraccionCentavos;
+    private final long topeDiarioCentavos;
+    private final HorarioTarifa horario; // null si la tarifa no tiene franjas
+
+    public CalculadoraTarifa(int tiempoGraciaMinutos, long valorHoraCentavos,
+                             long valorFraccionCentavos, long topeDiarioCentavos) {
+        this(tiempoGraciaMinutos, valorHoraCentavos, valorFraccionCentavos, topeDiarioCentavos, null);
+    }
+
+    private CalculadoraTarifa(int tiempoGraciaMinutos, long valorHoraCentavos,
+                              long valorFraccionCentavos, long topeDiarioCentavos,
+                              HorarioTarifa horario) {
+        this.tiempoGraciaMinutos = tiempoGraciaMinutos;
+        this.valorHoraCentavos = valorHoraCentavos;
+        this.valorFraccionCentavos = valorFraccionCentavos;
+        this.topeDiarioCentavos = topeDiarioCentavos;
+        this.horario = horario;
+    }
+
+    /**
+     * Precalcula los valores de la tarifa en centavos.
+     */
+    public static CalculadoraTarifa desde(Tarifa tarifa) {
+        return new CalculadoraTarifa(
+                tarifa.getTiempoGraciaMinutos(),
+                aCentavos(tarifa.getValorBaseHora()),
+                aCentavos(tarifa.getValorFraccion()),
+                tarifa.getTopeDiario() != null ? aCentavos(tarifa.getTopeDiario()) : SIN_TOPE
+        );
+    }
+
+    /**
+     * Precalcula la tarifa con sus franjas horarias (la lista puede estar vacía).
+     */
+    public static CalculadoraTarifa desde(Tarifa tarifa, List<FranjaTarifa> franjas) {
+        CalculadoraTarifa base = desde(tarifa);
+        if (franjas == null || franjas.isEmpty()) {
+            return base;
+        }
+        HorarioTarifa horario = HorarioTarifa.compilar(franjas, base.valorHoraCentavos, base.valorFraccionCentavos);
+        return new CalculadoraTarifa(base.tiempoGraciaMinutos, base.valorHoraCentavos,
+                base.valorFraccionCentavos, base.topeDiarioCentavos, horario);
+    }
+
+    /**
+     * Monto a cobrar, en centavos, por una estadía que inició en {@code ingreso}.
+     */
+    public long calcularCentavos(LocalDateTime ingreso, long minutosEstadia) {
+        if (horario == null) {
+            return calcularCentavos(minutosEstadia);
+        }
+        long ingresoMinuto = ingreso.toLocalDate().toEpochDay() * MINUTOS_DIA
+                + ingreso.getHour() * 60 + ingreso.getMinute();
+        return horario.calcularCentavos(ingresoMinuto, minutosEstadia, tiempoGraciaMinutos, topeDiarioCentavos);
+    }
+
+    /**
+     * Monto a cobrar, en centavos, ignorando las franjas horarias (valores base).
+     */
+    public long calcularCentavos(long minutosEstadia) {
+        return calcularCentavos(minutosEstadia, tiempoGraciaMinutos,
+                valorHoraCentavos, valorFraccionCentavos, topeDiarioCentavos);
+    }
+
+    /**
+     * Monto a cobrar como BigDecimal (escala 2), para registrar el pago.
+     */
+    public BigDecimal calcular(LocalDateTime ingreso, long minutosEstadia) {
+        return aBigDecimal(calcularCentavos(ingreso, minutosEstadia));
+    }
+
+    /**
+     * Cálculo sobre valores primitivos (valores base, sin franjas), para recálculos masivos
+     * sin crear objetos. Es de tiempo constante: los días completos intermedios de una
+     * estadía larga tienen siempre 24 horas cobrables, así que solo se calculan el primer
+     * y el último día.
+     */
+    public static long calcularCentavos(long minutosEstadia, int tiempoGracia,
+                                        long valorHoraCentavos, long valorFraccionCentavos,
+                                        long topeDiarioCentavos) {
+        if (minutosEstadia <= tiempoGracia) {
+            return 0;
+        }
+        long minutosCobrables = minutosEstadia - tiempoGracia;
+        long horas = minutosCobrables / 60;
+        long fraccion = minutosCobrables % 60 > 0 ? valorFraccionCentavos : 0;
+
+        // Inicio (en minutos desde el ingreso) del primer y del último bloque cobrado
+        long ultimoInicio = fraccion > 0 ? tiempoGracia + horas * 60 : tiempoGracia + (horas - 1) * 60;
+        long primerDia = tiempoGracia / MINUTOS_DIA;
+        long ultimoDia = ultimoInicio / MINUTOS_DIA;
+
+        if (primerDia == ultimoDia) {
+            return limitar(horas * valorHoraCentavos + fraccion, topeDiarioCentavos);
+        }
+        long total = limitar(horasEnDia(primerDia, tiempoGracia, horas) * valorHoraCentavos, topeDiarioCentavos);
+        total += (ultimoDia - primerDia - 1) * limitar(24 * valorHoraCentavos, topeDiarioCentavos);
+        total += limitar(horasEnDia(ultimoDia, tiempoGracia, horas) * valorHoraCentavos + fraccion, topeDiarioCentavos);
+        return total;
+    }
+
+    /**
+     * Cantidad de bloques de hora que inician dentro del día {@code dia} (24 h desde el ingreso).
+     */
+    private static long horasEnDia(long dia, int tiempoGracia, long horas) {
+        long desde = Math.max(0, Math.min(horas, techo(dia * MINUTOS_DIA - tiempoGracia, 60)));
+        long hasta = Math.max(0, Math.min(horas, techo((dia + 1) * MINUTOS_DIA - tiempoGracia, 60)));
+        return hasta - desde;
+    }
+
+    private static long limitar(long monto, long tope) {
+        return tope >= 0 && monto > tope ? tope : monto;
+    }
+
+    private static long techo(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+
+    public static long aCentavos(BigDecimal valor) {
+        return valor.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal aBigDecimal(long centavos) {
+        return BigDecimal.valueOf(centavos, 2);
+    }
+
+    public int getTiempoGraciaMinutos() {
+        return tiempoGraciaMinutos;
+    }
+
+    public long getValorHoraCentavos() {
+        return valorHoraCentavos;
+    }
+
+    public long getValorFraccionCentavos() {
+        return valorFraccionCentavos;
+    }
+
+    public long getTopeDiarioCentavos() {
+        return topeDiarioCentavos;
+    }
+}
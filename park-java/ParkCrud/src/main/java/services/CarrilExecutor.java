@@ -0,0 +1,151 @@
+package services;
+
+import models.Ticket;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import javax.swing.SwingUtilities;
+
+/**
+ * Ejecuta las operaciones de portería fuera del hilo de la interfaz, una cola por carril.
+ *
+ * Cada carril tiene su propio ejecutor de un solo hilo virtual: las operaciones de un mismo
+ * carril se ejecutan en el orden en que se pidieron (un ingreso y la salida que le sigue no
+ * se adelantan), mientras que carriles distintos avanzan en paralelo. La espera de base de
+ * datos y de impresión bloquea solo el hilo virtual, no la interfaz.
+ *
+ * Los resultados se entregan como CompletableFuture; los errores de negocio llegan como la
+ * SQLException original dentro de la CompletionException. Para tocar componentes Swing con
+ * el resultado use {@link #EN_UI}:
+ * <pre>
+ * carriles.registrarIngreso("entrada-1", placa, operadorId)
+ *         .whenCompleteAsync((ticket, error) -> ..., CarrilExecutor.EN_UI);
+ * </pre>
+ */
+public class CarrilExecutor {
+
+    /** Ejecuta en el hilo de eventos de Swing. */
+    public static final Executor EN_UI = SwingUtilities::invokeLater;
+
+    private static volatile CarrilExecutor instance;
+
+    // Carril de la operación que se está ejecutando en el hilo actual
+    private static final ThreadLocal<String> CARRIL_ACTUAL = new ThreadLocal<>();
+
+    private final TicketService ticketService;
+    private final Map<String, ExecutorService> carriles = new ConcurrentHashMap<>();
+    private volatile boolean cerrado;
+
+    /**
+     * Operación de un carril (puede lanzar los errores de negocio de TicketService).
+     */
+    @FunctionalInterface
+    public interface Operacion<T> {
+        T ejecutar() throws SQLException;
+    }
+
+    private CarrilExecutor() {
+        this.ticketService = new TicketService();
+    }
+
+    public static CarrilExecutor getInstance() {
+        if (instance == null) {
+            synchronized (CarrilExecutor.class) {
+                if (instance == null) {
+                    instance = new CarrilExecutor();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public CompletableFuture<Ticket> registrarIngreso(String carril, String placa, int operadorIngresoId) {
+        return ejecutar(carril, () -> ticketService.registrarIngreso(placa, operadorIngresoId));
+    }
+
+    public CompletableFuture<BigDecimal> registrarSalida(String carril, String placa, int operadorSalidaId, String metodoPago) {
+        return ejecutar(carril, () -> ticketService.registrarSalida(placa, operadorSalidaId, metodoPago));
+    }
+
+    public CompletableFuture<BigDecimal> registrarSalidaPorQr(String carril, String contenidoQr, int operadorSalidaId, String metodoPago) {
+        return ejecutar(carril, () -> ticketService.registrarSalidaPorQr(contenidoQr, operadorSalidaId, metodoPago));
+    }
+
+    /**
+     * Variantes con clave de operación: si la interfaz reintenta tras un timeout con la misma
+     * clave recibe el resultado original en lugar de repetir la operación (ver Idempotencia).
+     */
+    public CompletableFuture<Ticket> registrarIngreso(String carril, String placa, int operadorIngresoId, String claveOperacion) {
+        return ejecutar(carril, () -> ticketService.registrarIngreso(placa, operadorIngresoId, claveOperacion));
+    }
+
+    public CompletableFuture<BigDecimal> registrarSalida(String carril, String placa, int operadorSalidaId, String metodoPago,
+                                                         String claveOperacion) {
+        return ejecutar(carril, () -> ticketService.registrarSalida(placa, operadorSalidaId, metodoPago, claveOperacion));
+    }
+
+    public CompletableFuture<BigDecimal> registrarSalidaPorQr(String carril, String contenidoQr, int operadorSalidaId, String metodoPago,
+                                                              String claveOperacion) {
+        return ejecutar(carril, () -> ticketService.registrarSalidaPorQr(contenidoQr, operadorSalidaId, metodoPago, claveOperacion));
+    }
+
+    public CompletableFuture<Boolean> registrarPagoManual(String carril, String placa, BigDecimal monto, String metodoPago,
+                                                          int operadorId, String claveOperacion) {
+        return ejecutar(carril, () -> ticketService.registrarPagoManual(placa, monto, metodoPago, operadorId, claveOperacion));
+    }
+
+    /**
+     * Encola una operación en el carril indicado y retorna de inmediato.
+     */
+    public <T> CompletableFuture<T> ejecutar(String carril, Operacion<T> operacion) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        if (cerrado) {
+            resultado.completeExceptionally(new SQLException("El ejecutor de carriles está detenido"));
+            return resultado;
+        }
+        try {
+            ejecutorDe(carril).execute(() -> {
+                CARRIL_ACTUAL.set(carril);
+                try {
+                    resultado.complete(operacion.ejecutar());
+                } catch (Throwable e) {
+                    resultado.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            resultado.completeExceptionally(new SQLException("El ejecutor de carriles está detenido", e));
+        }
+        return resultado;
+    }
+
+    /**
+     * Carril de la operación en curso, o null fuera de un carril (p. ej. desde la interfaz).
+     * ColaImpresion lo usa para elegir la impresora del carril.
+     */
+    public static String carrilActual() {
+        return CARRIL_ACTUAL.get();
+    }
+
+    /**
+     * Detiene los carriles; las operaciones ya encoladas terminan de ejecutarse.
+     */
+    public void cerrar() {
+        cerrado = true;
+        for (ExecutorService ejecutor : carriles.values()) {
+            ejecutor.shutdown();
+        }
+    }
+
+    private ExecutorService ejecutorDe(String carril) {
+        String clave = carril != null ? carril : "";
+        return carriles.computeIfAbsent(clave, c -> Executors.newSingleThreadExecutor(
+                Thread.ofVirtual().name("crudpark-carril-" + (c.isEmpty() ? "principal" : c)).factory()));
+    }
+}
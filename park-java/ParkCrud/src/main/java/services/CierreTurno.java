@@ -0,0 +1,337 @@
+package services;
+
+import dao.OperadorDAO;
+import dao.TurnoDAO;
+import models.Operador;
+import models.Turno;
+import util.Log;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Totales del turno de cada operador, acumulados a medida que se confirman los pagos y los
+ * ingresos, para que el cierre de turno no tenga que recorrer pagos ni tickets.
+ *
+ * Cada operador tiene un acumulado en memoria (cantidad y centavos por método de pago, e
+ * ingresos registrados). Un operador trabaja en una sola portería a la vez, así que un
+ * candado por operador no tiene contención y el cierre toma los totales completos y
+ * consistentes de una vez. Al cerrar, el acumulado se cambia por uno vacío para el turno
+ * siguiente y los totales se guardan en turnos / turno_totales.
+ *
+ * El acumulado empieza con la aplicación o con el último cierre. Si el turno abierto en la
+ * base de datos (o el último cierre del operador) es anterior, es decir, la aplicación se
+ * reinició a mitad de turno, solo ese tramo se completa consultando pagos y tickets.
+ */
+public class CierreTurno {
+
+    private static final Log LOG = Log.de(CierreTurno.class);
+
+    // Métodos de pago válidos (ver TicketService); "Otro" recoge cualquier otro valor
+    private static final String[] METODOS = {"Efectivo", "Tarjeta", "Transferencia", "Otro"};
+    private static final int OTRO = METODOS.length - 1;
+
+    private static volatile CierreTurno instance;
+
+    private final TurnoDAO turnoDAO;
+    private final OperadorDAO operadorDAO;
+    // Los pagos de este proceso son posteriores; los anteriores solo están en la base de datos
+    private final LocalDateTime inicio;
+    private final Map<Integer, Acumulado> acumulados = new ConcurrentHashMap<>();
+
+    private CierreTurno() {
+        this.turnoDAO = new TurnoDAO();
+        this.operadorDAO = new OperadorDAO();
+        this.inicio = LocalDateTime.now();
+    }
+
+    public static CierreTurno getInstance() {
+        if (instance == null) {
+            synchronized (CierreTurno.class) {
+                if (instance == null) {
+                    instance = new CierreTurno();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Suma un pago ya confirmado en la base de datos (o en el diario local).
+     */
+    public void registrarPago(int operadorId, String metodoPago, BigDecimal monto) {
+        int metodo = indice(metodoPago);
+        long centavos = monto.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        // Si el turno se cerró justo ahora, el pago queda en el turno siguiente
+        while (!acumulado(operadorId).sumarPago(metodo, centavos)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Suma un ingreso ya registrado.
+     */
+    public void registrarIngreso(int operadorId) {
+        while (!acumulado(operadorId).sumarIngreso()) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Totales del turno en curso según lo registrado en esta aplicación (sin consultar la
+     * base de datos).
+     */
+    public Resumen getResumen(int operadorId) {
+        return acumulado(operadorId).resumen(operadorId, LocalDateTime.now(), false);
+    }
+
+    /**
+     * Cierra el turno del operador: guarda los totales en la base de datos e imprime el
+     * reporte de cierre. Si no se pueden guardar, los totales vuelven al turno en curso.
+     */
+    public Resumen cerrarTurno(int operadorId, String observaciones) throws SQLException {
+        LocalDateTime cierre = LocalDateTime.now();
+        Acumulado anterior = acumulados.put(operadorId, new Acumulado(cierre));
+        if (anterior == null) {
+            anterior = new Acumulado(inicio);
+        }
+        // Solo lo acumulado en memoria: es lo que vuelve al turno si el cierre falla
+        Resumen enMemoria = anterior.resumen(operadorId, cierre, true);
+        Resumen resumen = enMemoria;
+
+        try {
+            Turno turno = turnoDAO.findAbierto(operadorId);
+            LocalDateTime apertura;
+            if (turno != null) {
+                apertura = turno.getFechaApertura();
+            } else {
+                LocalDateTime ultimoCierre = turnoDAO.findUltimoCierre(operadorId);
+                apertura = ultimoCierre != null && ultimoCierre.isBefore(resumen.desde) ? ultimoCierre : resumen.desde;
+                turno = new Turno(operadorId, apertura);
+            }
+            if (apertura.isBefore(resumen.desde)) {
+                resumen = completarDesdeBaseDeDatos(resumen, apertura);
+            }
+
+            turno.setFechaCierre(cierre);
+            turno.setTotalIngresos((int) resumen.ingresos);
+            turno.setTotalCobros(resumen.getTotalCobros());
+            turno.setObservaciones(observaciones);
+            turnoDAO.guardarCierre(turno, resumen.metodosConMovimiento(), resumen.cantidadesConMovimiento(),
+                    resumen.totalesConMovimiento());
+            resumen.turnoId = turno.getId();
+        } catch (SQLException e) {
+            // Sin el tramo de la base de datos: el próximo cierre lo vuelve a consultar
+            devolver(operadorId, anterior.desde, enMemoria);
+            throw e;
+        }
+
+        LOG.info("Turno {} cerrado - Operador: {} - Pagos: {} - Total: ${} - Ingresos: {}",
+                resumen.turnoId, operadorId, resumen.getCantidadPagos(), resumen.getTotalCobros(), resumen.ingresos);
+
+        try {
+            new CierreTurnoPrinterService(resumen, nombreOperador(operadorId)).imprimir();
+        } catch (Exception printEx) {
+            LOG.warn("Error al imprimir el reporte de cierre de turno: {}", printEx.getMessage());
+        }
+        return resumen;
+    }
+
+    private Acumulado acumulado(int operadorId) {
+        return acumulados.computeIfAbsent(operadorId, id -> new Acumulado(inicio));
+    }
+
+    /**
+     * El cierre no se guardó: los totales vuelven al acumulado junto con lo que se haya
+     * registrado mientras tanto.
+     */
+    private void devolver(int operadorId, LocalDateTime desde, Resumen resumen) {
+        acumulados.compute(operadorId, (id, actual) -> {
+            Acumulado restaurado = new Acumulado(desde);
+            restaurado.sumar(resumen);
+            if (actual != null) {
+                restaurado.sumar(actual.resumen(id, LocalDateTime.now(), true));
+            }
+            return restaurado;
+        });
+    }
+
+    /**
+     * Agrega el tramo [apertura, desde) del turno, anterior al arranque de la aplicación.
+     */
+    private Resumen completarDesdeBaseDeDatos(Resumen resumen, LocalDateTime apertura) throws SQLException {
+        Map<String, long[]> previos = turnoDAO.totalesPagos(resumen.operadorId, apertura, resumen.desde);
+        long[] cantidades = resumen.cantidades.clone();
+        long[] centavos = resumen.centavos.clone();
+        for (Map.Entry<String, long[]> e : previos.entrySet()) {
+            int metodo = indice(e.getKey());
+            cantidades[metodo] += e.getValue()[0];
+            centavos[metodo] += e.getValue()[1];
+        }
+        long ingresos = resumen.ingresos + turnoDAO.contarIngresos(resumen.operadorId, apertura, resumen.desde);
+        LOG.info("Turno del operador {} completado con la base de datos desde {}", resumen.operadorId, apertura);
+        return new Resumen(resumen.operadorId, apertura, resumen.hasta, ingresos, cantidades, centavos);
+    }
+
+    private String nombreOperador(int operadorId) {
+        try {
+            Operador operador = operadorDAO.findById(operadorId);
+            if (operador != null) {
+                return operador.getNombre();
+            }
+        } catch (SQLException e) {
+            LOG.warn("No se pudo leer el operador {}: {}", operadorId, e.getMessage());
+        }
+        return "#" + operadorId;
+    }
+
+    private static int indice(String metodoPago) {
+        for (int i = 0; i < OTRO; i++) {
+            if (METODOS[i].equalsIgnoreCase(metodoPago)) {
+                return i;
+            }
+        }
+        return OTRO;
+    }
+
+    /**
+     * Totales de un operador desde {@code desde}. Se bloquea solo el acumulado de ese
+     * operador.
+     */
+    private static final class Acumulado {
+        private final LocalDateTime desde;
+        private final long[] cantidades = new long[METODOS.length];
+        private final long[] centavos = new long[METODOS.length];
+        private long ingresos;
+        private boolean cerrado;
+
+        private Acumulado(LocalDateTime desde) {
+            this.desde = desde;
+        }
+
+        /**
+         * @return false si el acumulado ya se cerró (hay que usar el del turno siguiente)
+         */
+        private synchronized boolean sumarPago(int metodo, long monto) {
+            if (cerrado) {
+                return false;
+            }
+            cantidades[metodo]++;
+            centavos[metodo] += monto;
+            return true;
+        }
+
+        private synchronized boolean sumarIngreso() {
+            if (cerrado) {
+                return false;
+            }
+            ingresos++;
+            return true;
+        }
+
+        private synchronized void sumar(Resumen r) {
+            for (int i = 0; i < METODOS.length; i++) {
+                cantidades[i] += r.cantidades[i];
+                centavos[i] += r.centavos[i];
+            }
+            ingresos += r.ingresos;
+        }
+
+        private synchronized Resumen resumen(int operadorId, LocalDateTime hasta, boolean cerrar) {
+            cerrado |= cerrar;
+            return new Resumen(operadorId, desde, hasta, ingresos, cantidades.clone(), centavos.clone());
+        }
+    }
+
+    /**
+     * Totales de un turno (o de lo que va del turno).
+     */
+    public static final class Resumen {
+        private final int operadorId;
+        private final LocalDateTime desde;
+        private final LocalDateTime hasta;
+        private final long ingresos;
+        private final long[] cantidades;
+        private final long[] centavos;
+        private int turnoId;
+
+        private Resumen(int operadorId, LocalDateTime desde, LocalDateTime hasta, long ingresos,
+                        long[] cantidades, long[] centavos) {
+            this.operadorId = operadorId;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.ingresos = ingresos;
+            this.cantidades = cantidades;
+            this.centavos = centavos;
+        }
+
+        /**
+         * @return 0 si el turno no se ha cerrado
+         */
+        public int getTurnoId() {
+            return turnoId;
+        }
+
+        public int getOperadorId() {
+            return operadorId;
+        }
+
+        public LocalDateTime getApertura() {
+            return desde;
+        }
+
+        public LocalDateTime getCierre() {
+            return hasta;
+        }
+
+        public long getIngresos() {
+            return ingresos;
+        }
+
+        public long getCantidad(String metodoPago) {
+            return cantidades[indice(metodoPago)];
+        }
+
+        public BigDecimal getTotal(String metodoPago) {
+            return CalculadoraTarifa.aBigDecimal(centavos[indice(metodoPago)]);
+        }
+
+        public long getCantidadPagos() {
+            return Arrays.stream(cantidades).sum();
+        }
+
+        public BigDecimal getTotalCobros() {
+            return CalculadoraTarifa.aBigDecimal(Arrays.stream(centavos).sum());
+        }
+
+        /**
+         * Los tres métodos de pago siempre; "Otro" solo si tuvo pagos.
+         */
+        String[] metodosConMovimiento() {
+            return cantidades[OTRO] > 0 ? METODOS.clone() : Arrays.copyOf(METODOS, OTRO);
+        }
+
+        long[] cantidadesConMovimiento() {
+            return Arrays.copyOf(cantidades, metodosConMovimiento().length);
+        }
+
+        BigDecimal[] totalesConMovimiento() {
+            BigDecimal[] totales = new BigDecimal[metodosConMovimiento().length];
+            for (int i = 0; i < totales.length; i++) {
+                totales[i] = CalculadoraTarifa.aBigDecimal(centavos[i]);
+            }
+            return totales;
+        }
+
+        @Override
+        public String toString() {
+            return "Resumen{turno=" + turnoId + ", operador=" + operadorId + ", pagos=" + getCantidadPagos() +
+                    ", total=" + getTotalCobros() + ", ingresos=" + ingresos + "}";
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package services;
+
+import util.PlantillaTicket;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Reporte de cierre de turno con comandos ESC/POS. Usa los mismos comandos de plantilla
+ * que los tickets (ver PlantillaTicket) y sale por la cola de impresión.
+ */
+public class CierreTurnoPrinterService {
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm a");
+
+    private static final String[] METODOS = {"Efectivo", "Tarjeta", "Transferencia", "Otro"};
+
+    private final CierreTurno.Resumen resumen;
+    private final String operador;
+
+    public CierreTurnoPrinterService(CierreTurno.Resumen resumen, String operador) {
+        this.resumen = resumen;
+        this.operador = operador;
+    }
+
+    private byte[] generarReporteData() {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("[INIT][CENTRO][NORMAL]==============================\n");
+        sb.append("[NEGRITA][DOBLE]CRUD PARK - CIERRE DE TURNO\n");
+        sb.append("[/NEGRITA][NORMAL]==============================\n\n");
+        sb.append("[IZQUIERDA]TURNO #: ").append(resumen.getTurnoId()).append('\n');
+        sb.append("OPERADOR: ").append(texto(operador)).append('\n');
+        sb.append("APERTURA: ").append(FORMATO_FECHA.format(resumen.getApertura())).append('\n');
+        sb.append("CIERRE:   ").append(FORMATO_FECHA.format(resumen.getCierre())).append('\n');
+        sb.append("INGRESOS: ").append(resumen.getIngresos()).append('\n');
+        sb.append("------------------------------\n");
+        for (String metodo : METODOS) {
+            long cantidad = resumen.getCantidad(metodo);
+            if (cantidad == 0 && metodo.equals("Otro")) {
+                continue;
+            }
+            sb.append(metodo.toUpperCase()).append(": ").append(cantidad)
+                    .append(" - $").append(resumen.getTotal(metodo).toPlainString()).append('\n');
+        }
+        sb.append("==============================\n");
+        sb.append("[CENTRO][NEGRITA][DOBLE]TOTAL: $").append(resumen.getTotalCobros().toPlainString()).append('\n');
+        sb.append("[/NEGRITA][NORMAL]PAGOS: ").append(resumen.getCantidadPagos()).append('\n');
+        sb.append("==============================\n");
+        sb.append("\n\n\n\n");
+        sb.append("[CORTE]");
+        return PlantillaTicket.generarTexto(sb.toString());
+    }
+
+    // Un texto libre no debe leerse como campo o comando de la plantilla
+    private static String texto(String s) {
+        return s == null ? "" : s.replace('{', '(').replace('}', ')').replace('[', '(').replace(']', ')');
+    }
+
+    /**
+     * Genera el reporte y lo deja en la cola de impresión; retorna sin esperar a la impresora.
+     */
+    public void imprimir() {
+        ColaImpresion.getInstance().encolar(generarReporteData());
+    }
+}
@@ -0,0 +1,481 @@
+package services;
+
+import config.PropertiesConfig;
+import util.Log;
+import util.Metricas;
+import util.PrinterUtil;
+import util.TransporteImpresora;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cola de impresión en segundo plano.
+ *
+ * Los servicios de impresión solo encolan los bytes ESC/POS y retornan. Cada impresora
+ * (ver PrinterUtil) tiene su propia cola y su hilo, que le envía los trabajos en orden:
+ * una impresora sin papel no detiene a las demás, y los carriles que comparten impresora
+ * comparten su cola. Mientras la cola está vacía, el hilo verifica la conexión cada
+ * impresion.verificar_ms y la restablece si se perdió. Si la impresora falla (sin papel, desconectada), el
+ * trabajo se reintenta con espera exponencial (impresion.reintentos.base_ms hasta
+ * impresion.reintentos.max_ms); tras impresion.reintentos.max intentos se mueve a
+ * spool/fallidos para reimprimirlo a mano.
+ *
+ * Cada trabajo se guarda en el directorio impresion.spool.dir antes de encolarse y se borra
+ * al imprimirse, así que los tickets pendientes sobreviven a un reinicio. Si la cola en
+ * memoria (impresion.cola.capacidad) está llena, el trabajo queda solo en disco y el hilo
+ * lo recoge cuando la cola se vacía.
+ */
+public class ColaImpresion {
+
+    private static final Log LOG = Log.de(ColaImpresion.class);
+
+    private static final String EXTENSION = ".prn";
+    private static final String DIR_FALLIDOS = "fallidos";
+
+    private static final String IMPRESION = "crudpark_impresion";
+    private static final String AYUDA_IMPRESION = "Latencia de la cola de impresión";
+    private static final Metricas.Temporizador M_ESPERA = Metricas.temporizador(IMPRESION, AYUDA_IMPRESION, "etapa", "espera_en_cola");
+    private static final Metricas.Temporizador M_ENVIO = Metricas.temporizador(IMPRESION, AYUDA_IMPRESION, "etapa", "envio");
+
+    private static volatile ColaImpresion instance;
+
+    private final int capacidadCola;
+    private final long verificarMillis;
+    private final Map<String, Canal> canales = new ConcurrentHashMap<>();
+    private final Path spool;
+    private final boolean spoolDisponible;
+    // Se actualizan al recargar la configuración (impresion.reintentos.*)
+    private volatile int maxIntentos;
+    private volatile long esperaBaseMillis;
+    private volatile long esperaMaxMillis;
+
+    private final AtomicLong secuencia = new AtomicLong();
+    // Trabajos que ya están en la cola o en manos del hilo (para no encolarlos dos veces)
+    private final Set<Long> enCola = ConcurrentHashMap.newKeySet();
+    private volatile boolean pendientesEnDisco;
+
+    private final LongAdder encolados = new LongAdder();
+    private final LongAdder enviados = new LongAdder();
+    private final LongAdder reintentos = new LongAdder();
+    private final LongAdder fallidos = new LongAdder();
+    private final LongAdder desbordados = new LongAdder();
+
+    private ColaImpresion() {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        this.capacidadCola = Math.max(1, props.getIntProperty("impresion.cola.capacidad", 100));
+        this.verificarMillis = Math.max(1000, props.getIntProperty("impresion.verificar_ms", 10000));
+        aplicarReintentos(props);
+        props.suscribir("impresion.reintentos.", claves -> aplicarReintentos(props));
+
+        String dir = props.getProperty("impresion.spool.dir");
+        this.spool = Paths.get(dir != null && !dir.trim().isEmpty() ? dir.trim() : "spool");
+        this.spoolDisponible = prepararSpool();
+        if (spoolDisponible) {
+            // Los ids tampoco se repiten con los de fallidos, que se conservan para revisarlos
+            for (long id : idsEn(spool.resolve(DIR_FALLIDOS))) {
+                secuencia.accumulateAndGet(id, Math::max);
+            }
+            recuperarPendientes();
+        }
+
+        Metricas.indicador("crudpark_impresion_cola_profundidad", "Trabajos en la cola de impresión", this::getProfundidad);
+        Metricas.indicador("crudpark_impresion_reintentos_total", "Reintentos de impresión", this::getReintentos);
+        Metricas.indicador("crudpark_impresion_fallidos_total", "Trabajos movidos a fallidos", this::getFallidos);
+        Metricas.indicador("crudpark_impresoras_no_disponibles", "Impresoras que no respondieron a la última verificación",
+                this::getImpresorasNoDisponibles);
+
+        // La impresora por defecto se verifica desde el arranque aunque aún no haya trabajos
+        canal(PrinterUtil.IMPRESORA_POR_DEFECTO);
+    }
+
+    private void aplicarReintentos(PropertiesConfig props) {
+        this.maxIntentos = Math.max(1, props.getIntProperty("impresion.reintentos.max", 5));
+        this.esperaBaseMillis = props.getIntProperty("impresion.reintentos.base_ms", 500);
+        this.esperaMaxMillis = props.getIntProperty("impresion.reintentos.max_ms", 30000);
+    }
+
+    public static ColaImpresion getInstance() {
+        if (instance == null) {
+            synchronized (ColaImpresion.class) {
+                if (instance == null) {
+                    instance = new ColaImpresion();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Encola un trabajo para la impresora del carril en curso (o la impresora por defecto)
+     * y retorna de inmediato.
+     *
+     * @param datos bytes ESC/POS del ticket
+     */
+    public void encolar(byte[] datos) {
+        encolar(datos, null);
+    }
+
+    /**
+     * Encola un trabajo de impresión y retorna de inmediato.
+     *
+     * @param datos           bytes ESC/POS del ticket
+     * @param nombreImpresora nombre lógico de la impresora (ver PrinterUtil); si no está
+     *                        configurada se usa la del carril o la impresora por defecto
+     */
+    public void encolar(byte[] datos, String nombreImpresora) {
+        String impresora = PrinterUtil.resolver(nombreImpresora, CarrilExecutor.carrilActual());
+        Trabajo trabajo = new Trabajo(secuencia.incrementAndGet(), impresora, datos);
+        encolados.increment();
+        enCola.add(trabajo.id);
+
+        if (spoolDisponible) {
+            try {
+                guardar(trabajo);
+            } catch (IOException e) {
+                LOG.warn("No se pudo guardar el trabajo de impresión en disco: {}", e.getMessage());
+            }
+        }
+
+        if (!canal(impresora).cola.offer(trabajo)) {
+            enCola.remove(trabajo.id);
+            desbordados.increment();
+            if (spoolDisponible) {
+                pendientesEnDisco = true;
+                LOG.warn("Cola de impresión de '{}' llena, el ticket queda pendiente en disco", impresora);
+            } else {
+                fallidos.increment();
+                LOG.warn("Cola de impresión de '{}' llena, se descarta el ticket {}", impresora, trabajo.id);
+            }
+        }
+    }
+
+    private Canal canal(String impresora) {
+        return canales.computeIfAbsent(impresora, Canal::new);
+    }
+
+    // Persistencia (spool)
+
+    private boolean prepararSpool() {
+        try {
+            Files.createDirectories(spool.resolve(DIR_FALLIDOS));
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Spool de impresión no disponible ({}), los trabajos pendientes no sobrevivirán un reinicio: {}",
+                    spool.toAbsolutePath(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Escribe el trabajo en un archivo temporal y lo renombra, para que un corte a mitad
+     * de la escritura no deje un archivo .prn incompleto.
+     */
+    private void guardar(Trabajo trabajo) throws IOException {
+        Path destino = archivo(trabajo.id);
+        Path temporal = spool.resolve(trabajo.id + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporal);
+             DataOutputStream data = new DataOutputStream(out)) {
+            data.writeUTF(trabajo.impresora != null ? trabajo.impresora : "");
+            data.writeInt(trabajo.datos.length);
+            data.write(trabajo.datos);
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Encola los archivos del spool que no estén ya en una cola, en orden de llegada, cada
+     * uno en la cola de su impresora. Se usa al iniciar y cuando hubo trabajos que no
+     * cupieron en la cola.
+     */
+    private synchronized void recuperarPendientes() {
+        List<Long> ids = idsEn(spool);
+        Collections.sort(ids);
+
+        int recuperados = 0;
+        for (Long id : ids) {
+            // La secuencia continúa después del último trabajo guardado
+            secuencia.accumulateAndGet(id, Math::max);
+            if (!enCola.add(id)) {
+                continue;
+            }
+            Trabajo trabajo;
+            try {
+                trabajo = leer(id);
+            } catch (IOException e) {
+                enCola.remove(id);
+                LOG.warn("Trabajo de impresión {} ilegible: {}", id, e.getMessage());
+                continue;
+            }
+            // La impresora guardada puede haber dejado de existir en la configuración
+            String impresora = PrinterUtil.resolver(trabajo.impresora, null);
+            if (!canal(impresora).cola.offer(new Trabajo(id, impresora, trabajo.datos))) {
+                enCola.remove(id);
+                pendientesEnDisco = true;
+                continue;
+            }
+            recuperados++;
+        }
+        if (recuperados > 0) {
+            LOG.info("Trabajos de impresión pendientes recuperados: {}", recuperados);
+        }
+    }
+
+    /**
+     * Ids de los trabajos guardados en el directorio ("id.prn", o "id-n.prn" en fallidos).
+     */
+    private static List<Long> idsEn(Path dir) {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path p : archivos) {
+                String nombre = p.getFileName().toString();
+                nombre = nombre.substring(0, nombre.length() - EXTENSION.length());
+                int guion = nombre.indexOf('-');
+                try {
+                    ids.add(Long.parseLong(guion > 0 ? nombre.substring(0, guion) : nombre));
+                } catch (NumberFormatException ignored) {
+                    // Archivo ajeno a la cola
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("No se pudo leer el spool de impresión ({}): {}", dir, e.getMessage());
+        }
+        return ids;
+    }
+
+    private Trabajo leer(long id) throws IOException {
+        try (InputStream in = Files.newInputStream(archivo(id));
+             DataInputStream data = new DataInputStream(in)) {
+            String impresora = data.readUTF();
+            byte[] datos = new byte[data.readInt()];
+            data.readFully(datos);
+            return new Trabajo(id, impresora, datos);
+        }
+    }
+
+    private void descartar(Trabajo trabajo) {
+        if (spoolDisponible) {
+            try {
+                Files.deleteIfExists(archivo(trabajo.id));
+            } catch (IOException e) {
+                LOG.warn("No se pudo borrar el trabajo impreso {}: {}", trabajo.id, e.getMessage());
+            }
+        }
+        enCola.remove(trabajo.id);
+    }
+
+    private void moverAFallidos(Trabajo trabajo) {
+        if (spoolDisponible) {
+            try {
+                // Nunca se reemplaza un fallido anterior: si el nombre existe se agrega -n
+                Path fallidos = spool.resolve(DIR_FALLIDOS);
+                Path destino = fallidos.resolve(trabajo.id + EXTENSION);
+                for (int n = 1; ; n++) {
+                    try {
+                        Files.move(archivo(trabajo.id), destino);
+                        break;
+                    } catch (FileAlreadyExistsException existe) {
+                        destino = fallidos.resolve(trabajo.id + "-" + n + EXTENSION);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("No se pudo mover el trabajo {} a fallidos: {}", trabajo.id, e.getMessage());
+            }
+        }
+        enCola.remove(trabajo.id);
+    }
+
+    private Path archivo(long id) {
+        return spool.resolve(id + EXTENSION);
+    }
+
+    // Métricas
+
+    /** Trabajos esperando en las colas en memoria. */
+    public int getProfundidad() {
+        int total = 0;
+        for (Canal c : canales.values()) {
+            total += c.cola.size();
+        }
+        return total;
+    }
+
+    public int getImpresorasNoDisponibles() {
+        int total = 0;
+        for (Canal c : canales.values()) {
+            if (!c.disponible) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    public long getEncolados() {
+        return encolados.sum();
+    }
+
+    public long getEnviados() {
+        return enviados.sum();
+    }
+
+    public long getReintentos() {
+        return reintentos.sum();
+    }
+
+    /** Trabajos abandonados tras agotar los reintentos (o descartados sin spool). */
+    public long getFallidos() {
+        return fallidos.sum();
+    }
+
+    /** Trabajos que no cupieron en la cola en memoria. */
+    public long getDesbordados() {
+        return desbordados.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ColaImpresion{" +
+                "profundidad=" + getProfundidad() +
+                ", encolados=" + getEncolados() +
+                ", enviados=" + getEnviados() +
+                ", reintentos=" + getReintentos() +
+                ", fallidos=" + getFallidos() +
+                ", desbordados=" + getDesbordados() +
+                '}';
+    }
+
+    /**
+     * Cola e hilo de envío de una impresora. Solo su hilo usa el transporte.
+     */
+    private final class Canal {
+        private final String impresora;
+        private final BlockingQueue<Trabajo> cola = new ArrayBlockingQueue<>(capacidadCola);
+        private TransporteImpresora transporte;
+        private long ultimaVerificacion;
+        private volatile boolean disponible = true;
+
+        private Canal(String impresora) {
+            this.impresora = impresora;
+            Thread hilo = new Thread(this::procesar, "crudpark-impresion-" + impresora);
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+
+        private void procesar() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Trabajo trabajo = cola.poll(1, TimeUnit.SECONDS);
+                    if (trabajo == null) {
+                        if (System.currentTimeMillis() - ultimaVerificacion >= verificarMillis) {
+                            verificar();
+                        }
+                        if (pendientesEnDisco) {
+                            pendientesEnDisco = false;
+                            recuperarPendientes();
+                        }
+                        continue;
+                    }
+                    imprimir(trabajo);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    // El hilo no debe morir por un trabajo defectuoso
+                    LOG.error("Error inesperado en la cola de impresión", e);
+                }
+            }
+        }
+
+        /**
+         * Transporte vigente; si la configuración de la impresora cambió se cierra el anterior.
+         */
+        private TransporteImpresora transporte() {
+            TransporteImpresora actual = PrinterUtil.transporte(impresora);
+            if (actual != transporte) {
+                if (transporte != null) {
+                    transporte.cerrar();
+                }
+                transporte = actual;
+            }
+            return actual;
+        }
+
+        private void verificar() {
+            ultimaVerificacion = System.currentTimeMillis();
+            actualizarEstado(transporte().verificar());
+        }
+
+        private void actualizarEstado(boolean ok) {
+            if (ok != disponible) {
+                disponible = ok;
+                if (ok) {
+                    LOG.info("Impresora '{}' disponible ({})", impresora, transporte);
+                } else {
+                    LOG.warn("Impresora '{}' no disponible ({})", impresora, transporte);
+                }
+            }
+        }
+
+        private void imprimir(Trabajo trabajo) throws InterruptedException {
+            if (trabajo.encolado != 0) {
+                M_ESPERA.registrar(trabajo.encolado, true);
+            }
+            long espera = esperaBaseMillis;
+            int intentos = maxIntentos;
+            for (int intento = 1; intento <= intentos; intento++) {
+                long inicioEnvio = M_ENVIO.iniciar();
+                boolean impreso = transporte().enviar(trabajo.datos);
+                M_ENVIO.registrar(inicioEnvio, impreso);
+                ultimaVerificacion = System.currentTimeMillis();
+                actualizarEstado(impreso);
+                if (impreso) {
+                    enviados.increment();
+                    descartar(trabajo);
+                    return;
+                }
+                if (intento < intentos) {
+                    reintentos.increment();
+                    Thread.sleep(espera);
+                    espera = Math.min(espera * 2, esperaMaxMillis);
+                }
+            }
+
+            fallidos.increment();
+            LOG.warn("No se pudo imprimir el trabajo {} en '{}' tras {} intentos", trabajo.id, impresora, intentos);
+            moverAFallidos(trabajo);
+        }
+    }
+
+    private static final class Trabajo {
+        private final long id;
+        private final String impresora;
+        private final byte[] datos;
+        // Marca de Metricas al crear el trabajo (0 si las métricas están deshabilitadas)
+        private final long encolado = M_ESPERA.iniciar();
+
+        private Trabajo(long id, String impresora, byte[] datos) {
+            this.id = id;
+            this.impresora = impresora;
+            this.datos = datos;
+        }
+    }
+}
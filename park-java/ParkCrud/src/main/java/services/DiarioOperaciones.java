@@ -0,0 +1,535 @@
+package services;
+
+import config.DatabaseConfig;
+import config.PropertiesConfig;
+import dao.DiarioDAO;
+import models.Ticket;
+import util.Log;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.time.LocalDateTime;
+import java.util.zip.CRC32;
+
+/**
+ * Diario local (write-ahead) de ingresos y salidas para operar sin base de datos.
+ *
+ * Cuando PostgreSQL no responde (error de conexión), TicketService guarda el evento aquí,
+ * actualiza el índice de tickets abiertos en memoria y sigue atendiendo el carril. Un hilo
+ * en segundo plano aplica los eventos pendientes en orden cuando la base de datos vuelve;
+ * cada evento es idempotente por folio (ver DiarioDAO), así que reaplicar tras un corte a
+ * mitad de camino es seguro.
+ *
+ * Formato: un evento por línea, {@code crc32 \t tipo \t campos...}. Las escrituras se
+ * agrupan en un solo fsync cada diario.fsync_ms; quien registra espera a que su línea
+ * esté en disco (milisegundos, sin depender de la red). El avance aplicado se guarda en
+ * diario.checkpoint y el archivo se vacía cuando todo quedó aplicado.
+ *
+ * La primera falla de conexión activa el modo sin conexión (ver {@link #marcarSinConexion}):
+ * desde entonces las operaciones van directo al diario, sin esperar el timeout del pool o
+ * del driver en cada una. El aplicador sondea la base de datos cada diario.sondeo_ms y
+ * desactiva el modo cuando responde y el diario quedó aplicado.
+ */
+public class DiarioOperaciones {
+
+    private static final Log LOG = Log.de(DiarioOperaciones.class);
+
+    private static final String ARCHIVO = "diario.log";
+    private static final String CHECKPOINT = "diario.checkpoint";
+    private static final String RECHAZADOS = "diario.rechazados";
+
+    private static final String INGRESO = "I";
+    private static final String SALIDA = "S";
+    private static final int TAMANO_LECTURA = 64 * 1024;
+
+    private static volatile DiarioOperaciones instance;
+
+    private final boolean habilitado;
+    private final Path directorio;
+    private final long fsyncMillis;
+    private final long reintentoMillis;
+    private final long sondeoMillis;
+    private final DiarioDAO diarioDAO;
+    private final TicketsAbiertosIndex ticketsAbiertos;
+
+    private FileChannel canal;
+
+    // Protegidos por 'this': líneas escritas y líneas ya en disco. El aplicador no toma
+    // este monitor mientras consulta la base de datos, así los carriles no esperan por ella.
+    private long escritos;
+    private long durables;
+    private IOException errorSincronizacion;
+
+    private volatile boolean sinConexion;
+    private volatile long aplicadoHasta; // offset del checkpoint
+    // Solo los modifica el hilo aplicador
+    private volatile long aplicados;
+    private volatile long rechazados;
+
+    private DiarioOperaciones() {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        String dir = props.getProperty("diario.dir");
+        this.directorio = Paths.get(dir != null && !dir.trim().isEmpty() ? dir.trim() : "diario");
+        this.fsyncMillis = props.getIntProperty("diario.fsync_ms", 2);
+        this.reintentoMillis = props.getIntProperty("diario.reintento_ms", 5000);
+        this.sondeoMillis = Math.max(100, props.getIntProperty("diario.sondeo_ms", 1000));
+        this.diarioDAO = new DiarioDAO();
+        this.ticketsAbiertos = TicketsAbiertosIndex.getInstance();
+        this.habilitado = !"false".equalsIgnoreCase(props.getProperty("diario.habilitado")) && abrir();
+
+        if (habilitado) {
+            recuperarVistaLocal();
+
+            Thread sincronizador = new Thread(this::sincronizar, "crudpark-diario-fsync");
+            sincronizador.setDaemon(true);
+            sincronizador.start();
+
+            Thread aplicador = new Thread(this::aplicarPeriodicamente, "crudpark-diario-replay");
+            aplicador.setDaemon(true);
+            aplicador.start();
+        }
+    }
+
+    public static DiarioOperaciones getInstance() {
+        if (instance == null) {
+            synchronized (DiarioOperaciones.class) {
+                if (instance == null) {
+                    instance = new DiarioOperaciones();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Indica si el error significa que la base de datos no está disponible (y no un error
+     * de datos o de reglas de negocio, que no se deben guardar en el diario). Además de la
+     * clase 08 (conexión) cuenta 57P01-57P03: el servidor se está deteniendo o reiniciando
+     * y corta las conexiones abiertas del pool.
+     */
+    public static boolean esFallaDeConexion(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String estado = ((SQLException) t).getSQLState();
+                if (estado != null && (estado.startsWith("08") || estado.startsWith("57P0"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    public Path getDirectorio() {
+        return directorio;
+    }
+
+    /**
+     * Indica si se está operando sin conexión: las operaciones deben ir al diario sin
+     * intentar la base de datos.
+     */
+    public boolean isSinConexion() {
+        return sinConexion;
+    }
+
+    /**
+     * Activa el modo sin conexión tras una falla de conexión. Solo el aplicador lo
+     * desactiva, cuando la base de datos vuelve a responder.
+     */
+    public void marcarSinConexion(SQLException causa) {
+        if (habilitado && !sinConexion) {
+            sinConexion = true;
+            LOG.warn("Base de datos no disponible, operando con el diario local: {}", causa.getMessage());
+        }
+    }
+
+    /**
+     * Guarda el ingreso y espera a que esté en disco.
+     */
+    public void registrarIngreso(Ticket ticket) throws SQLException {
+        escribir(linea(INGRESO,
+                ticket.getNumeroFolio(),
+                ticket.getPlaca(),
+                ticket.getTipoIngreso(),
+                ticket.getFechaIngreso().toString(),
+                String.valueOf(ticket.getOperadorIngresoId()),
+                ticket.getQrCode()));
+    }
+
+    /**
+     * Guarda la salida (con su cobro) y espera a que esté en disco.
+     */
+    public void registrarSalida(Ticket ticket, int operadorSalidaId, LocalDateTime fechaSalida,
+                                long minutosEstadia, long montoCentavos, String metodoPago) throws SQLException {
+        escribir(linea(SALIDA,
+                ticket.getNumeroFolio(),
+                ticket.getPlaca(),
+                fechaSalida.toString(),
+                String.valueOf(operadorSalidaId),
+                String.valueOf(minutosEstadia),
+                String.valueOf(montoCentavos),
+                metodoPago));
+    }
+
+    // Escritura con fsync agrupado
+
+    private boolean abrir() {
+        try {
+            Files.createDirectories(directorio);
+            canal = FileChannel.open(directorio.resolve(ARCHIVO),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            aplicadoHasta = leerCheckpoint();
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Diario local no disponible ({}), sin base de datos el carril se detendrá: {}",
+                    directorio.toAbsolutePath(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void escribir(String linea) throws SQLException {
+        if (!habilitado) {
+            throw new SQLException("El diario local no está disponible");
+        }
+        ByteBuffer datos = ByteBuffer.wrap(linea.getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            try {
+                while (datos.hasRemaining()) {
+                    canal.write(datos);
+                }
+            } catch (IOException e) {
+                throw new SQLException("No se pudo escribir en el diario local: " + e.getMessage(), e);
+            }
+            long mia = ++escritos;
+            notifyAll();
+
+            // Esperar el fsync que incluya esta línea
+            while (durables < mia) {
+                if (errorSincronizacion != null) {
+                    throw new SQLException("No se pudo guardar el diario local en disco: "
+                            + errorSincronizacion.getMessage(), errorSincronizacion);
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrumpido esperando el diario local", e);
+                }
+            }
+        }
+    }
+
+    private void sincronizar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                long hasta;
+                synchronized (this) {
+                    while (escritos == durables) {
+                        wait();
+                    }
+                }
+                // Dar unos milisegundos para que otros carriles se sumen al mismo fsync
+                if (fsyncMillis > 0) {
+                    Thread.sleep(fsyncMillis);
+                }
+                synchronized (this) {
+                    hasta = escritos;
+                }
+                IOException error = null;
+                try {
+                    canal.force(false);
+                } catch (IOException e) {
+                    error = e;
+                }
+                synchronized (this) {
+                    if (error == null) {
+                        durables = hasta;
+                        errorSincronizacion = null;
+                    } else {
+                        errorSincronizacion = error;
+                    }
+                    notifyAll();
+                }
+                if (error != null) {
+                    Thread.sleep(reintentoMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Aplicación en la base de datos
+
+    private void aplicarPeriodicamente() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(sinConexion ? sondeoMillis : reintentoMillis);
+                if (aplicarPendientes() && sinConexion && baseDeDatosResponde()) {
+                    sinConexion = false;
+                    LOG.info("Base de datos disponible de nuevo, fin del modo sin conexión");
+                    // Lo que se escribió en el diario mientras se desactivaba el modo
+                    aplicarPendientes();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.error("Error inesperado aplicando el diario local", e);
+            }
+        }
+    }
+
+    /**
+     * Aplica en orden los eventos pendientes. Se detiene en el primer error de conexión
+     * (se reintentará más tarde); un evento que la base de datos rechaza por otro motivo se
+     * copia a diario.rechazados para revisarlo a mano y se continúa con el siguiente.
+     *
+     * @return true si se llegó al final del diario; false si se detuvo por un error
+     */
+    private boolean aplicarPendientes() {
+        long offset = aplicadoHasta;
+        try (FileChannel lectura = FileChannel.open(directorio.resolve(ARCHIVO), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(TAMANO_LECTURA);
+            boolean aplicoAlgo = false;
+
+            while (offset < lectura.size()) {
+                buffer.clear();
+                int leidos = lectura.read(buffer, offset);
+                if (leidos <= 0) {
+                    break;
+                }
+                byte[] bloque = buffer.array();
+                int inicio = 0;
+                for (int i = 0; i < leidos; i++) {
+                    if (bloque[i] != '\n') {
+                        continue;
+                    }
+                    String linea = new String(bloque, inicio, i - inicio, StandardCharsets.UTF_8);
+                    try {
+                        aplicar(linea);
+                    } catch (SQLException e) {
+                        if (esFallaDeConexion(e)) {
+                            guardarCheckpoint(offset + inicio);
+                            marcarSinConexion(e);
+                            return false;
+                        }
+                        rechazar(linea, e.getMessage());
+                    }
+                    inicio = i + 1;
+                    aplicoAlgo = true;
+                }
+                if (inicio == 0) {
+                    if (leidos == TAMANO_LECTURA) {
+                        // Línea más larga que el buffer: solo puede ser basura, se descarta
+                        rechazar("(línea ilegible en el offset " + offset + ")", "línea demasiado larga");
+                        inicio = leidos;
+                    } else {
+                        break; // Última línea incompleta (se está escribiendo o quedó cortada)
+                    }
+                }
+                offset += inicio;
+                guardarCheckpoint(offset);
+            }
+
+            if (aplicoAlgo) {
+                LOG.info("Diario local aplicado en la base de datos ({} eventos)", aplicados);
+            }
+            compactar(offset);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("No se pudo leer el diario local: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean baseDeDatosResponde() {
+        try (Connection conn = DatabaseConfig.getInstance().getConnection()) {
+            return conn.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void aplicar(String linea) throws SQLException {
+        String[] campos = linea.split("\t", -1);
+        if (campos.length < 2 || !campos[0].equals(crc(linea.substring(campos[0].length() + 1)))) {
+            throw new SQLException("Evento del diario corrupto (CRC)");
+        }
+        if (INGRESO.equals(campos[1]) && campos.length == 8) {
+            String folio = campos[2];
+            int id = diarioDAO.aplicarIngreso(folio, campos[3], campos[4], LocalDateTime.parse(campos[5]),
+                    Integer.parseInt(campos[6]), campos[7]);
+            if (id == 0) {
+                throw new SQLException("La placa " + campos[3] + " ya tenía otro ticket abierto; ingreso " + folio + " no aplicado");
+            }
+            ticketsAbiertos.confirmarSincronizado(folio, id);
+        } else if (SALIDA.equals(campos[1]) && campos.length == 9) {
+            BigDecimal monto = CalculadoraTarifa.aBigDecimal(Long.parseLong(campos[7]));
+            boolean aplicada = diarioDAO.aplicarSalida(campos[2], LocalDateTime.parse(campos[4]),
+                    Integer.parseInt(campos[5]), Integer.parseInt(campos[6]), monto, campos[8]);
+            if (!aplicada) {
+                // El cobro hecho sin conexión no quedó registrado: debe revisarse a mano
+                throw new SQLException("El ticket " + campos[2] + " no existe o ya estaba cerrado; salida no aplicada"
+                        + " (cobro de " + monto.toPlainString() + " en " + campos[8] + ")");
+            }
+        } else {
+            throw new SQLException("Evento del diario desconocido: " + campos[1]);
+        }
+        aplicados++;
+    }
+
+    private void rechazar(String linea, String motivo) {
+        rechazados++;
+        LOG.warn("Evento del diario rechazado: {}", motivo);
+        try {
+            Files.write(directorio.resolve(RECHAZADOS),
+                    (linea + "\t# " + motivo + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOG.warn("No se pudo guardar el evento rechazado: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Si todo lo escrito ya se aplicó, vacía el archivo para que no crezca indefinidamente.
+     */
+    private void compactar(long offset) throws IOException {
+        synchronized (this) {
+            if (offset > 0 && canal.size() == offset && escritos == durables) {
+                canal.truncate(0);
+                canal.force(true);
+                guardarCheckpoint(0);
+            }
+        }
+    }
+
+    private long leerCheckpoint() throws IOException {
+        Path archivo = directorio.resolve(CHECKPOINT);
+        if (!Files.exists(archivo)) {
+            return 0;
+        }
+        String texto = new String(Files.readAllBytes(archivo), StandardCharsets.UTF_8).trim();
+        return texto.isEmpty() ? 0 : Long.parseLong(texto);
+    }
+
+    private void guardarCheckpoint(long offset) throws IOException {
+        if (offset == aplicadoHasta) {
+            return;
+        }
+        Path temporal = directorio.resolve(CHECKPOINT + ".tmp");
+        Files.write(temporal, Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporal, directorio.resolve(CHECKPOINT),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        aplicadoHasta = offset;
+    }
+
+    /**
+     * Al iniciar, agrega al índice en memoria los ingresos pendientes y quita las salidas
+     * pendientes, para que el carril vea los tickets abiertos aunque la base de datos no
+     * responda.
+     */
+    private void recuperarVistaLocal() {
+        try {
+            byte[] todo = Files.readAllBytes(directorio.resolve(ARCHIVO));
+            int inicio = (int) Math.min(aplicadoHasta, todo.length);
+            int pendientes = 0;
+            for (int i = inicio; i < todo.length; i++) {
+                if (todo[i] != '\n') {
+                    continue;
+                }
+                String linea = new String(todo, inicio, i - inicio, StandardCharsets.UTF_8);
+                String[] campos = linea.split("\t", -1);
+                inicio = i + 1;
+                if (campos.length < 2 || !campos[0].equals(crc(linea.substring(campos[0].length() + 1)))) {
+                    continue; // Corrupto: el aplicador lo enviará a rechazados
+                }
+                pendientes++;
+                if (campos.length == 8 && INGRESO.equals(campos[1])) {
+                    Ticket ticket = new Ticket();
+                    ticket.setNumeroFolio(campos[2]);
+                    ticket.setPlaca(campos[3]);
+                    ticket.setTipoIngreso(campos[4]);
+                    ticket.setFechaIngreso(LocalDateTime.parse(campos[5]));
+                    ticket.setOperadorIngresoId(Integer.parseInt(campos[6]));
+                    ticket.setQrCode(campos[7]);
+                    ticket.setMontoCobrado(BigDecimal.ZERO);
+                    ticket.setPagado(MensualidadCache.TIPO_MENSUALIDAD.equals(campos[4]));
+                    ticket.setActivo(true);
+                    ticketsAbiertos.registrar(ticket);
+                } else if (campos.length == 9 && SALIDA.equals(campos[1])) {
+                    ticketsAbiertos.quitarPorFolio(campos[2]);
+                }
+            }
+            if (pendientes > 0) {
+                LOG.warn("Diario local con {} eventos pendientes de aplicar", pendientes);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("No se pudo leer el diario local pendiente: {}", e.getMessage());
+        }
+    }
+
+    private static String linea(String tipo, String... campos) {
+        StringBuilder sb = new StringBuilder(128).append(tipo);
+        for (String campo : campos) {
+            sb.append('\t');
+            if (campo != null) {
+                // Tabuladores y saltos de línea romperían el formato
+                sb.append(campo.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+            }
+        }
+        String cuerpo = sb.toString();
+        return crc(cuerpo) + "\t" + cuerpo + "\n";
+    }
+
+    private static String crc(String cuerpo) {
+        CRC32 crc = new CRC32();
+        crc.update(cuerpo.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    /** Bytes del diario que aún no se aplican en la base de datos. */
+    public long getPendientesBytes() {
+        try {
+            return habilitado ? Math.max(0, canal.size() - aplicadoHasta) : 0;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public long getAplicados() {
+        return aplicados;
+    }
+
+    public long getRechazados() {
+        return rechazados;
+    }
+
+    @Override
+    public String toString() {
+        return "DiarioOperaciones{" +
+                "habilitado=" + habilitado +
+                ", sinConexion=" + sinConexion +
+                ", pendientesBytes=" + getPendientesBytes() +
+                ", aplicados=" + aplicados +
+                ", rechazados=" + rechazados +
+                '}';
+    }
+}
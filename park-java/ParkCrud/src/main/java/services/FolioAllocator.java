@@ -0,0 +1,250 @@
+package services;
+
+import config.PropertiesConfig;
+import dao.FolioDAO;
+import util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Asignador de folios de ticket (formato TKT000001).
+ * Reserva bloques de números desde la secuencia tickets_folio_seq y los reparte en memoria
+ * sin bloqueos; solo se vuelve a la base de datos cuando el bloque se agota.
+ * Como la secuencia es la única fuente de números, varias instancias que comparten la
+ * base de datos nunca generan el mismo folio (puede haber huecos al reiniciar, no duplicados).
+ *
+ * Además del bloque en uso se mantiene un bloque de reserva, que se repone en segundo
+ * plano: el carril no espera a la base de datos al cambiar de bloque. Sin conexión se
+ * usan los bloques ya reservados y, agotados, un rango local con el prefijo de la
+ * instancia (L + folio.instancia + número, p. ej. LCAJA1-000001) guardado en el
+ * directorio del diario, que no depende de la base de datos.
+ */
+public class FolioAllocator {
+
+    private static final Log LOG = Log.de(FolioAllocator.class);
+
+    private static final String PREFIJO = "TKT";
+    private static final String PREFIJO_LOCAL = "L";
+    private static final int DIGITOS = 6;
+    private static final int TAMANO_BLOQUE_LOCAL = 100;
+    private static final String ARCHIVO_LOCAL = "folios.locales";
+
+    private static volatile FolioAllocator instance;
+
+    private final FolioDAO folioDAO;
+    private final String prefijoLocal;
+    private volatile Bloque bloque = new Bloque(0, 0);
+    // Protegidos por this
+    private Bloque reserva;
+    private boolean reponiendo;
+    private Bloque bloqueLocal = new Bloque(0, 0);
+
+    private FolioAllocator() {
+        this.folioDAO = new FolioDAO();
+        this.prefijoLocal = PREFIJO_LOCAL + identificarInstancia(PropertiesConfig.getInstance().getProperty("folio.instancia")) + "-";
+    }
+
+    public static FolioAllocator getInstance() {
+        if (instance == null) {
+            synchronized (FolioAllocator.class) {
+                if (instance == null) {
+                    instance = new FolioAllocator();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Retorna el siguiente folio disponible.
+     */
+    public String siguienteFolio() throws SQLException {
+        return formatear(siguienteNumero());
+    }
+
+    public long siguienteNumero() throws SQLException {
+        while (true) {
+            Bloque actual = bloque;
+            long numero = actual.siguiente.getAndIncrement();
+            if (numero < actual.fin) {
+                return numero;
+            }
+            // Bloque agotado: solo un hilo cambia de bloque, los demás reintentan con él
+            synchronized (this) {
+                if (bloque == actual) {
+                    if (reserva != null) {
+                        bloque = reserva;
+                        reserva = null;
+                    } else {
+                        // Sin reserva (arranque o reposición fallida): hay que esperar a la base de datos
+                        bloque = reservarBloque();
+                    }
+                    reponerReserva();
+                }
+            }
+        }
+    }
+
+    /**
+     * Folio para un ingreso sin conexión: lo que quede de los bloques ya reservados y,
+     * agotados, el rango local de la instancia. Nunca consulta la base de datos.
+     */
+    public String siguienteFolioSinConexion() throws SQLException {
+        while (true) {
+            Bloque actual = bloque;
+            long numero = actual.siguiente.getAndIncrement();
+            if (numero < actual.fin) {
+                return formatear(numero);
+            }
+            synchronized (this) {
+                if (bloque == actual) {
+                    if (reserva == null) {
+                        return siguienteFolioLocal();
+                    }
+                    bloque = reserva;
+                    reserva = null;
+                    reponerReserva();
+                }
+            }
+        }
+    }
+
+    private Bloque reservarBloque() throws SQLException {
+        long[] reservado = folioDAO.reservarBloque();
+        return new Bloque(reservado[0], reservado[0] + reservado[1]);
+    }
+
+    /**
+     * Repone el bloque de reserva en un hilo aparte. Debe llamarse con el monitor tomado.
+     * Si falla, se reintenta en el próximo cambio de bloque.
+     */
+    private void reponerReserva() {
+        if (reserva != null || reponiendo) {
+            return;
+        }
+        reponiendo = true;
+        Thread hilo = new Thread(() -> {
+            Bloque nuevo = null;
+            try {
+                nuevo = reservarBloque();
+            } catch (SQLException e) {
+                LOG.warn("No se pudo reponer el bloque de folios de reserva: {}", e.getMessage());
+            } finally {
+                synchronized (this) {
+                    reserva = nuevo;
+                    reponiendo = false;
+                }
+            }
+        }, "crudpark-folios");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Siguiente folio del rango local. Debe llamarse con el monitor tomado. El archivo
+     * guarda el primer número aún no reservado, así que tras reiniciar no se repiten
+     * folios (puede haber huecos).
+     */
+    private String siguienteFolioLocal() throws SQLException {
+        long numero = bloqueLocal.siguiente.getAndIncrement();
+        if (numero >= bloqueLocal.fin) {
+            bloqueLocal = reservarBloqueLocal();
+            numero = bloqueLocal.siguiente.getAndIncrement();
+        }
+        return formatear(prefijoLocal, numero);
+    }
+
+    private Bloque reservarBloqueLocal() throws SQLException {
+        Path archivoLocal = DiarioOperaciones.getInstance().getDirectorio().resolve(ARCHIVO_LOCAL);
+        try {
+            long inicio = 1;
+            if (Files.exists(archivoLocal)) {
+                String texto = new String(Files.readAllBytes(archivoLocal), StandardCharsets.UTF_8).trim();
+                inicio = texto.isEmpty() ? 1 : Long.parseLong(texto);
+            }
+            long fin = inicio + TAMANO_BLOQUE_LOCAL;
+            Files.createDirectories(archivoLocal.getParent());
+            Path temporal = archivoLocal.resolveSibling(ARCHIVO_LOCAL + ".tmp");
+            Files.write(temporal, Long.toString(fin).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            Files.move(temporal, archivoLocal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Folios locales reservados sin conexión: {} a {}", formatear(prefijoLocal, inicio),
+                    formatear(prefijoLocal, fin - 1));
+            return new Bloque(inicio, fin);
+        } catch (IOException | NumberFormatException e) {
+            throw new SQLException("No se pudo reservar folios locales en " + archivoLocal.toAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Prefijo de la instancia para los folios locales: folio.instancia, o el nombre del
+     * equipo. Solo letras y dígitos; si pasa de 8 caracteres se resume con un CRC32 para
+     * que dos equipos con nombres parecidos no compartan prefijo.
+     */
+    private static String identificarInstancia(String configurada) {
+        String nombre = configurada;
+        if (nombre == null || nombre.trim().isEmpty()) {
+            try {
+                nombre = InetAddress.getLocalHost().getHostName();
+            } catch (IOException e) {
+                nombre = "X";
+            }
+        }
+        String limpio = nombre.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]", "");
+        if (limpio.isEmpty()) {
+            return "X";
+        }
+        if (limpio.length() <= 8) {
+            return limpio;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(limpio.getBytes(StandardCharsets.UTF_8));
+        return Long.toString(crc.getValue(), 36).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Formatea el número como TKT + 6 dígitos con ceros a la izquierda
+     * (equivalente a String.format("TKT%06d", numero) sin el costo del formateador).
+     */
+    static String formatear(long numero) {
+        return formatear(PREFIJO, numero);
+    }
+
+    private static String formatear(String prefijo, long numero) {
+        String digitos = Long.toString(numero);
+        int ceros = DIGITOS - digitos.length();
+        if (ceros <= 0) {
+            return prefijo + digitos;
+        }
+        StringBuilder sb = new StringBuilder(prefijo.length() + DIGITOS);
+        sb.append(prefijo);
+        for (int i = 0; i < ceros; i++) {
+            sb.append('0');
+        }
+        return sb.append(digitos).toString();
+    }
+
+    /**
+     * Rango reservado [siguiente, fin). Inmutable salvo el contador.
+     */
+    private static final class Bloque {
+        private final AtomicLong siguiente;
+        private final long fin;
+
+        private Bloque(long inicio, long fin) {
+            this.siguiente = new AtomicLong(inicio);
+            this.fin = fin;
+        }
+    }
+}
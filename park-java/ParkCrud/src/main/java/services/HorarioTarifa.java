@@ -0,0 +1,195 @@
+package services;
+
+import models.FranjaTarifa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Horario semanal de valores por hora y fracción, compilado a partir de las franjas de
+ * una tarifa. Para cada día de la semana guarda los límites de sus segmentos (en minutos
+ * del día) con los valores en centavos, de modo que el cálculo de una estadía recorre
+ * segmentos y no minutos.
+ *
+ * Las franjas "Todos" se aplican primero y las de "Semana"/"FinDeSemana" las sobrescriben.
+ * Una franja cuyo fin es menor o igual a su inicio cruza la medianoche: cubre desde el
+ * inicio hasta las 24:00 y desde las 00:00 hasta el fin de los días a los que aplica.
+ */
+final class HorarioTarifa {
+
+    private static final int MINUTOS_DIA = 1440;
+
+    // Índice 0 = lunes ... 6 = domingo
+    private final Segmentos[] semana = new Segmentos[7];
+
+    private HorarioTarifa() {
+    }
+
+    /**
+     * Compila las franjas activas. Los minutos sin franja usan los valores base.
+     */
+    static HorarioTarifa compilar(List<FranjaTarifa> franjas, long valorHoraBase, long valorFraccionBase) {
+        List<FranjaTarifa> ordenadas = new ArrayList<>();
+        for (FranjaTarifa f : franjas) {
+            if (f.isActiva() && FranjaTarifa.DIA_TODOS.equalsIgnoreCase(f.getTipoDia())) {
+                ordenadas.add(f);
+            }
+        }
+        for (FranjaTarifa f : franjas) {
+            if (f.isActiva() && !FranjaTarifa.DIA_TODOS.equalsIgnoreCase(f.getTipoDia())) {
+                ordenadas.add(f);
+            }
+        }
+
+        long[] horaFranja = new long[ordenadas.size()];
+        long[] fraccionFranja = new long[ordenadas.size()];
+        for (int i = 0; i < ordenadas.size(); i++) {
+            horaFranja[i] = CalculadoraTarifa.aCentavos(ordenadas.get(i).getValorHora());
+            fraccionFranja[i] = CalculadoraTarifa.aCentavos(ordenadas.get(i).getValorFraccion());
+        }
+
+        HorarioTarifa horario = new HorarioTarifa();
+        int[] minutoAFranja = new int[MINUTOS_DIA];
+        for (int dia = 0; dia < 7; dia++) {
+            Arrays.fill(minutoAFranja, -1);
+            for (int i = 0; i < ordenadas.size(); i++) {
+                FranjaTarifa f = ordenadas.get(i);
+                if (!f.aplicaA(dia + 1)) {
+                    continue;
+                }
+                int inicio = f.getHoraInicio().getHour() * 60 + f.getHoraInicio().getMinute();
+                int fin = f.getHoraFin().getHour() * 60 + f.getHoraFin().getMinute();
+                if (fin > inicio) {
+                    Arrays.fill(minutoAFranja, inicio, fin, i);
+                } else {
+                    Arrays.fill(minutoAFranja, inicio, MINUTOS_DIA, i);
+                    Arrays.fill(minutoAFranja, 0, fin, i);
+                }
+            }
+            horario.semana[dia] = Segmentos.desde(minutoAFranja, horaFranja, fraccionFranja,
+                    valorHoraBase, valorFraccionBase);
+        }
+        return horario;
+    }
+
+    /**
+     * Calcula el cobro de una estadía.
+     *
+     * El tiempo cobrable empieza al terminar la gracia y se divide en bloques de una hora;
+     * cada bloque se cobra con el valor por hora vigente a su inicio, y los minutos sobrantes
+     * con el valor de fracción vigente a su inicio. Los bloques se agrupan en días de 24 horas
+     * contados desde el ingreso y cada día se limita al tope diario.
+     *
+     * @param ingresoMinuto minuto absoluto del ingreso (días desde 1970-01-01 * 1440 + minuto del día)
+     */
+    long calcularCentavos(long ingresoMinuto, long minutosEstadia, int tiempoGracia, long topeDiario) {
+        if (minutosEstadia <= tiempoGracia) {
+            return 0;
+        }
+        long minutosCobrables = minutosEstadia - tiempoGracia;
+        long horas = minutosCobrables / 60;
+        long inicioCobro = ingresoMinuto + tiempoGracia;
+        long finHoras = inicioCobro + horas * 60;
+
+        long total = 0;
+        long periodoActual = -1;
+        long sumaPeriodo = 0;
+
+        long t = inicioCobro;
+        while (t < finHoras) {
+            long dia = Math.floorDiv(t, MINUTOS_DIA);
+            Segmentos seg = semana[diaSemana(dia)];
+            int idx = seg.indice((int) (t - dia * MINUTOS_DIA));
+
+            long periodo = (t - ingresoMinuto) / MINUTOS_DIA;
+            long hasta = Math.min(dia * MINUTOS_DIA + seg.fin[idx],
+                    Math.min(ingresoMinuto + (periodo + 1) * MINUTOS_DIA, finHoras));
+
+            if (periodo != periodoActual) {
+                total += limitar(sumaPeriodo, topeDiario);
+                sumaPeriodo = 0;
+                periodoActual = periodo;
+            }
+            // Bloques de hora cuyo inicio cae en [t, hasta)
+            long bloques = techo(hasta - inicioCobro, 60) - techo(t - inicioCobro, 60);
+            sumaPeriodo += bloques * seg.hora[idx];
+            t = hasta;
+        }
+
+        if (minutosCobrables % 60 > 0) {
+            long dia = Math.floorDiv(finHoras, MINUTOS_DIA);
+            Segmentos seg = semana[diaSemana(dia)];
+            int idx = seg.indice((int) (finHoras - dia * MINUTOS_DIA));
+            long periodo = (finHoras - ingresoMinuto) / MINUTOS_DIA;
+            if (periodo != periodoActual) {
+                total += limitar(sumaPeriodo, topeDiario);
+                sumaPeriodo = 0;
+            }
+            sumaPeriodo += seg.fraccion[idx];
+        }
+        return total + limitar(sumaPeriodo, topeDiario);
+    }
+
+    private static long limitar(long monto, long tope) {
+        return tope >= 0 && monto > tope ? tope : monto;
+    }
+
+    private static long techo(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+
+    /**
+     * 1970-01-01 fue jueves; retorna 0 = lunes ... 6 = domingo.
+     */
+    private static int diaSemana(long diasDesdeEpoch) {
+        return (int) Math.floorMod(diasDesdeEpoch + 3, 7L);
+    }
+
+    /**
+     * Segmentos de un día: [inicio[i], fin[i]) con sus valores por hora y fracción.
+     */
+    private static final class Segmentos {
+        private final int[] inicio;
+        private final int[] fin;
+        private final long[] hora;
+        private final long[] fraccion;
+
+        private Segmentos(int n) {
+            inicio = new int[n];
+            fin = new int[n];
+            hora = new long[n];
+            fraccion = new long[n];
+        }
+
+        private static Segmentos desde(int[] minutoAFranja, long[] horaFranja, long[] fraccionFranja,
+                                       long horaBase, long fraccionBase) {
+            int n = 1;
+            for (int m = 1; m < MINUTOS_DIA; m++) {
+                if (minutoAFranja[m] != minutoAFranja[m - 1]) {
+                    n++;
+                }
+            }
+            Segmentos s = new Segmentos(n);
+            int i = 0;
+            for (int m = 0; m < MINUTOS_DIA; m++) {
+                if (m == 0 || minutoAFranja[m] != minutoAFranja[m - 1]) {
+                    if (m > 0) {
+                        s.fin[i++] = m;
+                    }
+                    int franja = minutoAFranja[m];
+                    s.inicio[i] = m;
+                    s.hora[i] = franja < 0 ? horaBase : horaFranja[franja];
+                    s.fraccion[i] = franja < 0 ? fraccionBase : fraccionFranja[franja];
+                }
+            }
+            s.fin[i] = MINUTOS_DIA;
+            return s;
+        }
+
+        private int indice(int minutoDelDia) {
+            int pos = Arrays.binarySearch(inicio, minutoDelDia);
+            return pos >= 0 ? pos : -pos - 2;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package services;
+
+import config.PropertiesConfig;
+import dao.OperacionIdempotenteDAO;
+import util.Log;
+import util.Metricas;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Claves de idempotencia para las operaciones de portería.
+ *
+ * La interfaz genera una clave por operación (p. ej. un UUID) y la repite si reintenta tras
+ * un timeout. La primera ejecución guarda su resultado; los reintentos con la misma clave
+ * reciben ese resultado sin volver a escribir (sin un segundo cobro).
+ *
+ * Los resultados recientes se guardan en un cache LRU en memoria (idempotencia.cache_max);
+ * la tabla operaciones_idempotentes respalda al cache cuando la clave ya salió de él,
+ * después de un reinicio o con varias instancias. Un reintento que llega mientras la
+ * operación original sigue en curso espera su resultado. Sin base de datos (diario local)
+ * solo se usa el cache. Las claves se borran de la tabla tras idempotencia.retencion_horas.
+ */
+public class Idempotencia {
+
+    private static final Log LOG = Log.de(Idempotencia.class);
+
+    public static final int LARGO_MAXIMO_CLAVE = 64;
+
+    private static volatile Idempotencia instance;
+
+    private final OperacionIdempotenteDAO dao;
+    // Orden de acceso: la entrada menos usada sale primero
+    private final Map<String, Entrada> cache;
+    private final long retencionHoras;
+
+    private final LongAdder repetidas = new LongAdder();
+
+    /**
+     * Operación protegida por la clave (puede lanzar los errores de negocio de TicketService).
+     */
+    @FunctionalInterface
+    public interface Operacion<T> {
+        T ejecutar() throws SQLException;
+    }
+
+    /**
+     * Conversión del resultado al texto que se guarda en la base de datos y de vuelta.
+     */
+    public interface Convertidor<T> {
+        String aTexto(T resultado);
+
+        T deTexto(String texto) throws SQLException;
+    }
+
+    private Idempotencia() {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        this.dao = new OperacionIdempotenteDAO();
+        final int maximo = Math.max(1, props.getIntProperty("idempotencia.cache_max", 10000));
+        this.cache = new LinkedHashMap<String, Entrada>(maximo * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+                return size() > maximo;
+            }
+        };
+        this.retencionHoras = Math.max(1, props.getIntProperty("idempotencia.retencion_horas", 48));
+
+        Thread purgador = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                purgar();
+                try {
+                    Thread.sleep(3_600_000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "crudpark-idempotencia-purga");
+        purgador.setDaemon(true);
+        purgador.start();
+
+        Metricas.indicador("crudpark_idempotencia_repetidas_total", "Operaciones repetidas resueltas por clave", repetidas::sum);
+    }
+
+    public static Idempotencia getInstance() {
+        if (instance == null) {
+            synchronized (Idempotencia.class) {
+                if (instance == null) {
+                    instance = new Idempotencia();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Ejecuta la operación una sola vez por clave.
+     *
+     * @param clave      clave generada por la interfaz; null o vacía = sin idempotencia
+     * @param tipo       tipo de operación ("ingreso", "salida", "pago_manual"); una clave
+     *                   no puede reutilizarse para otro tipo
+     * @return el resultado de la primera ejecución con esa clave
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T ejecutar(String clave, String tipo, Operacion<T> operacion, Convertidor<T> convertidor) throws SQLException {
+        if (clave == null || clave.trim().isEmpty()) {
+            return operacion.ejecutar();
+        }
+        clave = clave.trim();
+        if (clave.length() > LARGO_MAXIMO_CLAVE) {
+            throw new SQLException("La clave de operación no puede superar " + LARGO_MAXIMO_CLAVE + " caracteres");
+        }
+
+        Entrada propia = new Entrada(tipo);
+        Entrada previa;
+        synchronized (cache) {
+            previa = cache.get(clave);
+            if (previa == null) {
+                cache.put(clave, propia);
+            }
+        }
+
+        if (previa != null) {
+            if (!previa.tipo.equals(tipo)) {
+                throw new SQLException("La clave de operación " + clave + " ya se usó para: " + previa.tipo);
+            }
+            try {
+                Object resultado = previa.resultado.get();
+                repetidas.increment();
+                LOG.info("Operación repetida ({}), se retorna el resultado original: {}", tipo, clave);
+                return (T) resultado;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrumpido esperando la operación " + clave, e);
+            } catch (ExecutionException e) {
+                // La operación original falló sin escribir: el reintento la vuelve a ejecutar
+                return ejecutar(clave, tipo, operacion, convertidor);
+            }
+        }
+
+        try {
+            T resultado = ejecutarConRespaldo(clave, tipo, operacion, convertidor);
+            propia.resultado.complete(resultado);
+            return resultado;
+        } catch (SQLException | RuntimeException e) {
+            synchronized (cache) {
+                cache.remove(clave, propia);
+            }
+            propia.resultado.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Reserva la clave en la base de datos antes de ejecutar. Si ya existe, la operación se
+     * ejecutó antes (en esta instancia antes de salir del cache o de reiniciar, o en otra).
+     * La clave solo se libera cuando la operación falló sin escribir nada.
+     */
+    private <T> T ejecutarConRespaldo(String clave, String tipo, Operacion<T> operacion,
+                                      Convertidor<T> convertidor) throws SQLException {
+        DiarioOperaciones diario = DiarioOperaciones.getInstance();
+        boolean respaldo = !diario.isSinConexion();
+        boolean reservada = true;
+        if (respaldo) {
+            try {
+                reservada = dao.reservar(clave, tipo);
+            } catch (SQLException e) {
+                if (!diario.isHabilitado() || !DiarioOperaciones.esFallaDeConexion(e)) {
+                    throw e;
+                }
+                diario.marcarSinConexion(e);
+                respaldo = false;
+            }
+        }
+        if (!respaldo) {
+            // La operación irá al diario local; la clave queda solo en memoria
+            LOG.warn("Base de datos no disponible: la clave {} solo se recuerda en memoria", clave);
+        }
+
+        if (!reservada) {
+            OperacionIdempotenteDAO.Registro registro = dao.buscar(clave);
+            if (registro == null) {
+                throw new SQLException("La clave de operación " + clave + " expiró, reintente con una clave nueva");
+            }
+            if (!registro.operacion.equals(tipo)) {
+                throw new SQLException("La clave de operación " + clave + " ya se usó para: " + registro.operacion);
+            }
+            if (registro.resultado == null) {
+                // En curso en otra instancia, o la aplicación se detuvo a mitad de la operación
+                throw new SQLException("La operación " + clave + " está en curso o quedó incompleta; "
+                        + "verifique el ticket antes de repetirla con otra clave");
+            }
+            repetidas.increment();
+            LOG.info("Operación repetida ({}), se retorna el resultado guardado: {}", tipo, clave);
+            return convertidor.deTexto(registro.resultado);
+        }
+
+        T resultado;
+        try {
+            resultado = operacion.ejecutar();
+        } catch (SQLException e) {
+            // Las operaciones escriben en una sola transacción: un error de negocio o de SQL
+            // deja todo sin escribir y la clave puede reusarse. Si se perdió la conexión, el
+            // COMMIT pudo haber llegado; la clave queda reservada para no cobrar dos veces.
+            if (respaldo && !DiarioOperaciones.esFallaDeConexion(e)) {
+                liberar(clave);
+            }
+            throw e;
+        }
+
+        if (respaldo) {
+            try {
+                dao.completar(clave, convertidor.aTexto(resultado));
+            } catch (SQLException e) {
+                // La operación ya se hizo: el cache responde los reintentos; la tabla queda en curso
+                LOG.warn("No se pudo guardar el resultado de la operación {}: {}", clave, e.getMessage());
+            }
+        }
+        return resultado;
+    }
+
+    private void liberar(String clave) {
+        try {
+            dao.liberar(clave);
+        } catch (SQLException e) {
+            LOG.warn("No se pudo liberar la clave de operación {}: {}", clave, e.getMessage());
+        }
+    }
+
+    private void purgar() {
+        try {
+            int borradas = dao.purgar(LocalDateTime.now().minusHours(retencionHoras));
+            if (borradas > 0) {
+                LOG.info("Claves de operación vencidas borradas: {}", borradas);
+            }
+        } catch (SQLException e) {
+            LOG.debug("No se pudieron purgar las claves de operación: {}", e.getMessage());
+        }
+    }
+
+    public long getRepetidas() {
+        return repetidas.sum();
+    }
+
+    private static final class Entrada {
+        private final String tipo;
+        private final CompletableFuture<Object> resultado = new CompletableFuture<>();
+
+        private Entrada(String tipo) {
+            this.tipo = tipo;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package services;
+
+import dao.MensualidadIndiceDAO;
+import models.Mensualidad;
+import util.Log;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Índice en memoria de las placas con mensualidad activa y sus ventanas de vigencia
+ * (fecha_inicio / fecha_fin; una placa puede tener varias mensualidades activas). Permite clasificar un ingreso como Mensualidad o Invitado
+ * sin consultar la base de datos.
+ *
+ * Se carga completo al quedar escuchando el canal y se actualiza por placa con las notificaciones del canal
+ * 'mensualidades_cambio' (ver database/migraciones/004_notificar_cambios_mensualidad.sql).
+ * Solo es confiable mientras LISTEN/NOTIFY está conectado; si no, {@link #clasificar}
+ * retorna null y el ingreso resuelve la mensualidad en SQL.
+ */
+public class MensualidadCache {
+
+    private static final Log LOG = Log.de(MensualidadCache.class);
+
+    public static final String TIPO_MENSUALIDAD = "Mensualidad";
+    public static final String TIPO_INVITADO = "Invitado";
+
+    private static final String CANAL = "mensualidades_cambio";
+
+    private static volatile MensualidadCache instance;
+
+    private final MensualidadIndiceDAO mensualidadIndiceDAO;
+    private final NotificacionesListener listener;
+    // Ventanas de cada placa; las listas no se modifican, se reemplazan
+    private volatile Map<String, List<Ventana>> ventanas = new ConcurrentHashMap<>();
+    private volatile boolean cargado;
+
+    private final LongAdder consultas = new LongAdder();
+    private final LongAdder respaldosSql = new LongAdder();
+
+    private MensualidadCache() {
+        this.mensualidadIndiceDAO = new MensualidadIndiceDAO();
+        this.listener = NotificacionesListener.getInstance();
+        // La carga completa llega como resincronización, después del LISTEN: un cambio
+        // hecho entre la carga y el LISTEN no se pierde
+        this.listener.suscribir(CANAL, this::procesarNotificacion);
+    }
+
+    public static MensualidadCache getInstance() {
+        if (instance == null) {
+            synchronized (MensualidadCache.class) {
+                if (instance == null) {
+                    instance = new MensualidadCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Clasifica el ingreso de la placa (ya normalizada).
+     *
+     * @return "Mensualidad" o "Invitado", o null si el índice no es confiable en este momento
+     */
+    public String clasificar(String placa) {
+        if (!cargado || !listener.isConectado()) {
+            respaldosSql.increment();
+            return null;
+        }
+        consultas.increment();
+        return vigente(placa) ? TIPO_MENSUALIDAD : TIPO_INVITADO;
+    }
+
+    /**
+     * Clasifica con el último índice cargado aunque no sea confiable (sin conexión a la
+     * base de datos). Si el índice nunca se cargó, el ingreso se trata como Invitado.
+     */
+    public String clasificarUltimoConocido(String placa) {
+        return vigente(placa) ? TIPO_MENSUALIDAD : TIPO_INVITADO;
+    }
+
+    private boolean vigente(String placa) {
+        List<Ventana> deLaPlaca = ventanas.get(placa);
+        if (deLaPlaca == null) {
+            return false;
+        }
+        LocalDate hoy = LocalDate.now();
+        for (Ventana v : deLaPlaca) {
+            if (v.contiene(hoy)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void recargarTodo() throws SQLException {
+        List<Mensualidad> activas = mensualidadIndiceDAO.findActivasNoVencidas();
+        Map<String, List<Ventana>> nuevas = new ConcurrentHashMap<>(Math.max(16, activas.size() * 2));
+        for (Mensualidad m : activas) {
+            nuevas.computeIfAbsent(m.getPlaca().toUpperCase(), p -> new ArrayList<>(1))
+                    .add(new Ventana(m.getFechaInicio(), m.getFechaFin()));
+        }
+        ventanas = nuevas;
+        cargado = true;
+        LOG.info("Índice de mensualidades cargado: {} placas", nuevas.size());
+    }
+
+    private synchronized void recargarPlaca(String placa) throws SQLException {
+        List<Mensualidad> activas = mensualidadIndiceDAO.findActivasNoVencidasByPlaca(placa);
+        if (activas.isEmpty()) {
+            ventanas.remove(placa);
+            return;
+        }
+        List<Ventana> nuevas = new ArrayList<>(activas.size());
+        for (Mensualidad m : activas) {
+            nuevas.add(new Ventana(m.getFechaInicio(), m.getFechaFin()));
+        }
+        ventanas.put(placa, nuevas);
+    }
+
+    /**
+     * Payload = placa modificada; null = resincronizar todo (p. ej. tras reconectar).
+     */
+    private void procesarNotificacion(String placa) {
+        try {
+            if (placa == null || placa.isEmpty()) {
+                recargarTodo();
+            } else {
+                recargarPlaca(placa.trim().toUpperCase());
+            }
+        } catch (SQLException e) {
+            // No podemos garantizar que el índice refleje el cambio: dejar de usarlo hasta resincronizar
+            cargado = false;
+            LOG.warn("Error actualizando el índice de mensualidades: {}", e.getMessage());
+            try {
+                recargarTodo();
+            } catch (SQLException ignored) {
+                // Se reintentará con la próxima notificación o reconexión
+            }
+        }
+    }
+
+    public int getTotalPlacas() {
+        return ventanas.size();
+    }
+
+    public long getConsultas() {
+        return consultas.sum();
+    }
+
+    public long getRespaldosSql() {
+        return respaldosSql.sum();
+    }
+
+    /**
+     * Ventana de vigencia [inicio, fin] (ambos inclusive, igual que BETWEEN en SQL).
+     */
+    private static final class Ventana {
+        private final LocalDate inicio;
+        private final LocalDate fin;
+
+        private Ventana(LocalDate inicio, LocalDate fin) {
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        private boolean contiene(LocalDate dia) {
+            return !dia.isBefore(inicio) && !dia.isAfter(fin);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package services;
+
+import config.DatabaseConfig;
+import config.PropertiesConfig;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import util.Log;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Escucha canales LISTEN/NOTIFY de PostgreSQL en un hilo propio con una conexión dedicada
+ * (fuera del pool) y reparte cada notificación a los suscriptores del canal.
+ *
+ * Después de cada LISTEN (al conectar, al reconectar y al agregar un canal nuevo) se invoca
+ * a los suscriptores del canal con payload null para que se resincronicen: los cambios
+ * anteriores al LISTEN, o emitidos mientras la conexión estaba caída, no se notifican.
+ */
+public class NotificacionesListener {
+
+    private static final Log LOG = Log.de(NotificacionesListener.class);
+
+    private static final int ESPERA_NOTIFICACION_MS = 500;
+
+    private static volatile NotificacionesListener instance;
+
+    private final Map<String, List<Consumer<String>>> suscriptores = new ConcurrentHashMap<>();
+    private final long reconexionMillis;
+    private volatile boolean conectado;
+    private Thread hilo;
+
+    private NotificacionesListener() {
+        this.reconexionMillis = PropertiesConfig.getInstance().getIntProperty("db.listen.reconexion_ms", 5000);
+    }
+
+    public static NotificacionesListener getInstance() {
+        if (instance == null) {
+            synchronized (NotificacionesListener.class) {
+                if (instance == null) {
+                    instance = new NotificacionesListener();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Registra un suscriptor para el canal. El consumidor recibe el payload de cada
+     * notificación, o null cuando debe resincronizarse (después de cada LISTEN).
+     * El canal debe ser un identificador fijo del código, nunca un valor del usuario.
+     */
+    public void suscribir(String canal, Consumer<String> suscriptor) {
+        suscriptores.computeIfAbsent(canal, c -> new CopyOnWriteArrayList<>()).add(suscriptor);
+        iniciar();
+    }
+
+    /**
+     * Indica si el hilo tiene una conexión activa escuchando; mientras sea false
+     * los caches deben apoyarse en su TTL.
+     */
+    public boolean isConectado() {
+        return conectado;
+    }
+
+    private synchronized void iniciar() {
+        if (hilo != null) {
+            return;
+        }
+        hilo = new Thread(this::ejecutar, "crudpark-listen-notify");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    private void ejecutar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection conn = DatabaseConfig.getInstance().abrirConexionDedicada()) {
+                PGConnection pgConn = conn.unwrap(PGConnection.class);
+                Set<String> escuchando = new HashSet<>();
+                List<String> nuevos = escucharNuevos(conn, escuchando);
+                conectado = true;
+                LOG.info("LISTEN/NOTIFY conectado, resincronizando caches");
+                resincronizar(nuevos);
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] notificaciones = pgConn.getNotifications(ESPERA_NOTIFICACION_MS);
+                    if (notificaciones != null) {
+                        for (PGNotification n : notificaciones) {
+                            despachar(n.getName(), n.getParameter());
+                        }
+                    }
+                    resincronizar(escucharNuevos(conn, escuchando));
+                }
+            } catch (SQLException e) {
+                LOG.warn("LISTEN/NOTIFY desconectado: {}", e.getMessage());
+            } finally {
+                conectado = false;
+            }
+
+            try {
+                Thread.sleep(reconexionMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Ejecuta LISTEN para los canales suscritos que aún no se escuchan en esta conexión.
+     *
+     * @return los canales que se empezaron a escuchar
+     */
+    private List<String> escucharNuevos(Connection conn, Set<String> escuchando) throws SQLException {
+        List<String> nuevos = new ArrayList<>();
+        for (String canal : suscriptores.keySet()) {
+            if (!escuchando.contains(canal)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN \"" + canal + "\"");
+                }
+                escuchando.add(canal);
+                nuevos.add(canal);
+            }
+        }
+        return nuevos;
+    }
+
+    private void despachar(String canal, String payload) {
+        List<Consumer<String>> lista = suscriptores.get(canal);
+        if (lista == null) {
+            return;
+        }
+        for (Consumer<String> suscriptor : lista) {
+            try {
+                suscriptor.accept(payload);
+            } catch (RuntimeException e) {
+                LOG.warn("Error procesando notificación '{}': {}", canal, e.getMessage());
+            }
+        }
+    }
+
+    private void resincronizar(List<String> canales) {
+        for (String canal : canales) {
+            despachar(canal, null);
+        }
+    }
+}
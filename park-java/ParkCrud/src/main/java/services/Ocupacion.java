@@ -0,0 +1,339 @@
+package services;
+
+import config.PropertiesConfig;
+import dao.TicketAbiertoDAO;
+import util.Log;
+import util.Metricas;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Ocupación del parqueadero en tiempo real y control de cupo al ingreso.
+ *
+ * Los vehículos adentro se cuentan por tipo de ingreso con LongAdder (sin contención entre
+ * carriles). El cupo (ocupacion.capacidad; 0 = sin límite) se controla con un contador
+ * total que se reserva con CAS antes del INSERT, así dos carriles no pueden tomar el último
+ * lugar a la vez. Las mensualidades siempre entran (tienen el lugar pagado), pero ocupan
+ * cupo.
+ *
+ * Cada ocupacion.conciliar_ms los contadores se comparan con los tickets abiertos de la
+ * base de datos (salvo con eventos del diario local sin aplicar). Los ingresos y salidas
+ * en curso o hechos durante la consulta pueden estar o no en el conteo de la base de
+ * datos: de la diferencia solo se corrige lo que ellos no alcanzan a explicar, así la
+ * conciliación avanza aunque los carriles nunca estén quietos.
+ *
+ * Los suscriptores (p. ej. el letrero de "lleno" de la entrada) reciben el {@link Estado}
+ * en un hilo propio cada vez que cambia; si hay varios cambios seguidos solo reciben el
+ * último.
+ */
+public class Ocupacion {
+
+    private static final Log LOG = Log.de(Ocupacion.class);
+
+    private static volatile Ocupacion instance;
+
+    private final TicketAbiertoDAO ticketAbiertoDAO;
+    // Se actualiza al recargar la configuración (ocupacion.capacidad)
+    private volatile long capacidad;
+    private final long conciliarMillis;
+
+    private final LongAdder mensualidades = new LongAdder();
+    private final LongAdder invitados = new LongAdder();
+    // Total para el cupo: incluye reservas de ingresos en curso
+    private final AtomicLong ocupados = new AtomicLong();
+    // Cambia con cada movimiento (para detectar ingresos/salidas durante la conciliación)
+    private final AtomicLong version = new AtomicLong();
+    // Reservas sin confirmar: su INSERT puede estar ya en la base de datos
+    private final AtomicLong reservasEnCurso = new AtomicLong();
+    // Salidas sin confirmar: el ticket puede estar ya cerrado en la base de datos
+    private final AtomicLong salidasEnCurso = new AtomicLong();
+    private final LongAdder rechazados = new LongAdder();
+
+    private final List<Consumer<Estado>> suscriptores = new CopyOnWriteArrayList<>();
+    private final Object aviso = new Object();
+    private boolean cambioPendiente;
+
+    private Ocupacion() {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        this.ticketAbiertoDAO = new TicketAbiertoDAO();
+        this.capacidad = Math.max(0, props.getIntProperty("ocupacion.capacidad", 0));
+        props.suscribir("ocupacion.capacidad", claves -> {
+            capacidad = Math.max(0, props.getIntProperty("ocupacion.capacidad", 0));
+            LOG.info("Capacidad del parqueadero: {}", capacidad);
+            avisar();
+        });
+        this.conciliarMillis = Math.max(1000, props.getIntProperty("ocupacion.conciliar_ms", 60000));
+
+        conciliar();
+
+        Thread notificador = new Thread(this::notificar, "crudpark-ocupacion");
+        notificador.setDaemon(true);
+        notificador.start();
+
+        Thread conciliador = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(conciliarMillis);
+                    conciliar();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "crudpark-ocupacion-conciliar");
+        conciliador.setDaemon(true);
+        conciliador.start();
+
+        Metricas.indicador("crudpark_ocupacion_mensualidades", "Vehículos con mensualidad adentro", mensualidades::sum);
+        Metricas.indicador("crudpark_ocupacion_invitados", "Vehículos invitados adentro", invitados::sum);
+        Metricas.indicador("crudpark_ocupacion_rechazados_total", "Ingresos rechazados por cupo lleno", rechazados::sum);
+    }
+
+    public static Ocupacion getInstance() {
+        if (instance == null) {
+            synchronized (Ocupacion.class) {
+                if (instance == null) {
+                    instance = new Ocupacion();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Reserva un lugar antes de registrar el ingreso. Debe seguirle
+     * {@link #confirmarIngreso(String)} o {@link #cancelarReserva()}.
+     *
+     * @param mensualidad true si la placa tiene mensualidad vigente (entra aunque no haya cupo)
+     * @return false si el parqueadero está lleno
+     */
+    public boolean reservar(boolean mensualidad) {
+        long limite = capacidad;
+        if (limite > 0 && !mensualidad) {
+            long actual;
+            do {
+                actual = ocupados.get();
+                if (actual >= limite) {
+                    rechazados.increment();
+                    return false;
+                }
+            } while (!ocupados.compareAndSet(actual, actual + 1));
+        } else {
+            ocupados.incrementAndGet();
+        }
+        reservasEnCurso.incrementAndGet();
+        return true;
+    }
+
+    public void cancelarReserva() {
+        ocupados.decrementAndGet();
+        reservasEnCurso.decrementAndGet();
+    }
+
+    public void confirmarIngreso(String tipoIngreso) {
+        contador(tipoIngreso).increment();
+        version.incrementAndGet();
+        reservasEnCurso.decrementAndGet();
+        avisar();
+    }
+
+    /**
+     * Marca una salida en curso, antes de cerrar el ticket. Debe seguirle
+     * {@link #registrarSalida(String)} o {@link #cancelarSalida()}.
+     */
+    public void iniciarSalida() {
+        salidasEnCurso.incrementAndGet();
+    }
+
+    public void cancelarSalida() {
+        salidasEnCurso.decrementAndGet();
+    }
+
+    public void registrarSalida(String tipoIngreso) {
+        contador(tipoIngreso).decrement();
+        ocupados.decrementAndGet();
+        version.incrementAndGet();
+        salidasEnCurso.decrementAndGet();
+        avisar();
+    }
+
+    public Estado getEstado() {
+        long m = mensualidades.sum();
+        long i = invitados.sum();
+        return new Estado(m, i, capacidad, ocupados.get());
+    }
+
+    /**
+     * Recibe el estado actual de inmediato y luego cada vez que cambie.
+     *
+     * @return acción para cancelar la suscripción
+     */
+    public Runnable suscribir(Consumer<Estado> suscriptor) {
+        suscriptores.add(suscriptor);
+        suscriptor.accept(getEstado());
+        return () -> suscriptores.remove(suscriptor);
+    }
+
+    private LongAdder contador(String tipoIngreso) {
+        return MensualidadCache.TIPO_MENSUALIDAD.equalsIgnoreCase(tipoIngreso) ? mensualidades : invitados;
+    }
+
+    // Conciliación con la base de datos
+
+    private void conciliar() {
+        if (DiarioOperaciones.getInstance().getPendientesBytes() > 0) {
+            // Los ingresos/salidas que solo están en el diario local aún no se ven en la base de datos
+            return;
+        }
+        // La consulta ve la base de datos en algún instante entre antes y después: cada
+        // conteo puede diferir del local en los movimientos de ese intervalo y en los
+        // ingresos o salidas ya escritos pero aún sin confirmar aquí (en curso)
+        long versionAntes = version.get();
+        long localMensualidades = mensualidades.sum();
+        long localInvitados = invitados.sum();
+        long entrandoAntes = reservasEnCurso.get();
+        long saliendoAntes = salidasEnCurso.get();
+        Map<String, Long> conteo;
+        try {
+            conteo = ticketAbiertoDAO.contarAbiertosPorTipo();
+        } catch (SQLException e) {
+            LOG.warn("No se pudo conciliar la ocupación: {}", e.getMessage());
+            return;
+        }
+
+        long dbMensualidades = 0;
+        long dbInvitados = 0;
+        for (Map.Entry<String, Long> e : conteo.entrySet()) {
+            if (MensualidadCache.TIPO_MENSUALIDAD.equalsIgnoreCase(e.getKey())) {
+                dbMensualidades += e.getValue();
+            } else {
+                dbInvitados += e.getValue();
+            }
+        }
+
+        long movimientos = version.get() - versionAntes;
+        long entrando = entrandoAntes + reservasEnCurso.get() + movimientos;
+        long saliendo = saliendoAntes + salidasEnCurso.get() + movimientos;
+        long difMensualidades = fueraDeMargen(dbMensualidades,
+                localMensualidades - saliendo, localMensualidades + entrando);
+        long difInvitados = fueraDeMargen(dbInvitados, localInvitados - saliendo, localInvitados + entrando);
+        if (difMensualidades == 0 && difInvitados == 0) {
+            return;
+        }
+        // Se aplica como diferencia: los movimientos posteriores a la consulta se conservan
+        mensualidades.add(difMensualidades);
+        invitados.add(difInvitados);
+        ocupados.addAndGet(difMensualidades + difInvitados);
+        version.incrementAndGet();
+        LOG.info("Ocupación conciliada con la base de datos: {} mensualidades, {} invitados (ajuste {}, {})",
+                dbMensualidades, dbInvitados, difMensualidades, difInvitados);
+        avisar();
+    }
+
+    /**
+     * Parte de la diferencia que los movimientos en curso no explican: 0 si el valor de la
+     * base de datos cae dentro de [minimo, maximo].
+     */
+    private static long fueraDeMargen(long valor, long minimo, long maximo) {
+        if (valor < minimo) {
+            return valor - minimo;
+        }
+        if (valor > maximo) {
+            return valor - maximo;
+        }
+        return 0;
+    }
+
+    // Notificación a suscriptores
+
+    private void avisar() {
+        if (suscriptores.isEmpty()) {
+            return;
+        }
+        synchronized (aviso) {
+            cambioPendiente = true;
+            aviso.notify();
+        }
+    }
+
+    private void notificar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                synchronized (aviso) {
+                    while (!cambioPendiente) {
+                        aviso.wait();
+                    }
+                    cambioPendiente = false;
+                }
+                Estado estado = getEstado();
+                for (Consumer<Estado> s : suscriptores) {
+                    try {
+                        s.accept(estado);
+                    } catch (RuntimeException e) {
+                        LOG.warn("Error en un suscriptor de ocupación: {}", e.getMessage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Ocupación en un instante.
+     */
+    public static final class Estado {
+        private final long mensualidades;
+        private final long invitados;
+        private final long capacidad;
+        private final long ocupados;
+
+        private Estado(long mensualidades, long invitados, long capacidad, long ocupados) {
+            this.mensualidades = mensualidades;
+            this.invitados = invitados;
+            this.capacidad = capacidad;
+            this.ocupados = ocupados;
+        }
+
+        public long getMensualidades() {
+            return mensualidades;
+        }
+
+        public long getInvitados() {
+            return invitados;
+        }
+
+        public long getTotal() {
+            return mensualidades + invitados;
+        }
+
+        /**
+         * @return 0 si no hay límite configurado
+         */
+        public long getCapacidad() {
+            return capacidad;
+        }
+
+        /**
+         * @return lugares libres, o -1 si no hay límite configurado
+         */
+        public long getLibres() {
+            return capacidad == 0 ? -1 : Math.max(0, capacidad - ocupados);
+        }
+
+        public boolean isLleno() {
+            return capacidad > 0 && ocupados >= capacidad;
+        }
+
+        @Override
+        public String toString() {
+            return "Ocupacion{mensualidades=" + mensualidades + ", invitados=" + invitados +
+                    ", capacidad=" + capacidad + ", libres=" + getLibres() + "}";
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package services;
+
+import config.PropertiesConfig;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.sql.SQLException;
+
+/**
+ * Contenido del código QR del ticket: {@code TICKET:{folio}|PLATE:{placa}|DATE:{epoch}}.
+ *
+ * Si ticket.qr.secreto está configurado, al ingreso se agrega {@code |SIG:{hmac}} con los
+ * primeros 16 bytes (en hexadecimal) del HMAC-SHA256 del resto del contenido, y al escanear
+ * se exige esa firma: un QR armado a mano no sirve para sacar otro vehículo.
+ *
+ * La lectura recorre el texto con indexOf/startsWith (sin expresiones regulares) y calcula
+ * el HMAC sobre buffers reutilizables por hilo; la única cadena que se crea es el folio.
+ */
+public final class QrTicket {
+
+    private static final String PREFIJO = "TICKET:";
+    private static final String PLACA = "|PLATE:";
+    private static final String FECHA = "|DATE:";
+    private static final String FIRMA = "|SIG:";
+
+    private static final int BYTES_FIRMA = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final byte[] SECRETO;
+    private static final ThreadLocal<Firmador> FIRMADOR;
+
+    static {
+        String secreto = PropertiesConfig.getInstance().getProperty("ticket.qr.secreto");
+        SECRETO = secreto != null && !secreto.trim().isEmpty()
+                ? secreto.trim().getBytes(StandardCharsets.UTF_8) : null;
+        FIRMADOR = ThreadLocal.withInitial(Firmador::new);
+    }
+
+    private final String contenido;
+    private final String numeroFolio;
+    private final int inicioPlaca;
+    private final int finPlaca;
+
+    private QrTicket(String contenido, String numeroFolio, int inicioPlaca, int finPlaca) {
+        this.contenido = contenido;
+        this.numeroFolio = numeroFolio;
+        this.inicioPlaca = inicioPlaca;
+        this.finPlaca = finPlaca;
+    }
+
+    /**
+     * Arma el contenido del QR para un ticket nuevo (firmado si hay secreto configurado).
+     */
+    public static String generar(String numeroFolio, String placa, long timestampSegundos) {
+        String contenido = PREFIJO + numeroFolio + PLACA + placa + FECHA + timestampSegundos;
+        if (SECRETO == null) {
+            return contenido;
+        }
+        byte[] firma = FIRMADOR.get().firmar(contenido, contenido.length());
+        StringBuilder sb = new StringBuilder(contenido.length() + FIRMA.length() + BYTES_FIRMA * 2);
+        sb.append(contenido).append(FIRMA);
+        for (int i = 0; i < BYTES_FIRMA; i++) {
+            sb.append(HEX[(firma[i] >> 4) & 0xF]).append(HEX[firma[i] & 0xF]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Valida el contenido escaneado (formato y firma).
+     *
+     * @throws SQLException si el QR no es de un ticket de CrudPark o la firma no coincide
+     */
+    public static QrTicket leer(String contenido) throws SQLException {
+        if (contenido == null) {
+            throw new SQLException("El código QR está vacío");
+        }
+        // Los lectores suelen enviar un salto de línea al final
+        int fin = contenido.length();
+        while (fin > 0 && contenido.charAt(fin - 1) <= ' ') {
+            fin--;
+        }
+
+        if (!contenido.startsWith(PREFIJO)) {
+            throw new SQLException("El código QR no corresponde a un ticket");
+        }
+        int finFolio = contenido.indexOf('|', PREFIJO.length());
+        if (finFolio <= PREFIJO.length() || !contenido.startsWith(PLACA, finFolio)) {
+            throw new SQLException("Código QR de ticket mal formado");
+        }
+        int inicioPlaca = finFolio + PLACA.length();
+        int finPlaca = contenido.indexOf('|', inicioPlaca);
+        if (finPlaca <= inicioPlaca || !contenido.startsWith(FECHA, finPlaca)) {
+            throw new SQLException("Código QR de ticket mal formado");
+        }
+        int inicioFecha = finPlaca + FECHA.length();
+        int finFecha = inicioFecha;
+        while (finFecha < fin && contenido.charAt(finFecha) >= '0' && contenido.charAt(finFecha) <= '9') {
+            finFecha++;
+        }
+        if (finFecha == inicioFecha) {
+            throw new SQLException("Código QR de ticket mal formado");
+        }
+
+        if (finFecha == fin) {
+            if (SECRETO != null) {
+                throw new SQLException("El código QR no está firmado");
+            }
+        } else {
+            int inicioFirma = finFecha + FIRMA.length();
+            if (!contenido.startsWith(FIRMA, finFecha) || fin - inicioFirma != BYTES_FIRMA * 2) {
+                throw new SQLException("Código QR de ticket mal formado");
+            }
+            if (SECRETO != null && !FIRMADOR.get().verificar(contenido, finFecha, inicioFirma)) {
+                throw new SQLException("La firma del código QR no es válida");
+            }
+        }
+
+        return new QrTicket(contenido, contenido.substring(PREFIJO.length(), finFolio), inicioPlaca, finPlaca);
+    }
+
+    public String getNumeroFolio() {
+        return numeroFolio;
+    }
+
+    /**
+     * Compara la placa del QR con la del ticket sin crear cadenas.
+     */
+    public boolean placaCoincide(String placa) {
+        int largo = finPlaca - inicioPlaca;
+        return placa != null && placa.length() == largo
+                && contenido.regionMatches(true, inicioPlaca, placa, 0, largo);
+    }
+
+    /**
+     * HMAC-SHA256 con buffers propios; Mac no es seguro entre hilos, así que hay uno por hilo.
+     */
+    private static final class Firmador {
+        private final Mac mac;
+        private byte[] entrada = new byte[128];
+        private final byte[] salida;
+        private final byte[] recibida = new byte[BYTES_FIRMA];
+
+        private Firmador() {
+            try {
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(SECRETO, "HmacSHA256"));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 no disponible", e);
+            }
+            salida = new byte[mac.getMacLength()];
+        }
+
+        private byte[] firmar(String texto, int largo) {
+            if (entrada.length < largo * 3) {
+                entrada = new byte[largo * 3];
+            }
+            int n = 0;
+            for (int i = 0; i < largo; i++) {
+                char c = texto.charAt(i);
+                if (c >= 0x80) {
+                    // Fuera de ASCII (poco común en placas): codificación estándar
+                    byte[] utf8 = texto.substring(0, largo).getBytes(StandardCharsets.UTF_8);
+                    System.arraycopy(utf8, 0, entrada, 0, utf8.length);
+                    n = utf8.length;
+                    break;
+                }
+                entrada[n++] = (byte) c;
+            }
+            mac.update(entrada, 0, n);
+            try {
+                mac.doFinal(salida, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+            return salida;
+        }
+
+        private boolean verificar(String texto, int finFirmado, int inicioFirma) {
+            for (int i = 0; i < BYTES_FIRMA; i++) {
+                int alto = Character.digit(texto.charAt(inicioFirma + 2 * i), 16);
+                int bajo = Character.digit(texto.charAt(inicioFirma + 2 * i + 1), 16);
+                if (alto < 0 || bajo < 0) {
+                    return false;
+                }
+                recibida[i] = (byte) ((alto << 4) | bajo);
+            }
+            byte[] calculada = firmar(texto, finFirmado);
+            // Comparación en tiempo constante sobre los primeros BYTES_FIRMA bytes
+            int diferencia = 0;
+            for (int i = 0; i < BYTES_FIRMA; i++) {
+                diferencia |= calculada[i] ^ recibida[i];
+            }
+            return diferencia == 0;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package services;
+
+import config.PropertiesConfig;
+import dao.ReporteDAO;
+import util.Log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Reporte histórico de recaudo y estadías por día o por mes, exportado a CSV.
+ *
+ * Las salidas y los pagos llegan de la base de datos en orden de fecha por un cursor
+ * (ReporteDAO) y se agregan al vuelo: solo se guarda el período en curso, que se escribe
+ * al cambiar de período. La memoria es la misma para un día que para varios años.
+ *
+ * Columnas: periodo, salidas, mensualidades, invitados, estadia_promedio_min,
+ * estadia_p50_min, estadia_p90_min, estadia_max_min, pagos, total, efectivo, tarjeta,
+ * transferencia, otros. Los percentiles tienen resolución de un minuto hasta 48 horas;
+ * por encima se informa la estadía máxima.
+ */
+public class ReporteHistorico {
+
+    private static final Log LOG = Log.de(ReporteHistorico.class);
+
+    public enum Periodo { DIA, MES }
+
+    private static final String ENCABEZADO =
+            "periodo,salidas,mensualidades,invitados,estadia_promedio_min,estadia_p50_min,estadia_p90_min," +
+            "estadia_max_min,pagos,total,efectivo,tarjeta,transferencia,otros";
+
+    private static final String[] METODOS = {"Efectivo", "Tarjeta", "Transferencia"};
+    private static final int MAX_MINUTOS = 48 * 60;
+
+    private final ReporteDAO reporteDAO;
+    private final int fetchSize;
+
+    public ReporteHistorico() {
+        this.reporteDAO = new ReporteDAO();
+        this.fetchSize = Math.max(1, PropertiesConfig.getInstance().getIntProperty("reporte.fetch_size", 1000));
+    }
+
+    /**
+     * Exporta el reporte de [desde, hasta] (ambos días inclusive) a un archivo CSV.
+     *
+     * @return cantidad de períodos escritos
+     */
+    public long exportarCsv(LocalDate desde, LocalDate hasta, Periodo periodo, Path archivo) throws SQLException {
+        try (BufferedWriter destino = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            long periodos = exportarCsv(desde, hasta, periodo, destino);
+            LOG.info("Reporte exportado a {}", archivo.toAbsolutePath());
+            return periodos;
+        } catch (IOException e) {
+            throw new SQLException("No se pudo escribir el reporte en " + archivo + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Exporta el reporte de [desde, hasta] (ambos días inclusive) en formato CSV.
+     *
+     * @return cantidad de períodos escritos
+     */
+    public long exportarCsv(LocalDate desde, LocalDate hasta, Periodo periodo, Writer destino) throws SQLException {
+        if (hasta.isBefore(desde)) {
+            throw new SQLException("La fecha final del reporte es anterior a la inicial");
+        }
+        Agregador agregador = new Agregador(periodo, destino);
+        try {
+            destino.write(ENCABEZADO);
+            destino.write('\n');
+            long filas = reporteDAO.recorrerMovimientos(desde.atStartOfDay(), hasta.plusDays(1).atStartOfDay(),
+                    fetchSize, agregador);
+            agregador.escribirPeriodo();
+            destino.flush();
+            LOG.info("Reporte {} - {} por {}: {} filas leídas, {} períodos",
+                    desde, hasta, periodo, filas, agregador.periodos);
+            return agregador.periodos;
+        } catch (IOException e) {
+            throw new SQLException("No se pudo escribir el reporte: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Totales del período en curso; se reinicia al escribir cada período.
+     */
+    private static final class Agregador implements ReporteDAO.Receptor {
+        private final Periodo periodo;
+        private final Writer destino;
+        private final StringBuilder linea = new StringBuilder(160);
+        private long periodos;
+
+        private LocalDate actual;
+        private long salidas;
+        private long mensualidades;
+        private long minutosSuma;
+        private int minutosMax;
+        private final long[] estadias = new long[MAX_MINUTOS + 1];
+        private long pagos;
+        // Centavos por método; el último es "otros"
+        private final long[] centavos = new long[METODOS.length + 1];
+
+        private Agregador(Periodo periodo, Writer destino) {
+            this.periodo = periodo;
+            this.destino = destino;
+        }
+
+        @Override
+        public void salida(LocalDateTime fecha, String tipoIngreso, int minutosEstadia) throws SQLException {
+            avanzar(fecha);
+            salidas++;
+            if (MensualidadCache.TIPO_MENSUALIDAD.equalsIgnoreCase(tipoIngreso)) {
+                mensualidades++;
+            }
+            int minutos = Math.max(0, minutosEstadia);
+            minutosSuma += minutos;
+            minutosMax = Math.max(minutosMax, minutos);
+            estadias[Math.min(minutos, MAX_MINUTOS)]++;
+        }
+
+        @Override
+        public void pago(LocalDateTime fecha, BigDecimal monto, String metodoPago) throws SQLException {
+            avanzar(fecha);
+            pagos++;
+            centavos[indice(metodoPago)] += monto.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        }
+
+        private void avanzar(LocalDateTime fecha) throws SQLException {
+            LocalDate dia = fecha.toLocalDate();
+            LocalDate clave = periodo == Periodo.MES ? dia.withDayOfMonth(1) : dia;
+            if (clave.equals(actual)) {
+                return;
+            }
+            try {
+                escribirPeriodo();
+            } catch (IOException e) {
+                throw new SQLException("No se pudo escribir el reporte: " + e.getMessage(), e);
+            }
+            actual = clave;
+        }
+
+        private void escribirPeriodo() throws IOException {
+            if (actual == null) {
+                return;
+            }
+            linea.setLength(0);
+            linea.append(periodo == Periodo.MES ? actual.toString().substring(0, 7) : actual.toString()).append(',')
+                    .append(salidas).append(',')
+                    .append(mensualidades).append(',')
+                    .append(salidas - mensualidades).append(',')
+                    .append(salidas == 0 ? 0 : Math.round((double) minutosSuma / salidas)).append(',')
+                    .append(percentil(0.50)).append(',')
+                    .append(percentil(0.90)).append(',')
+                    .append(minutosMax).append(',')
+                    .append(pagos).append(',')
+                    .append(CalculadoraTarifa.aBigDecimal(Arrays.stream(centavos).sum()).toPlainString());
+            for (long c : centavos) {
+                linea.append(',').append(CalculadoraTarifa.aBigDecimal(c).toPlainString());
+            }
+            linea.append('\n');
+            destino.append(linea);
+            periodos++;
+
+            Arrays.fill(estadias, 0, Math.min(minutosMax, MAX_MINUTOS) + 1, 0);
+            Arrays.fill(centavos, 0);
+            salidas = 0;
+            mensualidades = 0;
+            minutosSuma = 0;
+            minutosMax = 0;
+            pagos = 0;
+        }
+
+        private int percentil(double p) {
+            if (salidas == 0) {
+                return 0;
+            }
+            long objetivo = (long) Math.ceil(p * salidas);
+            long acumulado = 0;
+            for (int m = 0; m < MAX_MINUTOS; m++) {
+                acumulado += estadias[m];
+                if (acumulado >= objetivo) {
+                    return m;
+                }
+            }
+            return minutosMax;
+        }
+
+        private static int indice(String metodoPago) {
+            for (int i = 0; i < METODOS.length; i++) {
+                if (METODOS[i].equalsIgnoreCase(metodoPago)) {
+                    return i;
+                }
+            }
+            return METODOS.length;
+        }
+    }
+}
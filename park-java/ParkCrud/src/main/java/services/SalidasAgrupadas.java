@@ -0,0 +1,186 @@
+package services;
+
+import config.ConnectionPool;
+import config.PropertiesConfig;
+import dao.SalidaDAO;
+import util.Log;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group commit de salidas (salida.persistencia=grupo).
+ *
+ * Las salidas que llegan casi al mismo tiempo desde varios carriles se juntan durante
+ * salida.grupo.ventana_ms (hasta salida.grupo.max salidas) y se cierran con una sola
+ * sentencia y un solo commit (SalidaDAO.cerrarTickets). Cada carril espera el resultado
+ * de su propia salida.
+ *
+ * Si la sentencia del grupo falla por algo que no es la conexión (p. ej. un dato inválido
+ * en una de las salidas), cada salida se reintenta por separado para que el error quede
+ * solo en la que lo causó.
+ */
+public class SalidasAgrupadas {
+
+    private static final Log LOG = Log.de(SalidasAgrupadas.class);
+
+    private static volatile SalidasAgrupadas instance;
+
+    private final SalidaDAO salidaDAO;
+    private final BlockingQueue<Solicitud> pendientes = new LinkedBlockingQueue<>();
+    private final long ventanaNanos;
+    private final int maxGrupo;
+
+    private SalidasAgrupadas() {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        this.salidaDAO = new SalidaDAO();
+        this.ventanaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, props.getIntProperty("salida.grupo.ventana_ms", 2)));
+        this.maxGrupo = Math.max(1, props.getIntProperty("salida.grupo.max", 32));
+
+        Thread hilo = new Thread(this::procesar, "crudpark-salidas");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    public static SalidasAgrupadas getInstance() {
+        if (instance == null) {
+            synchronized (SalidasAgrupadas.class) {
+                if (instance == null) {
+                    instance = new SalidasAgrupadas();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Cierra el ticket junto con las demás salidas del grupo y espera el resultado, como
+     * máximo lo que quede del plazo de la operación (ver {@link ConnectionPool#conPlazo}).
+     *
+     * @return true si se cerró; false si el ticket ya no estaba abierto
+     */
+    public boolean cerrar(int ticketId, int operadorSalidaId, int minutosEstadia, BigDecimal monto,
+                          String metodoPago, LocalDateTime fechaPago) throws SQLException {
+        Solicitud s = new Solicitud(ticketId, operadorSalidaId, minutosEstadia, monto, metodoPago, fechaPago);
+        pendientes.add(s);
+        long restante = ConnectionPool.restantePlazoMillis();
+        try {
+            return restante < 0 ? s.resultado.get() : s.resultado.get(restante, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Si el hilo de commit aún no la tomó, no se enviará. Si ya está en vuelo, el
+            // resultado es incierto como al perder la conexión tras el COMMIT: el diario la
+            // reintenta y la base de datos rechaza el segundo cierre del ticket.
+            pendientes.remove(s);
+            throw new SQLTransientConnectionException("Plazo vencido esperando el commit del grupo de salidas", "08001", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Salida interrumpida esperando el commit del grupo", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Error al registrar la salida", e.getCause());
+        }
+    }
+
+    // Hilo de commit
+
+    private void procesar() {
+        List<Solicitud> grupo = new ArrayList<>(maxGrupo);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                grupo.add(pendientes.take());
+                long limite = System.nanoTime() + ventanaNanos;
+                while (grupo.size() < maxGrupo) {
+                    long restante = limite - System.nanoTime();
+                    Solicitud s = restante > 0 ? pendientes.poll(restante, TimeUnit.NANOSECONDS) : pendientes.poll();
+                    if (s == null) {
+                        break;
+                    }
+                    grupo.add(s);
+                }
+                confirmar(grupo);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                for (Solicitud s : grupo) {
+                    s.resultado.completeExceptionally(e);
+                }
+            } finally {
+                grupo.clear();
+            }
+        }
+    }
+
+    private void confirmar(List<Solicitud> grupo) {
+        int n = grupo.size();
+        int[] ticketIds = new int[n];
+        int[] operadores = new int[n];
+        int[] minutos = new int[n];
+        BigDecimal[] montos = new BigDecimal[n];
+        String[] metodos = new String[n];
+        LocalDateTime[] fechas = new LocalDateTime[n];
+        for (int i = 0; i < n; i++) {
+            Solicitud s = grupo.get(i);
+            ticketIds[i] = s.ticketId;
+            operadores[i] = s.operadorSalidaId;
+            minutos[i] = s.minutosEstadia;
+            montos[i] = s.monto;
+            metodos[i] = s.metodoPago;
+            fechas[i] = s.fechaPago;
+        }
+
+        try {
+            boolean[] cerrados = salidaDAO.cerrarTickets(ticketIds, operadores, minutos, montos, metodos, fechas);
+            for (int i = 0; i < n; i++) {
+                grupo.get(i).resultado.complete(cerrados[i]);
+            }
+        } catch (SQLException e) {
+            if (n == 1 || DiarioOperaciones.esFallaDeConexion(e)) {
+                for (Solicitud s : grupo) {
+                    s.resultado.completeExceptionally(e);
+                }
+                return;
+            }
+            LOG.warn("Falló el commit de {} salidas agrupadas, se registran una por una: {}", n, e.getMessage());
+            for (Solicitud s : grupo) {
+                try {
+                    s.resultado.complete(salidaDAO.cerrarTicket(s.ticketId, s.operadorSalidaId, s.minutosEstadia,
+                            s.monto, s.metodoPago, s.fechaPago));
+                } catch (SQLException individual) {
+                    s.resultado.completeExceptionally(individual);
+                }
+            }
+        }
+    }
+
+    private static final class Solicitud {
+        private final int ticketId;
+        private final int operadorSalidaId;
+        private final int minutosEstadia;
+        private final BigDecimal monto;
+        private final String metodoPago;
+        private final LocalDateTime fechaPago;
+        private final CompletableFuture<Boolean> resultado = new CompletableFuture<>();
+
+        private Solicitud(int ticketId, int operadorSalidaId, int minutosEstadia, BigDecimal monto,
+                          String metodoPago, LocalDateTime fechaPago) {
+            this.ticketId = ticketId;
+            this.operadorSalidaId = operadorSalidaId;
+            this.minutosEstadia = minutosEstadia;
+            this.monto = monto;
+            this.metodoPago = metodoPago;
+            this.fechaPago = fechaPago;
+        }
+    }
+}
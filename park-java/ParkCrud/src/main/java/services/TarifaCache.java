@@ -0,0 +1,215 @@
+package services;
+
+import config.PropertiesConfig;
+import dao.FranjaTarifaDAO;
+import dao.TarifaDAO;
+import models.FranjaTarifa;
+import models.Tarifa;
+import util.Log;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache en memoria de la tarifa activa y sus franjas horarias.
+ *
+ * La tarifa se recarga cuando llega una notificación del canal 'tarifas_cambio'
+ * (ver database/migraciones/003_notificar_cambios_tarifa.sql). Si LISTEN/NOTIFY no está
+ * conectado, la entrada vence tras tarifa.cache.ttl_ms. En ningún caso se cobra con una
+ * tarifa cargada hace más de tarifa.cache.max_stale_ms: si no se puede recargar, la
+ * consulta falla en lugar de cobrar con datos viejos. Sin base de datos (diario local)
+ * se acepta una tarifa más vieja, hasta tarifa.cache.max_stale_sin_conexion_ms.
+ */
+public class TarifaCache {
+
+    private static final Log LOG = Log.de(TarifaCache.class);
+
+    private static final String CANAL = "tarifas_cambio";
+
+    private static volatile TarifaCache instance;
+
+    private final TarifaDAO tarifaDAO;
+    private final FranjaTarifaDAO franjaTarifaDAO;
+    private final NotificacionesListener listener;
+    // Se actualizan al recargar la configuración (tarifa.cache.*)
+    private volatile long ttlNanos;
+    private volatile long maxStaleNanos;
+    private volatile long maxStaleSinConexionNanos;
+
+    private volatile Entrada entrada;
+    // Última entrada con tarifa; se conserva aunque la entrada se invalide, para operar sin conexión
+    private volatile Entrada ultimaConTarifa;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder recargas = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    private TarifaCache() {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        this.tarifaDAO = new TarifaDAO();
+        this.franjaTarifaDAO = new FranjaTarifaDAO();
+        aplicarConfiguracion(props);
+        props.suscribir("tarifa.cache.", claves -> aplicarConfiguracion(props));
+        this.listener = NotificacionesListener.getInstance();
+        this.listener.suscribir(CANAL, payload -> recargarDesdeNotificacion());
+    }
+
+    private void aplicarConfiguracion(PropertiesConfig props) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(props.getIntProperty("tarifa.cache.ttl_ms", 300000));
+        this.maxStaleNanos = TimeUnit.MILLISECONDS.toNanos(props.getIntProperty("tarifa.cache.max_stale_ms", 900000));
+        this.maxStaleSinConexionNanos = TimeUnit.MILLISECONDS.toNanos(
+                props.getIntProperty("tarifa.cache.max_stale_sin_conexion_ms", 28800000));
+    }
+
+    public static TarifaCache getInstance() {
+        if (instance == null) {
+            synchronized (TarifaCache.class) {
+                if (instance == null) {
+                    instance = new TarifaCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Retorna la tarifa activa (o null si no hay ninguna configurada).
+     */
+    public Tarifa getTarifaActiva() throws SQLException {
+        return obtenerEntrada().tarifa;
+    }
+
+    /**
+     * Calculadora precalculada (en centavos) para la tarifa activa, o null si no hay
+     * tarifa configurada. Se crea una sola vez por cada carga de la tarifa.
+     */
+    public CalculadoraTarifa getCalculadoraActiva() throws SQLException {
+        return obtenerEntrada().calculadora;
+    }
+
+    /**
+     * Última calculadora cargada, si no pasa de tarifa.cache.max_stale_sin_conexion_ms
+     * (o null si nunca se cargó o es más vieja). Solo para registrar salidas en el diario
+     * local mientras la base de datos no responde.
+     */
+    public CalculadoraTarifa getCalculadoraUltimaConocida() {
+        Entrada ultima = ultimaConTarifa;
+        if (ultima == null || System.nanoTime() - ultima.cargadaEn >= maxStaleSinConexionNanos) {
+            return null;
+        }
+        return ultima.calculadora;
+    }
+
+    private Entrada obtenerEntrada() throws SQLException {
+        Entrada actual = entrada;
+        long ahora = System.nanoTime();
+        if (actual != null && esVigente(actual, ahora)) {
+            hits.increment();
+            return actual;
+        }
+
+        misses.increment();
+        synchronized (this) {
+            // Otro hilo pudo recargarla mientras esperábamos
+            actual = entrada;
+            if (actual != null && esVigente(actual, System.nanoTime())) {
+                return actual;
+            }
+            try {
+                return recargar();
+            } catch (SQLException e) {
+                fallos.increment();
+                if (actual != null && System.nanoTime() - actual.cargadaEn < maxStaleNanos) {
+                    LOG.warn("No se pudo recargar la tarifa, usando la versión en cache: {}", e.getMessage());
+                    return actual;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Con LISTEN/NOTIFY conectado la entrada vale hasta el límite de antigüedad;
+     * sin notificaciones vale solo durante el TTL.
+     */
+    private boolean esVigente(Entrada e, long ahora) {
+        long edad = ahora - e.cargadaEn;
+        return listener.isConectado() ? edad < maxStaleNanos : edad < ttlNanos;
+    }
+
+    private synchronized Entrada recargar() throws SQLException {
+        Tarifa tarifa = tarifaDAO.findTarifaActiva();
+        List<FranjaTarifa> franjas = tarifa != null
+                ? franjaTarifaDAO.findActivasByTarifa(tarifa.getId())
+                : Collections.<FranjaTarifa>emptyList();
+        Entrada nueva = new Entrada(tarifa, franjas, System.nanoTime());
+        entrada = nueva;
+        if (nueva.calculadora != null) {
+            ultimaConTarifa = nueva;
+        }
+        recargas.increment();
+        return nueva;
+    }
+
+    /**
+     * Invocado desde el hilo de LISTEN/NOTIFY. Recarga de inmediato para que la
+     * siguiente salida no pague la consulta; si falla, invalida la entrada.
+     */
+    private void recargarDesdeNotificacion() {
+        try {
+            recargar();
+            LOG.info("Tarifa activa recargada por notificación");
+        } catch (SQLException e) {
+            fallos.increment();
+            entrada = null;
+            LOG.warn("Error recargando la tarifa notificada: {}", e.getMessage());
+        }
+    }
+
+    public void invalidar() {
+        entrada = null;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getRecargas() {
+        return recargas.sum();
+    }
+
+    public long getFallos() {
+        return fallos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TarifaCache{" +
+                "hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", recargas=" + getRecargas() +
+                ", fallos=" + getFallos() +
+                ", notificaciones=" + (listener.isConectado() ? "conectado" : "desconectado") +
+                '}';
+    }
+
+    private static final class Entrada {
+        private final Tarifa tarifa;
+        private final CalculadoraTarifa calculadora;
+        private final long cargadaEn;
+
+        private Entrada(Tarifa tarifa, List<FranjaTarifa> franjas, long cargadaEn) {
+            this.tarifa = tarifa;
+            this.calculadora = tarifa != null ? CalculadoraTarifa.desde(tarifa, franjas) : null;
+            this.cargadaEn = cargadaEn;
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package services;
 
+import config.ConnectionPool;
 import config.DatabaseConfig;
+import config.PropertiesConfig;
 import dao.*;
+import exceptios.ConflictoCierreException;
 import models.*;
 import util.FormatMontoUtil;
+import util.Log;
+import util.Metricas;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 
@@ -17,118 +23,285 @@ import java.time.LocalDateTime;
  */
 public class TicketService {
 
+    private static final Log LOG = Log.de(TicketService.class);
+
+    // Métricas (sin costo con metricas.habilitado=false)
+    private static final String OPERACION = "crudpark_operacion";
+    private static final String AYUDA_OPERACION = "Latencia de las operaciones de portería";
+    private static final String DAO = "crudpark_dao";
+    private static final String AYUDA_DAO = "Latencia de las llamadas a la base de datos";
+    private static final Metricas.Temporizador M_INGRESO = Metricas.temporizador(OPERACION, AYUDA_OPERACION, "operacion", "registrarIngreso");
+    private static final Metricas.Temporizador M_SALIDA = Metricas.temporizador(OPERACION, AYUDA_OPERACION, "operacion", "registrarSalida");
+    private static final Metricas.Temporizador M_SALIDA_QR = Metricas.temporizador(OPERACION, AYUDA_OPERACION, "operacion", "registrarSalidaPorQr");
+    private static final Metricas.Temporizador M_PAGO_MANUAL = Metricas.temporizador(OPERACION, AYUDA_OPERACION, "operacion", "registrarPagoManual");
+    private static final Metricas.Temporizador M_TARIFA = Metricas.temporizador(OPERACION, AYUDA_OPERACION, "operacion", "calcularTarifa");
+    private static final Metricas.Temporizador M_IMPRESION = Metricas.temporizador(OPERACION, AYUDA_OPERACION, "operacion", "generarTicket");
+    private static final Metricas.Temporizador M_DAO_INGRESO = Metricas.temporizador(DAO, AYUDA_DAO, "llamada", "IngresoDAO.registrarIngreso");
+    private static final Metricas.Temporizador M_DAO_OPERADOR = Metricas.temporizador(DAO, AYUDA_DAO, "llamada", "OperadorDAO.findById");
+    private static final Metricas.Temporizador M_DAO_SALIDA = Metricas.temporizador(DAO, AYUDA_DAO, "llamada", "SalidaDAO.cerrarTicket");
+    private static final Metricas.Temporizador M_DAO_SALIDA_TX = Metricas.temporizador(DAO, AYUDA_DAO, "llamada", "TicketDAO.registrarSalida+PagoDAO.create+commit");
+    private static final Metricas.Temporizador M_DAO_PAGO_MANUAL = Metricas.temporizador(DAO, AYUDA_DAO, "llamada", "PagoManualDAO.registrar");
+
     private final OperadorDAO operadorDAO;
     private final TicketDAO ticketDAO;
-    private final MensualidadDAO mensualidadDAO;
-    private final TarifaDAO tarifaDAO;
     private final PagoDAO pagoDAO;
+    private final IngresoDAO ingresoDAO;
+    private final FolioAllocator folioAllocator;
+    private final TarifaCache tarifaCache;
+    private final MensualidadCache mensualidadCache;
+    private final TicketsAbiertosIndex ticketsAbiertos;
+    private final DiarioOperaciones diario;
+    private final SalidaDAO salidaDAO;
+    private final PagoManualDAO pagoManualDAO;
+    // null salvo con salida.persistencia=grupo
+    private final SalidasAgrupadas salidasAgrupadas;
+    private final boolean salidaEnTransaccion;
+    private final Ocupacion ocupacion;
+    private final CierreTurno cierreTurno;
+    private final Idempotencia idempotencia;
+    // Plazo de cada operación de carril contra la base de datos; al vencerse se usa el diario
+    private final long plazoMillis;
 
     public TicketService() {
         this.ticketDAO = new TicketDAO();
-        this.mensualidadDAO = new MensualidadDAO();
-        this.tarifaDAO = new TarifaDAO();
         this.pagoDAO = new PagoDAO();
         this.operadorDAO = new OperadorDAO();
+        this.ingresoDAO = new IngresoDAO();
+        this.folioAllocator = FolioAllocator.getInstance();
+        this.tarifaCache = TarifaCache.getInstance();
+        this.mensualidadCache = MensualidadCache.getInstance();
+        this.ticketsAbiertos = TicketsAbiertosIndex.getInstance();
+        this.diario = DiarioOperaciones.getInstance();
+        this.salidaDAO = new SalidaDAO();
+        this.pagoManualDAO = new PagoManualDAO();
+
+        // Persistencia de la salida: sentencia (por defecto), grupo o transaccion (tres escrituras)
+        String modo = PropertiesConfig.getInstance().getProperty("salida.persistencia");
+        modo = modo != null ? modo.trim().toLowerCase() : "";
+        this.salidaEnTransaccion = modo.equals("transaccion");
+        this.salidasAgrupadas = modo.equals("grupo") ? SalidasAgrupadas.getInstance() : null;
+        this.ocupacion = Ocupacion.getInstance();
+        this.cierreTurno = CierreTurno.getInstance();
+        this.idempotencia = Idempotencia.getInstance();
+        this.plazoMillis = PropertiesConfig.getInstance().getIntProperty("diario.plazo_ms", 2000);
     }
 
+    // Resultados guardados con la clave de operación (ver Idempotencia)
+
+    private final Idempotencia.Convertidor<Ticket> comoTicket = new Idempotencia.Convertidor<Ticket>() {
+        @Override
+        public String aTexto(Ticket ticket) {
+            return ticket.getNumeroFolio();
+        }
+
+        @Override
+        public Ticket deTexto(String folio) throws SQLException {
+            Ticket ticket = ticketsAbiertos.buscarPorFolio(folio);
+            if (ticket == null) {
+                throw new SQLException("El ingreso ya se registró con el folio " + folio + " y el ticket ya no está abierto");
+            }
+            return ticket;
+        }
+    };
+
+    private static final Idempotencia.Convertidor<BigDecimal> COMO_MONTO = new Idempotencia.Convertidor<BigDecimal>() {
+        @Override
+        public String aTexto(BigDecimal monto) {
+            return monto.toPlainString();
+        }
+
+        @Override
+        public BigDecimal deTexto(String texto) {
+            return new BigDecimal(texto);
+        }
+    };
+
+    private static final Idempotencia.Convertidor<Boolean> COMO_BOOLEANO = new Idempotencia.Convertidor<Boolean>() {
+        @Override
+        public String aTexto(Boolean valor) {
+            return valor.toString();
+        }
+
+        @Override
+        public Boolean deTexto(String texto) {
+            return Boolean.valueOf(texto);
+        }
+    };
+
     /**
      * Registra el ingreso de un vehículo.
+     * El folio sale de un bloque reservado en memoria (FolioAllocator) y la mensualidad se
+     * resuelve con el índice en memoria (MensualidadCache). La verificación de ticket abierto
+     * y el INSERT se resuelven en una sola sentencia (un viaje a la base de datos), y la regla
+     * "un ticket abierto por placa" se aplica de forma atómica con el índice único parcial.
+     * Si la base de datos no responde, el ingreso se guarda en el diario local
+     * (DiarioOperaciones) y se sincroniza después.
      */
     public Ticket registrarIngreso(String placa, int operadorIngresoId) throws SQLException {
-        Connection conn = null; // Inicializar la conexión fuera del try
-        Ticket ticketCreado = null;
+        return registrarIngreso(placa, operadorIngresoId, null);
+    }
+
+    /**
+     * Igual que {@link #registrarIngreso(String, int)}, pero un reintento con la misma clave
+     * retorna el ticket original sin registrar otro ingreso.
+     *
+     * @param claveOperacion clave generada por la interfaz para esta operación (ver Idempotencia)
+     */
+    public Ticket registrarIngreso(String placa, int operadorIngresoId, String claveOperacion) throws SQLException {
+        long inicio = M_INGRESO.iniciar();
+        boolean exito = false;
+        try {
+            Ticket resultado = ConnectionPool.conPlazo(plazoMillis, () -> idempotencia.ejecutar(claveOperacion, "ingreso",
+                    () -> procesarIngreso(placa, operadorIngresoId), comoTicket));
+            exito = true;
+            return resultado;
+        } finally {
+            M_INGRESO.registrar(inicio, exito);
+        }
+    }
 
-        // 1. Validaciones de lógica de negocio (No requieren conexión transaccional)
+    private Ticket procesarIngreso(String placa, int operadorIngresoId) throws SQLException {
+        // 1. Validaciones de lógica de negocio
         if (placa == null || placa.trim().isEmpty()) {
             throw new SQLException("La placa no puede estar vacía");
         }
 
         placa = placa.trim().toUpperCase();
 
-        // Las lecturas del DAO (findTicketAbiertoByPlaca, findVigenteByPlaca, generarNumeroFolio)
-        // pueden usar el comportamiento por defecto de su DAO (autocommit=true), ya que son solo lecturas
-        // y no forman parte de la unidad de trabajo crítica (la escritura).
-
-        Ticket ticketExistente = ticketDAO.findTicketAbiertoByPlaca(placa);
-        if (ticketExistente != null) {
-            throw new SQLException("Ya existe un ticket abierto para la placa: " + placa);
-        }
-
-        Mensualidad mensualidad = mensualidadDAO.findVigenteByPlaca(placa);
-        String tipoIngreso = (mensualidad != null) ? "Mensualidad" : "Invitado";
-        String numeroFolio = ticketDAO.generarNumeroFolio();
-
         // 2. Crear objeto Ticket
+        String numeroFolio = siguienteFolio();
+
         Ticket nuevoTicket = new Ticket();
         nuevoTicket.setNumeroFolio(numeroFolio);
         nuevoTicket.setPlaca(placa);
-        nuevoTicket.setTipoIngreso(tipoIngreso);
+        // Mensualidad o Invitado desde el índice en memoria; null = lo resuelve la base de datos
+        nuevoTicket.setTipoIngreso(mensualidadCache.clasificar(placa));
         nuevoTicket.setFechaIngreso(LocalDateTime.now());
         nuevoTicket.setOperadorIngresoId(operadorIngresoId);
-        nuevoTicket.setActivo(true);
-        nuevoTicket.setPagado(tipoIngreso.equals("Mensualidad"));
-        nuevoTicket.setMontoCobrado(BigDecimal.ZERO);
 
         long timestamp = System.currentTimeMillis() / 1000;
-        nuevoTicket.setQrCode("TICKET:" + numeroFolio + "|PLATE:" + placa + "|DATE:" + timestamp);
-
+        nuevoTicket.setQrCode(QrTicket.generar(numeroFolio, placa, timestamp));
 
-        // 3. Bloque Transaccional (Escritura)
-        try {
-            conn = DatabaseConfig.getInstance().getNewConnection();
-            conn.setAutoCommit(false); // Iniciar Transacción
-
-            // Guardar en base de datos usando la conexión transaccional
-            ticketCreado = ticketDAO.create(nuevoTicket, conn); // <--- DEBE USAR 'conn'
-
-            if (ticketCreado == null) {
-                // Si el DAO retorna null, hubo un fallo en el INSERT. Lanzamos excepción para Rollback.
-                throw new SQLException("Error al crear el ticket en la base de datos.");
-            }
+        // Un ingreso que solo está en el diario local no lo ve el índice único de la base de datos
+        if (ticketsAbiertos.tieneSinSincronizar(placa)) {
+            throw new SQLException("Ya existe un ticket abierto para la placa: " + placa);
+        }
 
-            conn.commit(); // Éxito: Guardar los cambios.
-            System.out.println("✓ Ingreso registrado y transacción completada: " + placa + " - " + tipoIngreso);
+        // Cupo: las mensualidades siempre entran; si el índice no es confiable se usa el último conocido
+        String tipoProvisional = nuevoTicket.getTipoIngreso() != null
+                ? nuevoTicket.getTipoIngreso() : mensualidadCache.clasificarUltimoConocido(placa);
+        if (!ocupacion.reservar(MensualidadCache.TIPO_MENSUALIDAD.equals(tipoProvisional))) {
+            throw new SQLException("Parqueadero lleno: no hay cupos disponibles");
+        }
 
-        } catch (SQLException e) {
-            // Fallo: Hacer Rollback
-            System.err.println("⚠ Error en transacción 'registrarIngreso'. Ejecutando Rollback: " + e.getMessage());
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException rollbackEx) {
-                    System.err.println("Fallo al hacer rollback: " + rollbackEx.getMessage());
+        // 3. Ingreso en una sola sentencia atómica (auto-commit, sin BEGIN/COMMIT adicionales);
+        // en modo sin conexión va directo al diario, sin esperar a la base de datos
+        Ticket ticketCreado = null;
+        boolean sinConexion = diario.isSinConexion();
+        if (!sinConexion) {
+            long inicioDao = M_DAO_INGRESO.iniciar();
+            try {
+                ticketCreado = ingresoDAO.registrarIngreso(nuevoTicket);
+                M_DAO_INGRESO.registrar(inicioDao, true);
+            } catch (SQLException e) {
+                M_DAO_INGRESO.registrar(inicioDao, false);
+                if (!diario.isHabilitado() || !DiarioOperaciones.esFallaDeConexion(e)) {
+                    ocupacion.cancelarReserva();
+                    throw e;
                 }
+                diario.marcarSinConexion(e);
+                sinConexion = true;
             }
-            // Relanzar la excepción para que el Controller la maneje
-            throw e;
-
-        } finally {
-            // Limpieza: Cerrar la conexión
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Restaurar a auto-commit por si acaso
-                    conn.close();
-                } catch (SQLException closeEx) {
-                    System.err.println("Fallo al cerrar la conexión: " + closeEx.getMessage());
+        }
+        if (sinConexion) {
+            try {
+                ticketCreado = registrarIngresoSinConexion(nuevoTicket);
+            } finally {
+                if (ticketCreado == null) {
+                    ocupacion.cancelarReserva();
                 }
             }
         }
+        if (ticketCreado == null) {
+            ocupacion.cancelarReserva();
+            throw new SQLException("Ya existe un ticket abierto para la placa: " + placa);
+        }
+        ocupacion.confirmarIngreso(ticketCreado.getTipoIngreso());
+        cierreTurno.registrarIngreso(operadorIngresoId);
+        LOG.info("Ingreso registrado: {} - {}", placa, ticketCreado.getTipoIngreso());
+        ticketsAbiertos.registrar(ticketCreado);
 
 
         // 4. Imprimir ticket (Operación fuera de la transacción)
-        if (ticketCreado != null) {
-            Operador operador = operadorDAO.findById(operadorIngresoId); // Lectura fuera de la conexión transaccional
+        if (sinConexion) {
+            long inicioImpresion = M_IMPRESION.iniciar();
+            new TicketPrinterService(ticketCreado, "#" + operadorIngresoId).imprimir();
+            M_IMPRESION.registrar(inicioImpresion, true);
+        } else {
+            long inicioOperador = M_DAO_OPERADOR.iniciar();
+            Operador operador;
+            try {
+                operador = operadorDAO.findById(operadorIngresoId); // Lectura fuera de la conexión transaccional
+            } catch (SQLException e) {
+                // El ingreso ya quedó registrado: si el plazo se agotó, el ticket sale sin nombre
+                LOG.warn("No se pudo leer el operador {} para el ticket: {}", operadorIngresoId, e.getMessage());
+                operador = null;
+                new TicketPrinterService(ticketCreado, "#" + operadorIngresoId).imprimir();
+            }
+            M_DAO_OPERADOR.registrar(inicioOperador, operador != null);
             if (operador != null) {
                 // Nota: Se asume que TicketPrinterService ya está implementado
+                long inicioImpresion = M_IMPRESION.iniciar();
                 TicketPrinterService printer = new TicketPrinterService(ticketCreado, operador.getNombre());
                 printer.imprimir();
-                System.out.println("✓ Ticket impreso exitosamente");
+                M_IMPRESION.registrar(inicioImpresion, true);
+                LOG.info("Ticket impreso exitosamente");
             }
         }
 
         return ticketCreado;
     }
 
+    /**
+     * Folio del ingreso. Sin conexión (o si reservar un bloque falla por conexión) se usa
+     * un folio que no depende de la base de datos, para que el ingreso llegue al diario.
+     */
+    private String siguienteFolio() throws SQLException {
+        if (diario.isSinConexion()) {
+            return folioAllocator.siguienteFolioSinConexion();
+        }
+        try {
+            return folioAllocator.siguienteFolio();
+        } catch (SQLException e) {
+            if (!diario.isHabilitado() || !DiarioOperaciones.esFallaDeConexion(e)) {
+                throw e;
+            }
+            diario.marcarSinConexion(e);
+            return folioAllocator.siguienteFolioSinConexion();
+        }
+    }
+
+    /**
+     * Ingreso sin base de datos: se clasifica con el último índice de mensualidades y se
+     * guarda en el diario local. El ticket queda con id 0 hasta que se sincronice.
+     */
+    private Ticket registrarIngresoSinConexion(Ticket ticket) throws SQLException {
+        // El índice único de la base de datos no protege los ingresos del diario: cualquier
+        // ticket abierto de la placa (sincronizado o no) impide un segundo ingreso
+        if (ticketsAbiertos.buscarEnMemoria(ticket.getPlaca()) != null) {
+            throw new SQLException("Ya existe un ticket abierto para la placa: " + ticket.getPlaca());
+        }
+        if (ticket.getTipoIngreso() == null) {
+            ticket.setTipoIngreso(mensualidadCache.clasificarUltimoConocido(ticket.getPlaca()));
+        }
+        ticket.setPagado(MensualidadCache.TIPO_MENSUALIDAD.equals(ticket.getTipoIngreso()));
+        ticket.setMontoCobrado(BigDecimal.ZERO);
+        ticket.setActivo(true);
+        diario.registrarIngreso(ticket);
+        LOG.warn("Base de datos no disponible: ingreso {} guardado en el diario local", ticket.getNumeroFolio());
+        return ticket;
+    }
+
     /**
      * Registra la salida del vehículo aplicando las reglas de negocio.
      *
@@ -145,45 +318,282 @@ public class TicketService {
      * @param operadorSalidaId ID del operador que registra la salida
      * @param metodoPago Método de pago: "Efectivo", "Tarjeta", "Transferencia"
      * @return true si la salida se registró correctamente
+     * @throws ConflictoCierreException si otra operación (otro carril) cerró el ticket al mismo
+     *         tiempo; no se cobró nada y se puede reintentar
      */
     public BigDecimal registrarSalida(String placa, int operadorSalidaId, String metodoPago) throws SQLException {
-        Connection conn = null;
-        BigDecimal monto = BigDecimal.ZERO; // Inicializar aquí para que sea visible en el bloque try
+        return registrarSalida(placa, operadorSalidaId, metodoPago, null);
+    }
 
-        try{
-            conn = DatabaseConfig.getInstance().getNewConnection();
-            conn.setAutoCommit(false); // 1. INICIO DE TRANSACCIÓN
+    /**
+     * Igual que {@link #registrarSalida(String, int, String)}, pero un reintento con la misma
+     * clave retorna el monto original sin volver a cobrar.
+     *
+     * @param claveOperacion clave generada por la interfaz para esta operación (ver Idempotencia)
+     */
+    public BigDecimal registrarSalida(String placa, int operadorSalidaId, String metodoPago, String claveOperacion) throws SQLException {
+        long inicio = M_SALIDA.iniciar();
+        boolean exito = false;
+        try {
+            BigDecimal resultado = ConnectionPool.conPlazo(plazoMillis, () -> idempotencia.ejecutar(claveOperacion, "salida",
+                    () -> procesarSalida(placa, operadorSalidaId, metodoPago), COMO_MONTO));
+            exito = true;
+            return resultado;
+        } finally {
+            M_SALIDA.registrar(inicio, exito);
+        }
+    }
+
+    private BigDecimal procesarSalida(String placa, int operadorSalidaId, String metodoPago) throws SQLException {
+        // Validaciones de entrada (Placa y Método de Pago)
+        if (placa == null || placa.trim().isEmpty()) {
+            throw new SQLException("La placa no puede estar vacía");
+        }
+        placa = placa.trim().toUpperCase();
+        String metodoPagoFinal = validarMetodoPago(metodoPago);
 
-            // Validaciones de entrada (Placa y Método de Pago)
-            if (placa == null || placa.trim().isEmpty()) {
-                throw new SQLException("La placa no puede estar vacía");
+        // Lectura de ticket (índice en memoria; la escritura verifica que siga abierto)
+        Ticket ticket = buscarTicket(placa);
+        if (ticket == null) {
+            throw new SQLException("No se encontró un ticket abierto para la placa: " + placa);
+        }
+        return cerrarTicket(ticket, operadorSalidaId, metodoPagoFinal);
+    }
+
+    /**
+     * Registra la salida escaneando el QR del ticket: valida el contenido (y su firma, si
+     * está configurada) y busca el ticket por folio en el índice en memoria. Aplica las
+     * mismas reglas de cobro que {@link #registrarSalida}.
+     *
+     * @param contenidoQr Texto leído del código QR
+     * @param operadorSalidaId ID del operador que registra la salida
+     * @param metodoPago Método de pago: "Efectivo", "Tarjeta", "Transferencia"
+     * @return el monto cobrado
+     */
+    public BigDecimal registrarSalidaPorQr(String contenidoQr, int operadorSalidaId, String metodoPago) throws SQLException {
+        return registrarSalidaPorQr(contenidoQr, operadorSalidaId, metodoPago, null);
+    }
+
+    /**
+     * Igual que {@link #registrarSalidaPorQr(String, int, String)}, con clave de operación.
+     */
+    public BigDecimal registrarSalidaPorQr(String contenidoQr, int operadorSalidaId, String metodoPago,
+                                           String claveOperacion) throws SQLException {
+        long inicio = M_SALIDA_QR.iniciar();
+        boolean exito = false;
+        try {
+            BigDecimal resultado = ConnectionPool.conPlazo(plazoMillis, () -> idempotencia.ejecutar(claveOperacion, "salida",
+                    () -> procesarSalidaPorQr(contenidoQr, operadorSalidaId, metodoPago), COMO_MONTO));
+            exito = true;
+            return resultado;
+        } finally {
+            M_SALIDA_QR.registrar(inicio, exito);
+        }
+    }
+
+    private BigDecimal procesarSalidaPorQr(String contenidoQr, int operadorSalidaId, String metodoPago) throws SQLException {
+        String metodoPagoFinal = validarMetodoPago(metodoPago);
+        QrTicket qr = QrTicket.leer(contenidoQr);
+
+        Ticket ticket;
+        try {
+            ticket = diario.isSinConexion()
+                    ? ticketsAbiertos.buscarPorFolioEnMemoria(qr.getNumeroFolio())
+                    : ticketsAbiertos.buscarPorFolio(qr.getNumeroFolio());
+        } catch (SQLException e) {
+            if (!diario.isHabilitado() || !DiarioOperaciones.esFallaDeConexion(e)) {
+                throw e;
             }
-            placa = placa.trim().toUpperCase();
+            diario.marcarSinConexion(e);
+            ticket = ticketsAbiertos.buscarPorFolioEnMemoria(qr.getNumeroFolio());
+        }
+        if (ticket == null) {
+            throw new SQLException("No se encontró un ticket abierto con el folio: " + qr.getNumeroFolio());
+        }
+        if (!qr.placaCoincide(ticket.getPlaca())) {
+            throw new SQLException("El código QR no corresponde a la placa del ticket " + qr.getNumeroFolio());
+        }
+        return cerrarTicket(ticket, operadorSalidaId, metodoPagoFinal);
+    }
 
-            String metodoPagoFinal = metodoPago.trim();
-            if (!metodoPagoFinal.equals("Efectivo") &&
-                    !metodoPagoFinal.equals("Tarjeta") &&
-                    !metodoPagoFinal.equals("Transferencia")) {
-                throw new SQLException("Método de pago no válido. Use: Efectivo, Tarjeta o Transferencia");
+    /**
+     * Ticket abierto de la placa; sin conexión solo se consulta el índice en memoria.
+     */
+    private Ticket buscarTicket(String placa) throws SQLException {
+        if (diario.isSinConexion()) {
+            return ticketsAbiertos.buscarEnMemoria(placa);
+        }
+        try {
+            return ticketsAbiertos.buscar(placa);
+        } catch (SQLException e) {
+            if (!diario.isHabilitado() || !DiarioOperaciones.esFallaDeConexion(e)) {
+                throw e;
             }
+            diario.marcarSinConexion(e);
+            return ticketsAbiertos.buscarEnMemoria(placa);
+        }
+    }
 
-            // Lectura de ticket
-            Ticket ticket = ticketDAO.findTicketAbiertoByPlaca(placa);
-            if (ticket == null) {
-                throw new SQLException("No se encontró un ticket abierto para la placa: " + placa);
+    private String validarMetodoPago(String metodoPago) throws SQLException {
+        String metodoPagoFinal = metodoPago != null ? metodoPago.trim() : "";
+        if (!metodoPagoFinal.equals("Efectivo") &&
+                !metodoPagoFinal.equals("Tarjeta") &&
+                !metodoPagoFinal.equals("Transferencia")) {
+            throw new SQLException("Método de pago no válido. Use: Efectivo, Tarjeta o Transferencia");
+        }
+        return metodoPagoFinal;
+    }
+
+    /**
+     * Cierra el ticket en la base de datos o, si no responde (o el ingreso aún está solo
+     * en el diario local, o se está operando sin conexión), en el diario local.
+     */
+    private BigDecimal cerrarTicket(Ticket ticket, int operadorSalidaId, String metodoPagoFinal) throws SQLException {
+        BigDecimal monto;
+        // En curso hasta descontarla: la conciliación de ocupación la tiene en cuenta
+        ocupacion.iniciarSalida();
+        try {
+            if (ticket.getId() == 0 || diario.isSinConexion()) {
+                monto = cerrarTicketSinConexion(ticket, operadorSalidaId, metodoPagoFinal);
+            } else {
+                try {
+                    monto = salidaEnTransaccion
+                            ? cerrarTicketEnTransaccion(ticket, operadorSalidaId, metodoPagoFinal)
+                            : cerrarTicketEnUnaSentencia(ticket, operadorSalidaId, metodoPagoFinal);
+                } catch (SQLException e) {
+                    if (!diario.isHabilitado() || !DiarioOperaciones.esFallaDeConexion(e)) {
+                        throw e;
+                    }
+                    diario.marcarSinConexion(e);
+                    monto = cerrarTicketSinConexion(ticket, operadorSalidaId, metodoPagoFinal);
+                }
             }
-            if (ticket.getFechaSalida() != null) {
-                throw new SQLException("Este ticket ya fue cerrado anteriormente");
+        } catch (SQLException | RuntimeException e) {
+            ocupacion.cancelarSalida();
+            throw e;
+        }
+        ocupacion.registrarSalida(ticket.getTipoIngreso());
+        if (monto.signum() > 0) {
+            cierreTurno.registrarPago(operadorSalidaId, metodoPagoFinal, monto);
+        }
+        return monto;
+    }
+
+    /**
+     * Salida sin base de datos: cobra con la última tarifa cargada y guarda la salida en el
+     * diario local; al sincronizar se cierra el ticket y se registra el pago por folio.
+     */
+    private BigDecimal cerrarTicketSinConexion(Ticket ticket, int operadorSalidaId, String metodoPagoFinal) throws SQLException {
+        LocalDateTime ahora = LocalDateTime.now();
+        long minutosEstadia = Duration.between(ticket.getFechaIngreso(), ahora).toMinutes();
+
+        long montoCentavos = 0;
+        if (!ticket.getTipoIngreso().equalsIgnoreCase("Mensualidad")) {
+            CalculadoraTarifa calculadora = tarifaCache.getCalculadoraUltimaConocida();
+            if (calculadora == null) {
+                throw new SQLException("Base de datos no disponible y no hay tarifa cargada para cobrar "
+                        + "(o es más vieja que tarifa.cache.max_stale_sin_conexion_ms)");
             }
+            montoCentavos = calculadora.calcularCentavos(ticket.getFechaIngreso(), minutosEstadia);
+        }
+        BigDecimal monto = CalculadoraTarifa.aBigDecimal(montoCentavos);
+
+        diario.registrarSalida(ticket, operadorSalidaId, ahora, minutosEstadia, montoCentavos, metodoPagoFinal);
+        ticketsAbiertos.quitar(ticket);
+        LOG.warn("Base de datos no disponible: salida {} guardada en el diario local - Monto: {}",
+                ticket.getNumeroFolio(), FormatMontoUtil.formatear(monto));
+
+        try {
+            new ClosePrinterService(ticket, operadorSalidaId, metodoPagoFinal, monto, minutosEstadia).imprimir();
+        } catch (Exception printEx) {
+            LOG.warn("Error al imprimir el ticket de salida: {}", printEx.getMessage());
+        }
+        return monto;
+    }
+
+    /**
+     * Cierra el ticket con una sola sentencia (SalidaDAO): salida, pago (si hay cobro) y estado
+     * del ticket en un viaje a la base de datos, o en el commit agrupado de varios carriles.
+     */
+    private BigDecimal cerrarTicketEnUnaSentencia(Ticket ticket, int operadorSalidaId, String metodoPagoFinal) throws SQLException {
+        LocalDateTime ahora = LocalDateTime.now();
+        long minutosEstadia = Duration.between(ticket.getFechaIngreso(), ahora).toMinutes();
+        LOG.info("Tiempo de estadía: {} minutos", minutosEstadia);
+
+        BigDecimal monto = BigDecimal.ZERO;
+        boolean mensualidad = ticket.getTipoIngreso().equalsIgnoreCase("Mensualidad");
+        if (!mensualidad) {
+            long inicioTarifa = M_TARIFA.iniciar();
+            CalculadoraTarifa calculadora = tarifaCache.getCalculadoraActiva();
+            if (calculadora == null) {
+                M_TARIFA.registrar(inicioTarifa, false);
+                throw new SQLException("No hay tarifa activa configurada en el sistema");
+            }
+            int tiempoGracia = calculadora.getTiempoGraciaMinutos();
+            monto = CalculadoraTarifa.aBigDecimal(calculadora.calcularCentavos(ticket.getFechaIngreso(), minutosEstadia));
+            M_TARIFA.registrar(inicioTarifa, true);
+            if (minutosEstadia > tiempoGracia) {
+                LOG.info("Monto total a cobrar: {}", FormatMontoUtil.formatear(monto));
+            } else {
+                LOG.info("Dentro del tiempo de gracia ({} min) - Sin cobro", tiempoGracia);
+            }
+        }
+
+        long inicioDao = M_DAO_SALIDA.iniciar();
+        boolean cerrado = false;
+        try {
+            cerrado = salidasAgrupadas != null
+                    ? salidasAgrupadas.cerrar(ticket.getId(), operadorSalidaId, (int) minutosEstadia, monto, metodoPagoFinal, ahora)
+                    : salidaDAO.cerrarTicket(ticket.getId(), operadorSalidaId, (int) minutosEstadia, monto, metodoPagoFinal, ahora);
+        } finally {
+            M_DAO_SALIDA.registrar(inicioDao, cerrado);
+        }
+        // Cerrado aquí o ya cerrado por otro carril: en ambos casos deja de estar abierto
+        ticketsAbiertos.quitar(ticket);
+        if (!cerrado) {
+            throw conflicto(ticket);
+        }
+
+        long inicioImpresion = M_IMPRESION.iniciar();
+        try {
+            new ClosePrinterService(ticket, operadorSalidaId, metodoPagoFinal, monto, minutosEstadia).imprimir();
+            M_IMPRESION.registrar(inicioImpresion, true);
+        } catch (Exception printEx) {
+            M_IMPRESION.registrar(inicioImpresion, false);
+            LOG.warn("Error al imprimir el ticket de salida: {}", printEx.getMessage());
+        }
+
+        if (mensualidad) {
+            LOG.info("Salida registrada (Mensualidad - sin cobro)");
+        } else {
+            LOG.info("Salida registrada exitosamente - Placa: {} - Monto: ${}", ticket.getPlaca(), monto);
+        }
+        return monto;
+    }
+
+    /**
+     * Cierra el ticket en una transacción: salida, pago (si hay cobro) y estado del ticket
+     * (salida.persistencia=transaccion; tres escrituras y el commit por separado).
+     */
+    private BigDecimal cerrarTicketEnTransaccion(Ticket ticket, int operadorSalidaId, String metodoPagoFinal) throws SQLException {
+        Connection conn = null;
+        BigDecimal monto = BigDecimal.ZERO; // Inicializar aquí para que sea visible en el bloque try
+
+        long inicioDao = M_DAO_SALIDA_TX.iniciar();
+
+        try{
+            conn = DatabaseConfig.getInstance().getNewConnection();
+            conn.setAutoCommit(false); // 1. INICIO DE TRANSACCIÓN
 
             // Calcular tiempo de estadía
             LocalDateTime ahora = LocalDateTime.now();
             long minutosEstadia = Duration.between(ticket.getFechaIngreso(), ahora).toMinutes();
-            System.out.println("⏱ Tiempo de estadía: " + minutosEstadia + " minutos");
+            LOG.info("Tiempo de estadía: {} minutos", minutosEstadia);
 
             // ✅ CASO 1: Si es mensualidad → salida sin cobro
             if (ticket.getTipoIngreso().equalsIgnoreCase("Mensualidad")) {
-                boolean salidaRegistrada = ticketDAO.registrarSalida(
+                // Solo cierra si sigue abierto (ver SalidaDAO)
+                boolean salidaRegistrada = salidaDAO.registrarSalida(
                         ticket.getId(),
                         operadorSalidaId,
                         (int) minutosEstadia,
@@ -192,9 +602,11 @@ public class TicketService {
 
                 if (salidaRegistrada) {
                     ticketDAO.registrarPago(ticket.getId(), BigDecimal.ZERO, conn);
-                    System.out.println("✓ Salida registrada (Mensualidad - sin cobro)");
+                    LOG.info("Salida registrada (Mensualidad - sin cobro)");
                     conn.commit(); // 2. COMMIT para Mensualidad
-                    System.out.println("✓ Salida registrada (Mensualidad - sin cobro)");
+                    M_DAO_SALIDA_TX.registrar(inicioDao, true);
+                    ticketsAbiertos.quitar(ticket);
+                    LOG.info("Salida registrada (Mensualidad - sin cobro)");
 
                     // ⚙️ PUNTO DE IMPRESIÓN 1: Después de COMMIT de Mensualidad (monto 0)
                     try {
@@ -202,52 +614,39 @@ public class TicketService {
                         ClosePrinterService printer = new ClosePrinterService(ticket, operadorSalidaId, metodoPagoFinal, BigDecimal.ZERO, minutosEstadia);
                         printer.imprimir();
                     } catch (Exception printEx) {
-                        System.err.println("⚠ Error al imprimir el ticket de salida (Mensualidad): " + printEx.getMessage());
+                        LOG.warn("Error al imprimir el ticket de salida (Mensualidad): {}", printEx.getMessage());
                         // NOTA: No hacemos rollback aquí, el error de impresión es secundario al éxito DB.
                     }
                     return BigDecimal.ZERO; // 💡 Retorna 0.00
                 } else {
-                    // Si falla la salida (algo grave), forzamos rollback y relanzamos
-                    throw new SQLException("Error grave al registrar la salida de la mensualidad.");
+                    // El ticket ya no está abierto en la base de datos (lo cerró otro carril)
+                    ticketsAbiertos.quitar(ticket);
+                    throw conflicto(ticket); // Forzará Rollback
                 }
             }
 
             // ✅ CASO 2: Es invitado → calcular cobro
 
-            // Obtener la tarifa activa
-            Tarifa tarifa = tarifaDAO.findTarifaActiva();
-            if (tarifa == null) {
+            // Obtener la tarifa activa (desde memoria; se recarga por LISTEN/NOTIFY o TTL)
+            CalculadoraTarifa calculadora = tarifaCache.getCalculadoraActiva();
+            if (calculadora == null) {
                 throw new SQLException("No hay tarifa activa configurada en el sistema");
             }
 
-            // Lógica de cálculo de tarifa (Tiempo de gracia, horas, fracción, tope diario)
-            int tiempoGracia = tarifa.getTiempoGraciaMinutos();
-            monto = BigDecimal.ZERO; // Reiniciamos monto para cálculo
+            // Cálculo de tarifa (Tiempo de gracia, horas, fracción, tope diario) en centavos
+            int tiempoGracia = calculadora.getTiempoGraciaMinutos();
+            long montoCentavos = calculadora.calcularCentavos(ticket.getFechaIngreso(), minutosEstadia);
+            monto = CalculadoraTarifa.aBigDecimal(montoCentavos);
 
             if (minutosEstadia > tiempoGracia) {
-                long minutosCobrables = minutosEstadia - tiempoGracia;
-                long horasCompletas = minutosCobrables / 60;
-                long minutosRestantes = minutosCobrables % 60;
-
-                if (horasCompletas > 0) {
-                    monto = tarifa.getValorBaseHora().multiply(BigDecimal.valueOf(horasCompletas));
-                }
-                if (minutosRestantes > 0) {
-                    monto = monto.add(tarifa.getValorFraccion());
-                }
-                if (tarifa.getTopeDiario() != null && monto.compareTo(tarifa.getTopeDiario()) > 0) {
-                    monto = tarifa.getTopeDiario();
-                }
-                FormatMontoUtil formatMonto = new FormatMontoUtil();
-                System.out.println(String.format("💵 Monto total a cobrar: $" + formatMonto.formatMonto(monto)));
+                LOG.info("Monto total a cobrar: {}", FormatMontoUtil.formatear(monto));
             } else {
-                System.out.println("✓ Dentro del tiempo de gracia (" + tiempoGracia + " min) - Sin cobro");
-                monto = BigDecimal.ZERO; // Asegura que el monto sea 0 si está en tiempo de gracia
+                LOG.info("Dentro del tiempo de gracia ({} min) - Sin cobro", tiempoGracia);
             }
 
 
-            // 3. REGISTRO DE SALIDA (Escritura 1/3)
-            boolean salidaRegistrada = ticketDAO.registrarSalida(
+            // 3. REGISTRO DE SALIDA (Escritura 1/3, solo si sigue abierto)
+            boolean salidaRegistrada = salidaDAO.registrarSalida(
                     ticket.getId(),
                     operadorSalidaId,
                     (int) minutosEstadia,
@@ -255,7 +654,8 @@ public class TicketService {
             );
 
             if (!salidaRegistrada) {
-                throw new SQLException("Error al registrar la fecha y operador de salida."); // Forzará Rollback
+                ticketsAbiertos.quitar(ticket); // Ya no está abierto en la base de datos
+                throw conflicto(ticket); // Forzará Rollback
             }
 
 
@@ -273,7 +673,7 @@ public class TicketService {
                 if (pagoCreado == null) {
                     throw new SQLException("Error al registrar el pago en la tabla 'pagos'. Se requiere ROLLBACK.");
                 }
-                System.out.println("✓ Pago registrado: $" + monto + " (" + metodoPagoFinal + ")");
+                LOG.info("Pago registrado: ${} ({})", monto, metodoPagoFinal);
             }
 
 
@@ -285,6 +685,8 @@ public class TicketService {
             }
 
             conn.commit(); // 6. COMMIT para Invitado (Éxito total)
+            M_DAO_SALIDA_TX.registrar(inicioDao, true);
+            ticketsAbiertos.quitar(ticket);
 
             // PUNTO DE IMPRESIÓN 2: Después de COMMIT de Invitado
             try {
@@ -292,44 +694,77 @@ public class TicketService {
                 ClosePrinterService printer = new ClosePrinterService(ticket, operadorSalidaId, metodoPagoFinal, monto, minutosEstadia);
                 printer.imprimir();
             } catch (Exception printEx) {
-                System.err.println("⚠ Error al imprimir el ticket de salida (Cobro): " + printEx.getMessage());
+                LOG.warn("Error al imprimir el ticket de salida (Cobro): {}", printEx.getMessage());
                 // NOTA: El error de impresión es secundario. El registro DB fue exitoso.
             }
 
-            System.out.println("✓ Salida registrada exitosamente - Placa: " + placa + " - Monto: $" + monto);
+            LOG.info("Salida registrada exitosamente - Placa: {} - Monto: ${}", ticket.getPlaca(), monto);
             return monto; // 💡 Retorna el monto calculado
 
         } catch (SQLException e) {
             // 7. ROLLBACK en caso de cualquier error
-            System.err.println("⚠ Error en transacción 'registrarSalida'. Ejecutando Rollback: " + e.getMessage());
+            LOG.warn("Error en transacción 'registrarSalida'. Ejecutando Rollback: {}", e.getMessage());
+            M_DAO_SALIDA_TX.registrar(inicioDao, false);
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rollbackEx) {
-                    System.err.println("Fallo al hacer rollback: " + rollbackEx.getMessage());
+                    LOG.error("Fallo al hacer rollback: {}", rollbackEx.getMessage());
                 }
             }
             // 8. Relanzar la excepción para que el Controller la maneje
             throw e;
 
         } finally {
-            // 9. CERRAR CONEXIÓN SIEMPRE
+            // 9. DEVOLVER CONEXIÓN AL POOL SIEMPRE
             if (conn != null) {
                 try {
                     conn.setAutoCommit(true);
                     conn.close();
                 } catch (SQLException closeEx) {
-                    System.err.println("Fallo al cerrar la conexión: " + closeEx.getMessage());
+                    LOG.error("Fallo al cerrar la conexión: {}", closeEx.getMessage());
                 }
             }
         }
     }
 
 
+    /**
+     * Otro carril cerró el ticket antes: el cierre condicional no escribió nada.
+     */
+    private ConflictoCierreException conflicto(Ticket ticket) {
+        LOG.warn("Cierre concurrente del ticket {} ({}): lo cerró otra operación", ticket.getNumeroFolio(), ticket.getPlaca());
+        return new ConflictoCierreException(ticket.getId(), ticket.getNumeroFolio());
+    }
+
     /**
      * Registra un pago manual (usado por operador desde el panel).
      */
     public boolean registrarPagoManual(String placa, BigDecimal monto, String metodoPago, int operadorId) throws SQLException {
+        return registrarPagoManual(placa, monto, metodoPago, operadorId, null);
+    }
+
+    /**
+     * Igual que {@link #registrarPagoManual(String, BigDecimal, String, int)}, pero un
+     * reintento con la misma clave no crea un segundo pago.
+     *
+     * @param claveOperacion clave generada por la interfaz para esta operación (ver Idempotencia)
+     */
+    public boolean registrarPagoManual(String placa, BigDecimal monto, String metodoPago, int operadorId,
+                                       String claveOperacion) throws SQLException {
+        long inicio = M_PAGO_MANUAL.iniciar();
+        boolean exito = false;
+        try {
+            boolean resultado = ConnectionPool.conPlazo(plazoMillis, () -> idempotencia.ejecutar(claveOperacion, "pago_manual",
+                    () -> procesarPagoManual(placa, monto, metodoPago, operadorId), COMO_BOOLEANO));
+            exito = true;
+            return resultado;
+        } finally {
+            M_PAGO_MANUAL.registrar(inicio, exito);
+        }
+    }
+
+    private boolean procesarPagoManual(String placa, BigDecimal monto, String metodoPago, int operadorId) throws SQLException {
         // Validar entrada
         if (placa == null || placa.trim().isEmpty()) {
             throw new SQLException("La placa no puede estar vacía");
@@ -340,8 +775,14 @@ public class TicketService {
         }
 
         placa = placa.trim().toUpperCase();
+        String metodoPagoFinal = validarMetodoPago(metodoPago);
+
+        // El pago manual no pasa por el diario local: sin conexión se rechaza de inmediato
+        if (diario.isSinConexion()) {
+            throw new SQLTransientConnectionException("Base de datos no disponible: el pago manual no se puede registrar", "08001");
+        }
 
-        Ticket ticket = ticketDAO.findTicketAbiertoByPlaca(placa);
+        Ticket ticket = ticketsAbiertos.buscar(placa);
         if (ticket == null) {
             throw new SQLException("No se encontró un ticket abierto para la placa: " + placa);
         }
@@ -350,28 +791,24 @@ public class TicketService {
             throw new SQLException("El vehículo con mensualidad no requiere pago");
         }
 
-        // Registrar pago manual
-        Pago pago = new Pago();
-        pago.setTicketId(ticket.getId());
-        pago.setMonto(monto);
-        pago.setMetodoPago(metodoPago);
-        pago.setOperadorId(operadorId);
-        pago.setFechaPago(LocalDateTime.now());
-        pago.setObservaciones("Pago manual registrado por operador");
-
-        Pago pagoCreado = pagoDAO.create(pago);
-
-        if (pagoCreado == null) {
-            throw new SQLException("Error al registrar el pago manual");
+        // Pago y ticket en una sola sentencia, solo si el ticket sigue abierto
+        long inicioPago = M_DAO_PAGO_MANUAL.iniciar();
+        boolean registrado = false;
+        try {
+            registrado = pagoManualDAO.registrar(ticket.getId(), monto, metodoPagoFinal, operadorId,
+                    LocalDateTime.now(), "Pago manual registrado por operador");
+        } finally {
+            M_DAO_PAGO_MANUAL.registrar(inicioPago, registrado);
         }
 
-        // Marcar ticket como pagado
-        boolean actualizado = ticketDAO.registrarPago(ticket.getId(), monto);
-
-        if (actualizado) {
-            System.out.println("✓ Pago manual registrado: $" + monto);
+        if (!registrado) {
+            // Lo cerró otro carril: no se cobra un ticket cerrado
+            ticketsAbiertos.quitar(ticket);
+            throw new SQLException("El ticket de la placa " + placa + " ya no está abierto; pago no registrado");
         }
 
-        return actualizado;
+        cierreTurno.registrarPago(operadorId, metodoPagoFinal, monto);
+        LOG.info("Pago manual registrado: ${}", monto);
+        return true;
     }
 }
\ No newline at end of file
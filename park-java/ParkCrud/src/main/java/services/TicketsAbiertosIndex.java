@@ -0,0 +1,181 @@
+package services;
+
+import dao.TicketAbiertoDAO;
+import dao.TicketDAO;
+import models.Ticket;
+import util.Log;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Índice en memoria de los tickets abiertos, por placa normalizada y por folio
+ * (para la salida por escaneo del QR).
+ *
+ * Se reconstruye desde la base de datos al iniciar y se mantiene al confirmar cada
+ * ingreso y salida. La base de datos sigue siendo la fuente de verdad: las escrituras
+ * de salida verifican que el ticket siga abierto (WHERE fecha_salida IS NULL), y si la
+ * placa no está en el índice (p. ej. ingresó por otro equipo) se consulta la base de datos.
+ */
+public class TicketsAbiertosIndex {
+
+    private static final Log LOG = Log.de(TicketsAbiertosIndex.class);
+
+    private static volatile TicketsAbiertosIndex instance;
+
+    private final TicketAbiertoDAO ticketAbiertoDAO;
+    private final TicketDAO ticketDAO;
+    private final Map<String, Ticket> porPlaca = new ConcurrentHashMap<>();
+    private final Map<String, Ticket> porFolio = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private TicketsAbiertosIndex() {
+        this.ticketAbiertoDAO = new TicketAbiertoDAO();
+        this.ticketDAO = new TicketDAO();
+        try {
+            reconstruir();
+        } catch (SQLException e) {
+            LOG.warn("No se pudo cargar el índice de tickets abiertos: {}", e.getMessage());
+        }
+    }
+
+    public static TicketsAbiertosIndex getInstance() {
+        if (instance == null) {
+            synchronized (TicketsAbiertosIndex.class) {
+                if (instance == null) {
+                    instance = new TicketsAbiertosIndex();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Vuelve a cargar todos los tickets abiertos desde la base de datos.
+     */
+    public synchronized void reconstruir() throws SQLException {
+        List<Ticket> abiertos = ticketAbiertoDAO.findAbiertos();
+        porPlaca.clear();
+        porFolio.clear();
+        for (Ticket t : abiertos) {
+            porPlaca.put(t.getPlaca().toUpperCase(), t);
+            porFolio.put(t.getNumeroFolio(), t);
+        }
+        LOG.info("Índice de tickets abiertos cargado: {} tickets", abiertos.size());
+    }
+
+    /**
+     * Busca el ticket abierto de la placa (ya normalizada): primero en memoria y,
+     * si no está, en la base de datos.
+     */
+    public Ticket buscar(String placa) throws SQLException {
+        Ticket ticket = porPlaca.get(placa);
+        if (ticket != null) {
+            hits.increment();
+            return ticket;
+        }
+        misses.increment();
+        ticket = ticketDAO.findTicketAbiertoByPlaca(placa);
+        if (ticket != null) {
+            porPlaca.putIfAbsent(placa, ticket);
+        }
+        return ticket;
+    }
+
+    /**
+     * Ticket abierto de la placa según el índice, sin consultar la base de datos (para
+     * operar sin conexión).
+     */
+    public Ticket buscarEnMemoria(String placa) {
+        return porPlaca.get(placa);
+    }
+
+    /**
+     * Ticket abierto del folio según el índice, sin consultar la base de datos.
+     */
+    public Ticket buscarPorFolioEnMemoria(String numeroFolio) {
+        return porFolio.get(numeroFolio);
+    }
+
+    /**
+     * Busca el ticket abierto por folio: primero en memoria y, si no está, en la base de datos.
+     */
+    public Ticket buscarPorFolio(String numeroFolio) throws SQLException {
+        Ticket ticket = porFolio.get(numeroFolio);
+        if (ticket != null) {
+            hits.increment();
+            return ticket;
+        }
+        misses.increment();
+        ticket = ticketAbiertoDAO.findAbiertoByFolio(numeroFolio);
+        if (ticket != null) {
+            porFolio.putIfAbsent(numeroFolio, ticket);
+        }
+        return ticket;
+    }
+
+    /**
+     * Registra un ticket recién confirmado en la base de datos.
+     */
+    public void registrar(Ticket ticket) {
+        porPlaca.put(ticket.getPlaca().toUpperCase(), ticket);
+        porFolio.put(ticket.getNumeroFolio(), ticket);
+    }
+
+    /**
+     * Quita el ticket tras confirmar su salida, o cuando la base de datos indica que
+     * ya no está abierto. Solo lo quita si sigue siendo el mismo ticket (mismo id; la
+     * instancia puede venir de otra consulta).
+     */
+    public void quitar(Ticket ticket) {
+        int id = ticket.getId();
+        porPlaca.computeIfPresent(ticket.getPlaca().toUpperCase(), (k, t) -> t.getId() == id ? null : t);
+        porFolio.computeIfPresent(ticket.getNumeroFolio(), (k, t) -> t.getId() == id ? null : t);
+    }
+
+    /**
+     * Quita el ticket del folio (salidas pendientes en el diario local).
+     */
+    public void quitarPorFolio(String numeroFolio) {
+        Ticket ticket = porFolio.remove(numeroFolio);
+        if (ticket != null) {
+            porPlaca.remove(ticket.getPlaca().toUpperCase(), ticket);
+        }
+    }
+
+    /**
+     * Indica si la placa tiene un ticket abierto que solo existe en el diario local
+     * (id 0: su ingreso aún no llega a la base de datos).
+     */
+    public boolean tieneSinSincronizar(String placa) {
+        Ticket ticket = porPlaca.get(placa);
+        return ticket != null && ticket.getId() == 0;
+    }
+
+    /**
+     * Completa el id del ticket cuando su ingreso del diario local llega a la base de datos.
+     */
+    public void confirmarSincronizado(String numeroFolio, int id) {
+        Ticket ticket = porFolio.get(numeroFolio);
+        if (ticket != null && ticket.getId() == 0) {
+            ticket.setId(id);
+        }
+    }
+
+    public int getTotalAbiertos() {
+        return porPlaca.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,176 @@
+package util;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import config.PropertiesConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Comandos ESC/POS para imprimir el código QR del ticket.
+ *
+ * Modos (impresion.qr.modo):
+ * <ul>
+ *   <li>nativo (por defecto): comandos GS ( k; la impresora genera el QR, el costo aquí es
+ *       solo copiar el contenido.</li>
+ *   <li>raster: imagen GS v 0 generada con ZXing, para impresoras sin soporte de QR.</li>
+ *   <li>texto: imprime el contenido como texto (comportamiento anterior).</li>
+ * </ul>
+ * Los comandos generados se guardan por folio en un cache LRU (impresion.qr.cache_max),
+ * así una reimpresión no vuelve a codificar el QR.
+ */
+public final class CodigoQrEscPos {
+
+    private static final Log LOG = Log.de(CodigoQrEscPos.class);
+
+    private static final String MODO_NATIVO = "nativo";
+    private static final String MODO_RASTER = "raster";
+    private static final String MODO_TEXTO = "texto";
+
+    private static final byte GS = 0x1D;
+    private static final byte CN = 49;          // cn = 49: símbolo QR
+    private static final byte MODELO_2 = 50;
+    private static final byte CORRECCION_M = 49; // nivel M (~15% de recuperación)
+    private static final byte[] SALTO = {'\n'};
+
+    private static final String MODO;
+    private static final int TAMANO_MODULO;
+    private static final Map<String, Entrada> CACHE;
+
+    static {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        String modo = props.getProperty("impresion.qr.modo");
+        MODO = modo != null && !modo.trim().isEmpty() ? modo.trim().toLowerCase() : MODO_NATIVO;
+        TAMANO_MODULO = Math.max(1, Math.min(16, props.getIntProperty("impresion.qr.tamano_modulo", 6)));
+        final int maximo = Math.max(1, props.getIntProperty("impresion.qr.cache_max", 256));
+        CACHE = new LinkedHashMap<String, Entrada>(maximo * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+                return size() > maximo;
+            }
+        };
+    }
+
+    private CodigoQrEscPos() {
+    }
+
+    /**
+     * Comandos para imprimir el QR del folio (terminan en salto de línea).
+     */
+    public static byte[] comandos(String folio, String contenido) {
+        if (contenido == null) {
+            return new byte[0];
+        }
+        String clave = folio != null ? folio : contenido;
+        synchronized (CACHE) {
+            Entrada e = CACHE.get(clave);
+            if (e != null && e.contenido.equals(contenido)) {
+                return e.comandos;
+            }
+        }
+
+        byte[] comandos = generar(contenido);
+        synchronized (CACHE) {
+            CACHE.put(clave, new Entrada(contenido, comandos));
+        }
+        return comandos;
+    }
+
+    private static byte[] generar(String contenido) {
+        if (MODO_RASTER.equals(MODO)) {
+            try {
+                return raster(contenido);
+            } catch (WriterException e) {
+                LOG.warn("No se pudo generar la imagen QR, se imprime como texto: {}", e.getMessage());
+                return texto(contenido);
+            }
+        }
+        if (MODO_TEXTO.equals(MODO)) {
+            return texto(contenido);
+        }
+        return nativo(contenido);
+    }
+
+    /**
+     * GS ( k: modelo 2, tamaño de módulo, corrección M, guardar datos e imprimir.
+     */
+    static byte[] nativo(String contenido) {
+        byte[] datos = contenido.getBytes(StandardCharsets.UTF_8);
+        int largo = datos.length + 3;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(datos.length + 32);
+        out.write(new byte[]{GS, '(', 'k', 4, 0, CN, 65, MODELO_2, 0}, 0, 9);
+        out.write(new byte[]{GS, '(', 'k', 3, 0, CN, 67, (byte) TAMANO_MODULO}, 0, 8);
+        out.write(new byte[]{GS, '(', 'k', 3, 0, CN, 69, CORRECCION_M}, 0, 8);
+        out.write(new byte[]{GS, '(', 'k', (byte) (largo & 0xFF), (byte) (largo >> 8), CN, 80, 48}, 0, 8);
+        out.write(datos, 0, datos.length);
+        out.write(new byte[]{GS, '(', 'k', 3, 0, CN, 81, 48}, 0, 8);
+        out.write(SALTO, 0, 1);
+        return out.toByteArray();
+    }
+
+    /**
+     * Imagen de bits GS v 0 con cada módulo ampliado a TAMANO_MODULO puntos.
+     */
+    static byte[] raster(String contenido) throws WriterException {
+        Map<EncodeHintType, Object> opciones = new EnumMap<>(EncodeHintType.class);
+        opciones.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
+        opciones.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        opciones.put(EncodeHintType.MARGIN, 2);
+        // Tamaño 0: un punto por módulo, la ampliación se hace aquí
+        BitMatrix matriz = new QRCodeWriter().encode(contenido, BarcodeFormat.QR_CODE, 0, 0, opciones);
+
+        int ancho = matriz.getWidth() * TAMANO_MODULO;
+        int alto = matriz.getHeight() * TAMANO_MODULO;
+        int bytesPorFila = (ancho + 7) / 8;
+
+        byte[] out = new byte[8 + bytesPorFila * alto + SALTO.length];
+        out[0] = GS;
+        out[1] = 'v';
+        out[2] = '0';
+        out[3] = 0;
+        out[4] = (byte) (bytesPorFila & 0xFF);
+        out[5] = (byte) (bytesPorFila >> 8);
+        out[6] = (byte) (alto & 0xFF);
+        out[7] = (byte) (alto >> 8);
+
+        int pos = 8;
+        for (int y = 0; y < matriz.getHeight(); y++) {
+            int inicioFila = pos;
+            for (int x = 0; x < ancho; x++) {
+                if (matriz.get(x / TAMANO_MODULO, y)) {
+                    out[inicioFila + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                }
+            }
+            pos += bytesPorFila;
+            // Las filas restantes del módulo son copia de la primera
+            for (int r = 1; r < TAMANO_MODULO; r++) {
+                System.arraycopy(out, inicioFila, out, pos, bytesPorFila);
+                pos += bytesPorFila;
+            }
+        }
+        out[pos] = '\n';
+        return out;
+    }
+
+    private static byte[] texto(String contenido) {
+        return ("QR: " + contenido + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Entrada {
+        private final String contenido;
+        private final byte[] comandos;
+
+        private Entrada(String contenido, byte[] comandos) {
+            this.contenido = contenido;
+            this.comandos = comandos;
+        }
+    }
+}
@@ -6,9 +6,18 @@ import java.util.Locale;
 
 public class FormatMontoUtil {
 
-    public String formatMonto(BigDecimal monto) {
+    // NumberFormat no es seguro entre hilos: una instancia reutilizable por hilo
+    private static final ThreadLocal<NumberFormat> FORMATO = ThreadLocal.withInitial(() -> {
         NumberFormat nf = NumberFormat.getCurrencyInstance(Locale.US);
         nf.setMinimumFractionDigits(2);
-        return nf.format(monto);
+        return nf;
+    });
+
+    public String formatMonto(BigDecimal monto) {
+        return formatear(monto);
+    }
+
+    public static String formatear(BigDecimal monto) {
+        return FORMATO.get().format(monto);
     }
 }
@@ -0,0 +1,397 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Log estructurado y asíncrono: una línea JSON por evento.
+ *
+ * <pre>
+ * {"ts":"2025-10-18T14:03:11.482Z","nivel":"INFO","hilo":"crudpark-carril-entrada-1",
+ *  "logger":"TicketService","msg":"Ingreso registrado: ABC123 - Invitado"}
+ * </pre>
+ *
+ * El hilo que registra solo compara el nivel y deja el evento en una cola circular
+ * (ArrayBlockingQueue); un hilo propio arma el JSON y escribe en lote, con un solo flush
+ * cuando la cola queda vacía. El mensaje se construye de forma diferida:
+ * <ul>
+ *   <li>con marcadores {@code {}}: {@code LOG.info("Pago registrado: {} ({})", monto, metodo)};
+ *       los argumentos se formatean en el hilo del log, así que deben ser valores
+ *       inmutables (String, números, fechas).</li>
+ *   <li>con un Supplier, que solo se evalúa si el nivel está habilitado.</li>
+ * </ul>
+ * Un nivel deshabilitado no cuesta más que la comparación.
+ *
+ * Si la cola (8192 eventos) se llena, los eventos DEBUG/INFO se descartan (y se cuentan
+ * en la siguiente escritura); WARN y ERROR esperan lugar. Nivel mínimo: log.nivel (INFO
+ * por defecto). Destino: log.archivo, o la salida estándar si no está configurado.
+ */
+public final class Log {
+
+    public enum Nivel { DEBUG, INFO, WARN, ERROR }
+
+    private static final int CAPACIDAD = 8192;
+    private static final BlockingQueue<Evento> COLA = new ArrayBlockingQueue<>(CAPACIDAD);
+    private static final LongAdder DESCARTADOS = new LongAdder();
+    private static final Object SALIDA_LOCK = new Object();
+
+    private static volatile int nivelMinimo = Nivel.INFO.ordinal();
+    private static Writer salida = salidaEstandar();
+    // Archivo de la salida actual; null = salida estándar
+    private static String archivoActual;
+
+    static {
+        Thread hilo = new Thread(Log::escribir, "crudpark-log");
+        hilo.setDaemon(true);
+        hilo.start();
+        // Al terminar la aplicación se escribe lo que quede en la cola
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::vaciar, "crudpark-log-cierre"));
+    }
+
+    private final String nombre;
+
+    private Log(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public static Log de(Class<?> clase) {
+        return new Log(clase.getSimpleName());
+    }
+
+    /**
+     * Aplica la configuración (la llama PropertiesConfig al cargar el archivo y al
+     * recargarlo). Si el archivo no cambia solo se actualiza el nivel.
+     *
+     * @param nivel   DEBUG, INFO, WARN o ERROR (null o inválido = INFO)
+     * @param archivo ruta del archivo de log (null o vacío = salida estándar)
+     */
+    public static void configurar(String nivel, String archivo) {
+        int minimo = Nivel.INFO.ordinal();
+        if (nivel != null && !nivel.trim().isEmpty()) {
+            try {
+                minimo = Nivel.valueOf(nivel.trim().toUpperCase(Locale.ROOT)).ordinal();
+            } catch (IllegalArgumentException e) {
+                de(Log.class).warn("Nivel de log inválido: {}. Usando INFO", nivel);
+            }
+        }
+        nivelMinimo = minimo;
+
+        String destino = archivo != null && !archivo.trim().isEmpty() ? archivo.trim() : null;
+        synchronized (SALIDA_LOCK) {
+            if (destino == null ? archivoActual == null : destino.equals(archivoActual)) {
+                return;
+            }
+        }
+        Writer nueva;
+        if (destino != null) {
+            try {
+                nueva = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(destino, true), StandardCharsets.UTF_8), 1 << 16);
+            } catch (IOException e) {
+                de(Log.class).error("No se pudo abrir el archivo de log " + archivo + ", se usa la salida estándar", e);
+                return;
+            }
+        } else {
+            nueva = salidaEstandar();
+        }
+        synchronized (SALIDA_LOCK) {
+            try {
+                // La salida estándar solo se vacía: cerrarla cerraría el descriptor del proceso
+                if (archivoActual != null) {
+                    salida.close();
+                } else {
+                    salida.flush();
+                }
+            } catch (IOException ignored) {
+                // La salida anterior ya no se usa
+            }
+            salida = nueva;
+            archivoActual = destino;
+        }
+    }
+
+    public boolean isHabilitado(Nivel nivel) {
+        return nivel.ordinal() >= nivelMinimo;
+    }
+
+    public void debug(String mensaje, Object... args) {
+        if (Nivel.DEBUG.ordinal() >= nivelMinimo) {
+            publicar(Nivel.DEBUG, mensaje, args, null);
+        }
+    }
+
+    public void debug(Supplier<String> mensaje) {
+        if (Nivel.DEBUG.ordinal() >= nivelMinimo) {
+            publicar(Nivel.DEBUG, mensaje.get(), null, null);
+        }
+    }
+
+    public void info(String mensaje) {
+        if (Nivel.INFO.ordinal() >= nivelMinimo) {
+            publicar(Nivel.INFO, mensaje, null, null);
+        }
+    }
+
+    public void info(String mensaje, Object arg) {
+        if (Nivel.INFO.ordinal() >= nivelMinimo) {
+            publicar(Nivel.INFO, mensaje, new Object[]{arg}, null);
+        }
+    }
+
+    public void info(String mensaje, Object arg1, Object arg2) {
+        if (Nivel.INFO.ordinal() >= nivelMinimo) {
+            publicar(Nivel.INFO, mensaje, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    public void info(String mensaje, Object... args) {
+        if (Nivel.INFO.ordinal() >= nivelMinimo) {
+            publicar(Nivel.INFO, mensaje, args, null);
+        }
+    }
+
+    public void info(Supplier<String> mensaje) {
+        if (Nivel.INFO.ordinal() >= nivelMinimo) {
+            publicar(Nivel.INFO, mensaje.get(), null, null);
+        }
+    }
+
+    public void warn(String mensaje) {
+        if (Nivel.WARN.ordinal() >= nivelMinimo) {
+            publicar(Nivel.WARN, mensaje, null, null);
+        }
+    }
+
+    public void warn(String mensaje, Object... args) {
+        if (Nivel.WARN.ordinal() >= nivelMinimo) {
+            publicar(Nivel.WARN, mensaje, args, null);
+        }
+    }
+
+    public void warn(String mensaje, Throwable error) {
+        if (Nivel.WARN.ordinal() >= nivelMinimo) {
+            publicar(Nivel.WARN, mensaje, null, error);
+        }
+    }
+
+    public void error(String mensaje) {
+        if (Nivel.ERROR.ordinal() >= nivelMinimo) {
+            publicar(Nivel.ERROR, mensaje, null, null);
+        }
+    }
+
+    public void error(String mensaje, Object... args) {
+        if (Nivel.ERROR.ordinal() >= nivelMinimo) {
+            publicar(Nivel.ERROR, mensaje, args, null);
+        }
+    }
+
+    public void error(String mensaje, Throwable error) {
+        if (Nivel.ERROR.ordinal() >= nivelMinimo) {
+            publicar(Nivel.ERROR, mensaje, null, error);
+        }
+    }
+
+    private void publicar(Nivel nivel, String mensaje, Object[] args, Throwable error) {
+        Evento e = new Evento(System.currentTimeMillis(), nivel, Thread.currentThread().getName(),
+                nombre, mensaje, args, error);
+        if (COLA.offer(e)) {
+            return;
+        }
+        if (nivel.ordinal() < Nivel.WARN.ordinal()) {
+            DESCARTADOS.increment();
+            return;
+        }
+        try {
+            COLA.put(e);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            DESCARTADOS.increment();
+        }
+    }
+
+    /**
+     * Eventos descartados porque la cola estaba llena.
+     */
+    public static long getDescartados() {
+        return DESCARTADOS.sum();
+    }
+
+    // Hilo del log
+
+    private static void escribir() {
+        List<Evento> lote = new ArrayList<>(256);
+        StringBuilder sb = new StringBuilder(512);
+        long descartadosInformados = 0;
+        while (true) {
+            try {
+                Evento primero = COLA.poll(1, TimeUnit.SECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                lote.add(primero);
+                COLA.drainTo(lote, 255);
+
+                long descartados = DESCARTADOS.sum();
+                synchronized (SALIDA_LOCK) {
+                    if (descartados != descartadosInformados) {
+                        sb.setLength(0);
+                        formatear(sb, new Evento(System.currentTimeMillis(), Nivel.WARN, "crudpark-log", "Log",
+                                "Eventos de log descartados por cola llena: {}", new Object[]{descartados - descartadosInformados}, null));
+                        salida.write(sb.toString());
+                        descartadosInformados = descartados;
+                    }
+                    for (Evento e : lote) {
+                        sb.setLength(0);
+                        formatear(sb, e);
+                        salida.write(sb.toString());
+                    }
+                    if (COLA.isEmpty()) {
+                        salida.flush();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                // Último recurso: el log no puede escribir en su destino
+                System.err.println("Error al escribir el log: " + e);
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    private static void vaciar() {
+        List<Evento> pendientes = new ArrayList<>();
+        COLA.drainTo(pendientes);
+        StringBuilder sb = new StringBuilder(512);
+        synchronized (SALIDA_LOCK) {
+            try {
+                for (Evento e : pendientes) {
+                    sb.setLength(0);
+                    formatear(sb, e);
+                    salida.write(sb.toString());
+                }
+                salida.flush();
+            } catch (IOException ignored) {
+                // La aplicación ya está terminando
+            }
+        }
+    }
+
+    private static void formatear(StringBuilder sb, Evento e) {
+        sb.append("{\"ts\":\"").append(Instant.ofEpochMilli(e.marca)).append('"');
+        sb.append(",\"nivel\":\"").append(e.nivel.name()).append('"');
+        sb.append(",\"hilo\":");
+        json(sb, e.hilo);
+        sb.append(",\"logger\":");
+        json(sb, e.logger);
+        sb.append(",\"msg\":");
+        json(sb, e.args == null ? e.mensaje : aplicar(e.mensaje, e.args));
+        if (e.error != null) {
+            sb.append(",\"error\":");
+            json(sb, e.error.toString());
+            StringWriter traza = new StringWriter();
+            e.error.printStackTrace(new PrintWriter(traza));
+            sb.append(",\"traza\":");
+            json(sb, traza.toString());
+        }
+        sb.append("}\n");
+    }
+
+    /**
+     * Reemplaza cada {} por el siguiente argumento.
+     */
+    private static String aplicar(String plantilla, Object[] args) {
+        if (plantilla == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(plantilla.length() + 16 * args.length);
+        int arg = 0;
+        int desde = 0;
+        int i;
+        while ((i = plantilla.indexOf("{}", desde)) >= 0 && arg < args.length) {
+            sb.append(plantilla, desde, i).append(args[arg++]);
+            desde = i + 2;
+        }
+        return sb.append(plantilla, desde, plantilla.length()).toString();
+    }
+
+    private static void json(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static Writer salidaEstandar() {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static final class Evento {
+        private final long marca;
+        private final Nivel nivel;
+        private final String hilo;
+        private final String logger;
+        private final String mensaje;
+        private final Object[] args;
+        private final Throwable error;
+
+        private Evento(long marca, Nivel nivel, String hilo, String logger, String mensaje,
+                       Object[] args, Throwable error) {
+            this.marca = marca;
+            this.nivel = nivel;
+            this.hilo = hilo;
+            this.logger = logger;
+            this.mensaje = mensaje;
+            this.args = args;
+            this.error = error;
+        }
+    }
+}
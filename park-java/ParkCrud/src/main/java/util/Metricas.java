@@ -0,0 +1,386 @@
+package util;
+
+import com.sun.net.httpserver.HttpServer;
+import config.PropertiesConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Métricas de latencia y contadores de las operaciones de portería.
+ *
+ * Cada {@link Temporizador} guarda un histograma log-lineal (estilo HdrHistogram: 16
+ * subdivisiones por potencia de dos, ~6% de error relativo) en microsegundos, más la suma,
+ * el total y los errores. Se exportan en formato de texto de Prometheus por HTTP local
+ * (metricas.http.puerto, en /metrics) y periódicamente a un archivo rotativo
+ * (metricas.archivo.*).
+ *
+ * Con metricas.habilitado=false (por defecto) {@link Temporizador#iniciar()} y
+ * {@link Temporizador#registrar(long, boolean)} no hacen nada: HABILITADO es una constante
+ * y el JIT elimina la rama, así que el costo es prácticamente cero.
+ */
+public final class Metricas {
+
+    private static final Log LOG = Log.de(Metricas.class);
+
+    public static final boolean HABILITADO =
+            Boolean.parseBoolean(PropertiesConfig.getInstance().getProperty("metricas.habilitado"));
+
+    private static final double[] CUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Familias en el orden en que se registran (para una salida estable)
+    private static final Map<String, Familia> FAMILIAS = new LinkedHashMap<>();
+    private static final Map<String, Indicador> INDICADORES = new LinkedHashMap<>();
+
+    static {
+        if (HABILITADO) {
+            iniciarExportadores();
+        }
+    }
+
+    private Metricas() {
+    }
+
+    /**
+     * Obtiene (o crea) el temporizador de una familia y etiqueta.
+     *
+     * @param familia  prefijo de la métrica, p. ej. "crudpark_operacion"
+     * @param ayuda    descripción para # HELP
+     * @param etiqueta nombre de la etiqueta, p. ej. "operacion"
+     * @param valor    valor de la etiqueta, p. ej. "registrarIngreso"
+     */
+    public static Temporizador temporizador(String familia, String ayuda, String etiqueta, String valor) {
+        synchronized (FAMILIAS) {
+            Familia f = FAMILIAS.computeIfAbsent(familia, n -> new Familia(n, ayuda, etiqueta));
+            for (Temporizador t : f.temporizadores) {
+                if (t.valor.equals(valor)) {
+                    return t;
+                }
+            }
+            Temporizador t = new Temporizador(valor);
+            f.temporizadores.add(t);
+            return t;
+        }
+    }
+
+    /**
+     * Registra un valor instantáneo (p. ej. profundidad de una cola) que se lee al exportar.
+     * Sin efecto si las métricas están deshabilitadas.
+     */
+    public static void indicador(String nombre, String ayuda, LongSupplier valor) {
+        if (!HABILITADO) {
+            return;
+        }
+        synchronized (FAMILIAS) {
+            INDICADORES.put(nombre, new Indicador(ayuda, valor));
+        }
+    }
+
+    /**
+     * Todas las métricas en formato de texto de Prometheus (versión 0.0.4).
+     */
+    public static String exportar() {
+        StringBuilder sb = new StringBuilder(4096);
+        synchronized (FAMILIAS) {
+            for (Familia f : FAMILIAS.values()) {
+                f.exportar(sb);
+            }
+            for (Map.Entry<String, Indicador> e : INDICADORES.entrySet()) {
+                sb.append("# HELP ").append(e.getKey()).append(' ').append(e.getValue().ayuda).append('\n');
+                sb.append("# TYPE ").append(e.getKey()).append(" gauge\n");
+                sb.append(e.getKey()).append(' ').append(e.getValue().valor.getAsLong()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Latencia, total y errores de una operación.
+     */
+    public static final class Temporizador {
+        private final String valor;
+        private final Histograma histograma = new Histograma();
+        private final LongAdder errores = new LongAdder();
+
+        private Temporizador(String valor) {
+            this.valor = valor;
+        }
+
+        /**
+         * @return marca de inicio para {@link #registrar(long, boolean)} (0 si está deshabilitado)
+         */
+        public long iniciar() {
+            return HABILITADO ? System.nanoTime() : 0L;
+        }
+
+        public void registrar(long inicio, boolean exito) {
+            if (!HABILITADO) {
+                return;
+            }
+            histograma.registrar(System.nanoTime() - inicio);
+            if (!exito) {
+                errores.increment();
+            }
+        }
+    }
+
+    /**
+     * Histograma log-lineal concurrente. Los valores menores a 32 µs tienen su propio
+     * casillero; por encima, cada potencia de dos se divide en 16 casilleros.
+     *
+     * Registrar no depende de metricas.habilitado: los benchmarks lo usan directamente
+     * para sus percentiles (ver {@link #percentil(double)}).
+     */
+    public static final class Histograma {
+        private static final int SUB = 16;
+        private static final int LINEAL = 2 * SUB;
+        // Hasta 2^36 µs (~19 horas); lo que exceda cae en el último casillero
+        private static final int CASILLEROS = LINEAL + 31 * SUB;
+
+        private final AtomicLongArray conteos = new AtomicLongArray(CASILLEROS);
+        private final LongAdder sumaNanos = new LongAdder();
+        private final AtomicLong maximoMicros = new AtomicLong();
+
+        public void registrar(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            conteos.incrementAndGet(indice(micros));
+            sumaNanos.add(Math.max(0, nanos));
+            long max;
+            while (micros > (max = maximoMicros.get())) {
+                if (maximoMicros.compareAndSet(max, micros)) {
+                    break;
+                }
+            }
+        }
+
+        public long getTotal() {
+            long total = 0;
+            for (int i = 0; i < CASILLEROS; i++) {
+                total += conteos.get(i);
+            }
+            return total;
+        }
+
+        /**
+         * Mayor valor registrado, en microsegundos.
+         */
+        public long getMaximo() {
+            return maximoMicros.get();
+        }
+
+        /**
+         * @param q percentil entre 0 y 1 (0.999 = p999)
+         * @return techo del casillero que contiene el percentil (sin superar el máximo), en µs
+         */
+        public long percentil(double q) {
+            long[] copia = instantanea();
+            long total = 0;
+            for (long c : copia) {
+                total += c;
+            }
+            return Math.min(percentil(copia, total, q), getMaximo());
+        }
+
+        static int indice(long micros) {
+            if (micros < LINEAL) {
+                return (int) micros;
+            }
+            int desplazamiento = 63 - Long.numberOfLeadingZeros(micros) - 4;
+            int sub = (int) (micros >>> desplazamiento) - SUB;
+            return Math.min(CASILLEROS - 1, LINEAL + (desplazamiento - 1) * SUB + sub);
+        }
+
+        /**
+         * Mayor valor (µs) que cae en el casillero.
+         */
+        static long techo(int indice) {
+            if (indice < LINEAL) {
+                return indice;
+            }
+            int j = indice - LINEAL;
+            int desplazamiento = j / SUB + 1;
+            long sub = j % SUB + SUB;
+            return ((sub + 1) << desplazamiento) - 1;
+        }
+
+        /**
+         * Copia de los conteos (no es atómica respecto de los registros concurrentes, lo que
+         * es aceptable para exportar).
+         */
+        long[] instantanea() {
+            long[] copia = new long[CASILLEROS];
+            for (int i = 0; i < CASILLEROS; i++) {
+                copia[i] = conteos.get(i);
+            }
+            return copia;
+        }
+
+        static long percentil(long[] conteos, long total, double q) {
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = Math.max(1, (long) Math.ceil(q * total));
+            long acumulado = 0;
+            for (int i = 0; i < conteos.length; i++) {
+                acumulado += conteos[i];
+                if (acumulado >= objetivo) {
+                    return techo(i);
+                }
+            }
+            return techo(conteos.length - 1);
+        }
+    }
+
+    private static final class Familia {
+        private final String nombre;
+        private final String ayuda;
+        private final String etiqueta;
+        private final List<Temporizador> temporizadores = new ArrayList<>();
+
+        private Familia(String nombre, String ayuda, String etiqueta) {
+            this.nombre = nombre;
+            this.ayuda = ayuda;
+            this.etiqueta = etiqueta;
+        }
+
+        private void exportar(StringBuilder sb) {
+            String segundos = nombre + "_segundos";
+            String errores = nombre + "_errores_total";
+
+            sb.append("# HELP ").append(segundos).append(' ').append(ayuda).append('\n');
+            sb.append("# TYPE ").append(segundos).append(" summary\n");
+            for (Temporizador t : temporizadores) {
+                long[] conteos = t.histograma.instantanea();
+                long total = 0;
+                for (long c : conteos) {
+                    total += c;
+                }
+                for (double q : CUANTILES) {
+                    sb.append(segundos).append('{').append(etiqueta).append("=\"").append(t.valor)
+                            .append("\",quantile=\"").append(q).append("\"} ")
+                            .append(Histograma.percentil(conteos, total, q) / 1e6).append('\n');
+                }
+                sb.append(segundos).append("_sum{").append(etiqueta).append("=\"").append(t.valor).append("\"} ")
+                        .append(t.histograma.sumaNanos.sum() / 1e9).append('\n');
+                sb.append(segundos).append("_count{").append(etiqueta).append("=\"").append(t.valor).append("\"} ")
+                        .append(total).append('\n');
+            }
+
+            sb.append("# HELP ").append(errores).append(" Operaciones terminadas con error\n");
+            sb.append("# TYPE ").append(errores).append(" counter\n");
+            for (Temporizador t : temporizadores) {
+                sb.append(errores).append('{').append(etiqueta).append("=\"").append(t.valor).append("\"} ")
+                        .append(t.errores.sum()).append('\n');
+            }
+        }
+    }
+
+    private static final class Indicador {
+        private final String ayuda;
+        private final LongSupplier valor;
+
+        private Indicador(String ayuda, LongSupplier valor) {
+            this.ayuda = ayuda;
+            this.valor = valor;
+        }
+    }
+
+    // Exportadores
+
+    private static void iniciarExportadores() {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+
+        int puerto = props.getIntProperty("metricas.http.puerto", 9464);
+        if (puerto > 0) {
+            try {
+                // Solo local: las métricas no se publican fuera del equipo
+                HttpServer servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", puerto), 0);
+                servidor.createContext("/metrics", intercambio -> {
+                    byte[] cuerpo = exportar().getBytes(StandardCharsets.UTF_8);
+                    intercambio.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    intercambio.sendResponseHeaders(200, cuerpo.length);
+                    try (OutputStream out = intercambio.getResponseBody()) {
+                        out.write(cuerpo);
+                    }
+                });
+                servidor.setExecutor(null);
+                // El hilo del servidor hereda el modo daemon de quien lo inicia: así no impide
+                // que la aplicación termine
+                Thread arranque = new Thread(servidor::start, "crudpark-metricas-http");
+                arranque.setDaemon(true);
+                arranque.start();
+                arranque.join();
+                LOG.info("Métricas disponibles en http://127.0.0.1:{}/metrics", puerto);
+            } catch (IOException e) {
+                LOG.warn("No se pudo abrir el puerto de métricas {}: {}", puerto, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        String archivo = props.getProperty("metricas.archivo");
+        if (archivo != null && !archivo.trim().isEmpty()) {
+            Path ruta = Paths.get(archivo.trim());
+            long intervaloMillis = Math.max(1, props.getIntProperty("metricas.archivo.intervalo_s", 60)) * 1000L;
+            long maxBytes = Math.max(1, props.getIntProperty("metricas.archivo.max_kb", 1024)) * 1024L;
+            int copias = Math.max(1, props.getIntProperty("metricas.archivo.copias", 5));
+
+            Thread hilo = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(intervaloMillis);
+                        escribirArchivo(ruta, maxBytes, copias);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException e) {
+                        LOG.warn("No se pudieron escribir las métricas en {}: {}", ruta, e.getMessage());
+                    }
+                }
+            }, "crudpark-metricas");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+    }
+
+    /**
+     * Agrega una instantánea al archivo; al superar maxBytes lo rota a .1, .2, ... .copias.
+     */
+    private static void escribirArchivo(Path ruta, long maxBytes, int copias) throws IOException {
+        if (Files.exists(ruta) && Files.size(ruta) >= maxBytes) {
+            for (int i = copias - 1; i >= 1; i--) {
+                Path origen = Paths.get(ruta + "." + i);
+                if (Files.exists(origen)) {
+                    Files.move(origen, Paths.get(ruta + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(ruta, Paths.get(ruta + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path dir = ruta.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        try (Writer out = Files.newBufferedWriter(ruta, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write("# " + LocalDateTime.now() + "\n");
+            out.write(exportar());
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package util;
+
+import models.Ticket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Plantilla de ticket ESC/POS compilada.
+ *
+ * El texto de la plantilla se compila una sola vez en segmentos de bytes fijos (texto y
+ * comandos ya codificados) intercalados con campos; al imprimir solo se escriben los
+ * valores de los campos en un buffer reutilizable por hilo, sin String.format ni
+ * conversiones intermedias.
+ *
+ * Sintaxis:
+ * <ul>
+ *   <li>Comandos: [INIT] [CENTRO] [IZQUIERDA] [NEGRITA] [/NEGRITA] [DOBLE] [NORMAL] [CORTE]</li>
+ *   <li>Campos: {folio} {placa} {tipo} {ingreso} {salida} {estadia} {operador} {monto} {metodo} {qr}</li>
+ *   <li>{codigo_qr}: el código QR del ticket como imagen (ver CodigoQrEscPos)</li>
+ * </ul>
+ * Todo lo demás se imprime tal cual (UTF-8). Los saltos de línea de la plantilla son los
+ * del ticket.
+ */
+public final class PlantillaTicket {
+
+    private static final Log LOG = Log.de(PlantillaTicket.class);
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm a");
+
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    private enum Campo { FOLIO, PLACA, TIPO, INGRESO, SALIDA, ESTADIA, OPERADOR, MONTO, METODO, QR, CODIGO_QR }
+
+    private static final String[] NOMBRES_COMANDO = {
+            "INIT", "CENTRO", "IZQUIERDA", "NEGRITA", "/NEGRITA", "DOBLE", "NORMAL", "CORTE"
+    };
+    private static final byte[][] BYTES_COMANDO = {
+            {0x1B, 0x40},       // Inicializa (reset) impresora
+            {0x1B, 0x61, 0x01}, // Centra texto
+            {0x1B, 0x61, 0x00}, // Alinea a la izquierda
+            {0x1B, 0x45, 0x01}, // Negrita ON
+            {0x1B, 0x45, 0x00}, // Negrita OFF
+            {0x1D, 0x21, 0x01}, // Doble altura
+            {0x1D, 0x21, 0x00}, // Fuente normal
+            {0x1D, 0x56, 0x00}  // Corte de papel completo
+    };
+
+    // literales[i] se escribe antes de campos[i]; el último literal va al final
+    private final byte[][] literales;
+    private final Campo[] campos;
+
+    private PlantillaTicket(byte[][] literales, Campo[] campos) {
+        this.literales = literales;
+        this.campos = campos;
+    }
+
+    /**
+     * Compila el texto de una plantilla.
+     *
+     * @throws IllegalArgumentException si la plantilla usa un campo desconocido
+     */
+    public static PlantillaTicket compilar(String texto) {
+        String fuente = texto.replace("\r", "");
+        List<byte[]> literales = new ArrayList<>();
+        List<Campo> campos = new ArrayList<>();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        StringBuilder textoPlano = new StringBuilder();
+
+        int i = 0;
+        while (i < fuente.length()) {
+            char c = fuente.charAt(i);
+            int cierre;
+            if (c == '[' && (cierre = fuente.indexOf(']', i)) > 0) {
+                int comando = buscarComando(fuente.substring(i + 1, cierre));
+                if (comando >= 0) {
+                    volcar(textoPlano, actual);
+                    actual.write(BYTES_COMANDO[comando], 0, BYTES_COMANDO[comando].length);
+                    i = cierre + 1;
+                    continue;
+                }
+            } else if (c == '{' && (cierre = fuente.indexOf('}', i)) > 0) {
+                String nombre = fuente.substring(i + 1, cierre);
+                Campo campo;
+                try {
+                    campo = Campo.valueOf(nombre.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Campo desconocido en la plantilla: {" + nombre + "}");
+                }
+                volcar(textoPlano, actual);
+                literales.add(actual.toByteArray());
+                actual.reset();
+                campos.add(campo);
+                i = cierre + 1;
+                continue;
+            }
+            textoPlano.append(c);
+            i++;
+        }
+        volcar(textoPlano, actual);
+        literales.add(actual.toByteArray());
+
+        return new PlantillaTicket(literales.toArray(new byte[0][]), campos.toArray(new Campo[0]));
+    }
+
+    /**
+     * Carga la plantilla desde un archivo externo (para que el operador personalice el
+     * ticket sin recompilar) o usa la plantilla por defecto si la ruta no está configurada
+     * o el archivo no es válido.
+     */
+    public static PlantillaTicket cargar(String rutaExterna, String plantillaPorDefecto) {
+        if (rutaExterna != null && !rutaExterna.trim().isEmpty()) {
+            Path ruta = Paths.get(rutaExterna.trim());
+            try {
+                PlantillaTicket plantilla = compilar(new String(Files.readAllBytes(ruta), StandardCharsets.UTF_8));
+                LOG.info("Plantilla de ticket cargada desde {}", ruta.toAbsolutePath());
+                return plantilla;
+            } catch (IOException | IllegalArgumentException e) {
+                LOG.warn("No se pudo usar la plantilla {}, se usa la plantilla por defecto: {}",
+                        ruta, e.getMessage());
+            }
+        }
+        return compilar(plantillaPorDefecto);
+    }
+
+    /**
+     * Genera los bytes del ticket. Los campos sin valor (null) se imprimen vacíos.
+     *
+     * @return un arreglo nuevo (el buffer interno se reutiliza en la siguiente llamada)
+     */
+    public byte[] generar(Ticket ticket, String operador, LocalDateTime fechaSalida,
+                          long minutosEstadia, BigDecimal monto, String metodoPago) {
+        Buffer b = BUFFER.get();
+        b.reset();
+        for (int i = 0; i < campos.length; i++) {
+            b.escribir(literales[i]);
+            switch (campos[i]) {
+                case FOLIO:
+                    b.escribirTexto(ticket.getNumeroFolio());
+                    break;
+                case PLACA:
+                    b.escribirTexto(ticket.getPlaca());
+                    break;
+                case TIPO:
+                    b.escribirTexto(ticket.getTipoIngreso());
+                    break;
+                case INGRESO:
+                    b.escribirFecha(ticket.getFechaIngreso());
+                    break;
+                case SALIDA:
+                    b.escribirFecha(fechaSalida);
+                    break;
+                case ESTADIA:
+                    b.escribirNumero(minutosEstadia);
+                    break;
+                case OPERADOR:
+                    b.escribirTexto(operador);
+                    break;
+                case MONTO:
+                    b.escribirMonto(monto);
+                    break;
+                case METODO:
+                    b.escribirTexto(metodoPago);
+                    break;
+                case QR:
+                    b.escribirTexto(ticket.getQrCode());
+                    break;
+                case CODIGO_QR:
+                    b.escribir(CodigoQrEscPos.comandos(ticket.getNumeroFolio(), ticket.getQrCode()));
+                    break;
+            }
+        }
+        b.escribir(literales[campos.length]);
+        return b.toByteArray();
+    }
+
+    /**
+     * Genera de una vez un texto con comandos y sin campos, como el reporte de cierre de
+     * turno, que se arma con sus propios valores.
+     *
+     * @throws IllegalArgumentException si el texto tiene campos
+     */
+    public static byte[] generarTexto(String texto) {
+        PlantillaTicket plantilla = compilar(texto);
+        if (plantilla.campos.length > 0) {
+            throw new IllegalArgumentException("El texto no puede tener campos: {" +
+                    plantilla.campos[0].name().toLowerCase(Locale.ROOT) + "}");
+        }
+        return plantilla.literales[0];
+    }
+
+    private static int buscarComando(String nombre) {
+        for (int i = 0; i < NOMBRES_COMANDO.length; i++) {
+            if (NOMBRES_COMANDO[i].equalsIgnoreCase(nombre)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void volcar(StringBuilder texto, ByteArrayOutputStream destino) {
+        if (texto.length() > 0) {
+            byte[] bytes = texto.toString().getBytes(StandardCharsets.UTF_8);
+            destino.write(bytes, 0, bytes.length);
+            texto.setLength(0);
+        }
+    }
+
+    /**
+     * Buffer de bytes que crece según haga falta y se reutiliza entre tickets.
+     */
+    private static final class Buffer {
+        private byte[] datos = new byte[512];
+        private int largo;
+        private final StringBuilder texto = new StringBuilder(32);
+
+        private void reset() {
+            largo = 0;
+        }
+
+        private void asegurar(int extra) {
+            if (largo + extra > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length * 2, largo + extra));
+            }
+        }
+
+        private void escribir(byte[] bytes) {
+            asegurar(bytes.length);
+            System.arraycopy(bytes, 0, datos, largo, bytes.length);
+            largo += bytes.length;
+        }
+
+        private void escribirByte(int b) {
+            asegurar(1);
+            datos[largo++] = (byte) b;
+        }
+
+        /**
+         * Codifica en UTF-8 directamente sobre el buffer.
+         */
+        private void escribirTexto(CharSequence s) {
+            if (s == null) {
+                return;
+            }
+            int n = s.length();
+            asegurar(n * 3);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    datos[largo++] = (byte) c;
+                } else if (c < 0x800) {
+                    datos[largo++] = (byte) (0xC0 | (c >> 6));
+                    datos[largo++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    datos[largo++] = (byte) (0xF0 | (cp >> 18));
+                    datos[largo++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    datos[largo++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    datos[largo++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    datos[largo++] = (byte) (0xE0 | (c >> 12));
+                    datos[largo++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    datos[largo++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void escribirFecha(LocalDateTime fecha) {
+            if (fecha == null) {
+                return;
+            }
+            texto.setLength(0);
+            FORMATO_FECHA.formatTo(fecha, texto);
+            escribirTexto(texto);
+        }
+
+        private void escribirNumero(long n) {
+            texto.setLength(0);
+            texto.append(n);
+            escribirTexto(texto);
+        }
+
+        /**
+         * Monto con dos decimales y punto decimal (igual que "%.2f").
+         */
+        private void escribirMonto(BigDecimal monto) {
+            if (monto == null) {
+                return;
+            }
+            long centavos = monto.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+            if (centavos < 0) {
+                escribirByte('-');
+                centavos = -centavos;
+            }
+            escribirNumero(centavos / 100);
+            escribirByte('.');
+            escribirByte('0' + (int) (centavos % 100 / 10));
+            escribirByte('0' + (int) (centavos % 10));
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(datos, largo);
+        }
+    }
+}
@@ -1,92 +1,109 @@
 package util;
 
-import javax.print.*;
-import javax.print.attribute.HashPrintRequestAttributeSet;
-import javax.print.attribute.PrintRequestAttributeSet;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
+import config.PropertiesConfig;
+
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Utilidad para el envío directo de datos a una impresora térmica.
- * Maneja la impresión directa a dispositivo en Linux y RAW en Windows.
+ * Impresoras configuradas y su transporte (ver TransporteImpresora).
+ *
+ * Cada impresora tiene un nombre lógico y se configura con impresion.impresora.&lt;nombre&gt;.*:
+ * <ul>
+ *   <li>tipo=dispositivo, ruta=/dev/usb/lp0 (por defecto en Linux/macOS)</li>
+ *   <li>tipo=tcp, host=192.168.1.50, puerto=9100, timeout_ms, inactividad_ms</li>
+ *   <li>tipo=archivo, ruta=impresiones/principal.prn (pruebas)</li>
+ *   <li>tipo=windows, nombre=nombre exacto en Windows (por defecto en Windows)</li>
+ * </ul>
+ * Sin configuración se usa la impresora "principal" con el tipo según el sistema operativo,
+ * igual que antes. Un carril puede tener su propia impresora con impresion.carril.&lt;carril&gt;.
+ *
+ * Es bloqueante: los servicios no la llaman directamente sino a través de ColaImpresion.
  */
 public class PrinterUtil {
 
+    private static final Log LOG = Log.de(PrinterUtil.class);
+
+    public static final String IMPRESORA_POR_DEFECTO = "principal";
+
     private static final String LINUX_PRINTER_PATH = "/dev/usb/lp0";
-    private static final String OS = System.getProperty("os.name").toLowerCase();
+    private static final String WINDOWS_PRINTER_NAME = "Nombre Exacto de la Impresora Termica";
+    // El sistema operativo se detecta una sola vez
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
 
-    /**
-     * Envía datos binarios (ESC/POS) a la impresora.
-     * * @param data Los bytes a enviar a la impresora.
-     * @param windowsPrinterName El nombre exacto de la impresora en Windows (necesario solo en Windows).
-     */
-    public static void printTicket(byte[] data, String windowsPrinterName) {
-        if (OS.contains("win")) {
-            printRawWindows(data, windowsPrinterName);
-        } else if (OS.contains("nix") || OS.contains("mac") || OS.contains("linux")) {
-            printRawLinux(data);
-        } else {
-            System.err.println(" Sistema operativo no soportado para impresión directa.");
-        }
-    }
+    private static final String PREFIJO = "impresion.impresora.";
 
-    // Lógica para Linux (Impresión Directa a Archivo de Dispositivo)
-    private static void printRawLinux(byte[] data) {
-        File printer = new File(LINUX_PRINTER_PATH);
+    private static final Map<String, TransporteImpresora> TRANSPORTES = new ConcurrentHashMap<>();
 
-        if (!printer.exists()) {
-            System.err.println("Error: No se encontró la impresora en " + LINUX_PRINTER_PATH);
-            System.err.println("Verifica la conexión o los permisos. Intenta: sudo chmod 666 " + LINUX_PRINTER_PATH);
-            return;
-        }
+    static {
+        // Con la configuración nueva se crean transportes nuevos; ColaImpresion cierra los anteriores
+        PropertiesConfig.getInstance().suscribir(PREFIJO, claves -> TRANSPORTES.clear());
+    }
 
-        try (OutputStream out = new FileOutputStream(LINUX_PRINTER_PATH)) {
-            out.write(data);
-            out.flush();
-            System.out.println("Ticket enviado a la impresora (Linux Directo).");
-        } catch (Exception e) {
-            System.err.println("Error al imprimir ticket en Linux: " + e.getMessage());
+    /**
+     * Impresora que debe imprimir un trabajo: la pedida si está configurada, si no la del
+     * carril, si no la impresora por defecto.
+     *
+     * @param solicitada nombre lógico pedido por el servicio (puede ser null)
+     * @param carril     carril de la operación en curso (puede ser null)
+     */
+    public static String resolver(String solicitada, String carril) {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        if (solicitada != null && props.getProperty(PREFIJO + solicitada + ".tipo") != null) {
+            return solicitada;
         }
+        if (carril != null) {
+            String delCarril = props.getProperty("impresion.carril." + carril);
+            if (delCarril != null && !delCarril.trim().isEmpty()) {
+                return delCarril.trim();
+            }
+        }
+        return IMPRESORA_POR_DEFECTO;
     }
 
-    // Lógica para Windows (Impresión RAW vía Nombre del Servicio)
-    private static void printRawWindows(byte[] data, String printerName) {
-        //Definir el formato de los datos: RAW
-        DocFlavor flavor = DocFlavor.BYTE_ARRAY.AUTOSENSE;
+    /**
+     * Transporte de la impresora. Se crea la primera vez y se reemplaza cuando cambia su
+     * configuración; quien lo usa debe cerrar el anterior si recibe uno distinto.
+     */
+    public static TransporteImpresora transporte(String impresora) {
+        return TRANSPORTES.computeIfAbsent(impresora, PrinterUtil::crear);
+    }
 
-        //Buscar todos los servicios de impresión disponibles
-        PrintRequestAttributeSet pras = new HashPrintRequestAttributeSet();
-        PrintService[] printServices = PrintServiceLookup.lookupPrintServices(flavor, pras);
+    private static TransporteImpresora crear(String impresora) {
+        PropertiesConfig props = PropertiesConfig.getInstance();
+        String prefijo = PREFIJO + impresora + ".";
+        String tipo = texto(props.getProperty(prefijo + "tipo"), WINDOWS ? "windows" : "dispositivo");
 
-        PrintService selectedService = null;
-        for (PrintService service : printServices) {
-            // Comparar el nombre de la impresora ignorando mayúsculas/minúsculas
-            if (service.getName().equalsIgnoreCase(printerName)) {
-                selectedService = service;
+        TransporteImpresora transporte;
+        switch (tipo.toLowerCase()) {
+            case "tcp":
+                transporte = new TransporteTcp(
+                        texto(props.getProperty(prefijo + "host"), "localhost"),
+                        props.getIntProperty(prefijo + "puerto", 9100),
+                        props.getIntProperty(prefijo + "timeout_ms", 3000),
+                        props.getIntProperty(prefijo + "inactividad_ms", 30000));
                 break;
-            }
-        }
-
-        if (selectedService == null) {
-            System.err.println("Error: La impresora '" + printerName + "' no se encontró en Windows.");
-            System.err.println("Verifica el nombre exacto de la impresora en 'Dispositivos e Impresoras'.");
-            return;
+            case "archivo":
+                transporte = new TransporteArchivo(Paths.get(
+                        texto(props.getProperty(prefijo + "ruta"), "impresiones/" + impresora + ".prn")));
+                break;
+            case "windows":
+                transporte = new TransporteWindows(texto(props.getProperty(prefijo + "nombre"), WINDOWS_PRINTER_NAME));
+                break;
+            case "dispositivo":
+                transporte = new TransporteDispositivo(Paths.get(texto(props.getProperty(prefijo + "ruta"), LINUX_PRINTER_PATH)));
+                break;
+            default:
+                LOG.warn("Tipo de impresora desconocido para '{}': {}. Use dispositivo, tcp, archivo o windows",
+                        impresora, tipo);
+                transporte = new TransporteDispositivo(Paths.get(texto(props.getProperty(prefijo + "ruta"), LINUX_PRINTER_PATH)));
         }
+        LOG.info("Impresora '{}': {}", impresora, transporte);
+        return transporte;
+    }
 
-        try {
-            //Crear un trabajo de impresión (DocPrintJob)
-            DocPrintJob job = selectedService.createPrintJob();
-
-            //Crear el documento con los datos RAW
-            Doc doc = new SimpleDoc(data, flavor, null);
-
-            //Imprimir los datos RAW (ESC/POS)
-            job.print(doc, pras);
-            System.out.println("Ticket enviado a la impresora (Windows RAW).");
-
-        } catch (PrintException e) {
-            System.err.println("Error de impresión en Windows (javax.print): " + e.getMessage());
-        }
+    private static String texto(String valor, String porDefecto) {
+        return valor != null && !valor.trim().isEmpty() ? valor.trim() : porDefecto;
     }
-}
\ No newline at end of file
+}
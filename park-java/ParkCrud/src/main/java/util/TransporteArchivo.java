@@ -0,0 +1,79 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * "Impresora" que agrega los tickets a un archivo, para pruebas y para equipos sin
+ * impresora. El archivo queda abierto entre tickets.
+ */
+public class TransporteArchivo implements TransporteImpresora {
+
+    private static final Log LOG = Log.de(TransporteArchivo.class);
+
+    private final Path ruta;
+    private FileChannel canal;
+
+    public TransporteArchivo(Path ruta) {
+        this.ruta = ruta;
+    }
+
+    @Override
+    public boolean enviar(byte[] datos) {
+        if (canal == null && !abrir()) {
+            return false;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(datos);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Error al escribir en {}: {}", ruta, e.getMessage());
+            cerrar();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean verificar() {
+        return (canal != null && canal.isOpen()) || abrir();
+    }
+
+    private boolean abrir() {
+        try {
+            Path carpeta = ruta.toAbsolutePath().getParent();
+            if (carpeta != null) {
+                Files.createDirectories(carpeta);
+            }
+            canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return true;
+        } catch (IOException e) {
+            LOG.debug("No se pudo abrir {}: {}", ruta, e.getMessage());
+            canal = null;
+            return false;
+        }
+    }
+
+    @Override
+    public void cerrar() {
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException ignored) {
+                // El canal ya no es utilizable
+            }
+            canal = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "archivo " + ruta;
+    }
+}
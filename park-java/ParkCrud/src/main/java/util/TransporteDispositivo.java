@@ -0,0 +1,85 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Impresora conectada como dispositivo del sistema (p. ej. /dev/usb/lp0 en Linux).
+ *
+ * El dispositivo se abre una vez con un FileChannel y queda abierto entre tickets. Si una
+ * escritura falla o el dispositivo desaparece (impresora desconectada), el canal se cierra
+ * y se vuelve a abrir en el siguiente envío o verificación.
+ */
+public class TransporteDispositivo implements TransporteImpresora {
+
+    private static final Log LOG = Log.de(TransporteDispositivo.class);
+
+    private final Path ruta;
+    private FileChannel canal;
+
+    public TransporteDispositivo(Path ruta) {
+        this.ruta = ruta;
+    }
+
+    @Override
+    public boolean enviar(byte[] datos) {
+        if (canal == null && !abrir()) {
+            return false;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(datos);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Error al escribir en la impresora {}: {}", ruta, e.getMessage());
+            cerrar();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean verificar() {
+        if (!Files.exists(ruta)) {
+            // Al desconectar la impresora el nodo del dispositivo desaparece
+            cerrar();
+            return false;
+        }
+        return (canal != null && canal.isOpen()) || abrir();
+    }
+
+    private boolean abrir() {
+        try {
+            canal = FileChannel.open(ruta, StandardOpenOption.WRITE);
+            LOG.info("Impresora abierta en {}", ruta);
+            return true;
+        } catch (IOException | SecurityException e) {
+            LOG.debug("No se pudo abrir la impresora en {}: {}. Verifica la conexión o los permisos (sudo chmod 666 {})",
+                    ruta, e.getMessage(), ruta);
+            canal = null;
+            return false;
+        }
+    }
+
+    @Override
+    public void cerrar() {
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException ignored) {
+                // El canal ya no es utilizable
+            }
+            canal = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "dispositivo " + ruta;
+    }
+}
@@ -0,0 +1,31 @@
+package util;
+
+/**
+ * Medio por el que llegan los bytes ESC/POS a una impresora (dispositivo local, red,
+ * archivo o cola de Windows). Cada implementación conserva su conexión abierta entre
+ * tickets y la restablece cuando falla.
+ *
+ * No es seguro para varios hilos: cada impresora tiene un solo hilo de envío
+ * (services.ColaImpresion).
+ */
+public interface TransporteImpresora {
+
+    /**
+     * Envía un ticket completo.
+     *
+     * @return true si los datos llegaron a la impresora; false si hay que reintentar
+     */
+    boolean enviar(byte[] datos);
+
+    /**
+     * Comprueba la conexión sin imprimir nada y la reabre si se perdió.
+     *
+     * @return true si la impresora está lista para recibir
+     */
+    boolean verificar();
+
+    /**
+     * Libera la conexión; el siguiente envío la vuelve a abrir.
+     */
+    void cerrar();
+}
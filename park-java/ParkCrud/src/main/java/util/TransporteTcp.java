@@ -0,0 +1,161 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Impresora térmica en red por el puerto RAW (9100 por defecto).
+ *
+ * La conexión TCP queda abierta entre tickets. Muchas impresoras cierran las conexiones
+ * inactivas sin avisar y la primera escritura sobre un socket cerrado del otro lado no
+ * falla, así que antes de enviar tras un rato de inactividad (inactividadMillis) se
+ * comprueba que la impresora no haya cerrado la conexión y, si la cerró, se reconecta.
+ *
+ * Una impresora sin papel o trabada deja de leer: cuando se llena el buffer del socket la
+ * escritura se bloquea sin límite (SO_TIMEOUT solo aplica a las lecturas). Cada envío
+ * tiene un plazo (timeoutMillis, el mismo de la conexión); si vence, un hilo vigilante
+ * cierra el socket, la escritura falla y el ticket vuelve a la cola para reintentarse.
+ */
+public class TransporteTcp implements TransporteImpresora {
+
+    private static final Log LOG = Log.de(TransporteTcp.class);
+
+    // Compartido por todas las impresoras TCP: solo cierra sockets con el envío vencido
+    private static final ScheduledThreadPoolExecutor VIGILANTE = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread hilo = new Thread(r, "crudpark-impresion-plazo");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    static {
+        VIGILANTE.setRemoveOnCancelPolicy(true);
+    }
+
+    private final String host;
+    private final int puerto;
+    private final int timeoutMillis;
+    private final long inactividadMillis;
+
+    private Socket socket;
+    private OutputStream salida;
+    private long ultimoUso;
+
+    public TransporteTcp(String host, int puerto, int timeoutMillis, long inactividadMillis) {
+        this.host = host;
+        this.puerto = puerto;
+        // Sin timeout (0) la conexión o un envío podrían bloquearse indefinidamente
+        this.timeoutMillis = Math.max(100, timeoutMillis);
+        this.inactividadMillis = inactividadMillis;
+    }
+
+    @Override
+    public boolean enviar(byte[] datos) {
+        if (socket != null && System.currentTimeMillis() - ultimoUso > inactividadMillis && !sigueAbierto()) {
+            cerrar();
+        }
+        if (socket == null && !conectar()) {
+            return false;
+        }
+        Socket actual = socket;
+        ScheduledFuture<?> plazo = VIGILANTE.schedule(() -> cerrarSocket(actual), timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            salida.write(datos);
+            salida.flush();
+            ultimoUso = System.currentTimeMillis();
+            if (!plazo.cancel(false)) {
+                // El plazo venció justo al terminar: los datos se enviaron pero el socket ya no sirve
+                cerrar();
+            }
+            return true;
+        } catch (IOException e) {
+            if (plazo.cancel(false)) {
+                LOG.warn("Error al enviar a la impresora {}:{}: {}", host, puerto, e.getMessage());
+            } else {
+                LOG.warn("La impresora {}:{} no recibió el ticket en {} ms, se cierra la conexión", host, puerto, timeoutMillis);
+            }
+            cerrar();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean verificar() {
+        if (socket != null && sigueAbierto()) {
+            return true;
+        }
+        cerrar();
+        return conectar();
+    }
+
+    private boolean conectar() {
+        Socket nuevo = new Socket();
+        try {
+            nuevo.setTcpNoDelay(true);
+            nuevo.setKeepAlive(true);
+            nuevo.connect(new InetSocketAddress(host, puerto), timeoutMillis);
+            socket = nuevo;
+            salida = nuevo.getOutputStream();
+            ultimoUso = System.currentTimeMillis();
+            LOG.info("Conectado a la impresora {}:{}", host, puerto);
+            return true;
+        } catch (IOException e) {
+            LOG.debug("No se pudo conectar a la impresora {}:{}: {}", host, puerto, e.getMessage());
+            try {
+                nuevo.close();
+            } catch (IOException ignored) {
+                // No llegó a conectarse
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Lee sin esperar: si la impresora cerró la conexión la lectura retorna fin de flujo.
+     * Lo que la impresora haya enviado (bytes de estado) se descarta.
+     */
+    private boolean sigueAbierto() {
+        try {
+            socket.setSoTimeout(1);
+            InputStream entrada = socket.getInputStream();
+            byte[] descarte = new byte[64];
+            while (true) {
+                if (entrada.read(descarte) < 0) {
+                    return false;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void cerrar() {
+        if (socket != null) {
+            cerrarSocket(socket);
+            socket = null;
+            salida = null;
+        }
+    }
+
+    private static void cerrarSocket(Socket s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {
+            // La conexión ya no es utilizable
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "tcp " + host + ":" + puerto;
+    }
+}
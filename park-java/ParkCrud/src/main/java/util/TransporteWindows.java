@@ -0,0 +1,78 @@
+package util;
+
+import javax.print.Doc;
+import javax.print.DocFlavor;
+import javax.print.DocPrintJob;
+import javax.print.PrintException;
+import javax.print.PrintService;
+import javax.print.PrintServiceLookup;
+import javax.print.SimpleDoc;
+import javax.print.attribute.HashPrintRequestAttributeSet;
+import javax.print.attribute.PrintRequestAttributeSet;
+
+/**
+ * Impresora instalada en Windows, por su nombre en "Dispositivos e Impresoras"; los bytes
+ * se envían RAW con javax.print. El servicio de impresión se busca una vez y se vuelve a
+ * buscar solo si un envío falla.
+ */
+public class TransporteWindows implements TransporteImpresora {
+
+    private static final Log LOG = Log.de(TransporteWindows.class);
+
+    // Formato de los datos: RAW
+    private static final DocFlavor FORMATO = DocFlavor.BYTE_ARRAY.AUTOSENSE;
+
+    private final String nombre;
+    private PrintService servicio;
+
+    public TransporteWindows(String nombre) {
+        this.nombre = nombre;
+    }
+
+    @Override
+    public boolean enviar(byte[] datos) {
+        if (servicio == null && !buscar()) {
+            return false;
+        }
+        try {
+            DocPrintJob job = servicio.createPrintJob();
+            Doc doc = new SimpleDoc(datos, FORMATO, null);
+            job.print(doc, new HashPrintRequestAttributeSet());
+            return true;
+        } catch (PrintException e) {
+            LOG.warn("Error de impresión en Windows (javax.print): {}", e.getMessage());
+            servicio = null;
+            return false;
+        }
+    }
+
+    @Override
+    public boolean verificar() {
+        return buscar();
+    }
+
+    private boolean buscar() {
+        PrintRequestAttributeSet pras = new HashPrintRequestAttributeSet();
+        for (PrintService s : PrintServiceLookup.lookupPrintServices(FORMATO, pras)) {
+            // Comparar el nombre de la impresora ignorando mayúsculas/minúsculas
+            if (s.getName().equalsIgnoreCase(nombre)) {
+                servicio = s;
+                return true;
+            }
+        }
+        LOG.debug("La impresora '{}' no se encontró en Windows. Verifica el nombre exacto en 'Dispositivos e Impresoras'.",
+                nombre);
+        servicio = null;
+        return false;
+    }
+
+    @Override
+    public void cerrar() {
+        servicio = null;
+    }
+
+    @Override
+    public String toString() {
+        return "windows '" + nombre + "'";
+    }
+}